@@ -0,0 +1,70 @@
+package se.dpixie.democraticcommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Throughput of AuditLogWriter.append as seen by the server thread. The writer thread does the formatting and
+// disk I/O, so this mostly measures the queue hand-off and, once the queue fills, the backpressure policy.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AuditLogBenchmark {
+    private static final String SUMMARY = """
+        Command: /gamemode creative Player0
+        Initiator: Player0
+        YES votes (3): Player1, Player2, Player3
+        NO votes (1): Player4
+        Abstained (1): Player5
+        Result: PASSED""";
+
+    @Param({"BLOCK", "SPILL", "DROP"})
+    public AuditLogWriter.BackpressurePolicy backpressure;
+
+    @Param({"NEVER", "INTERVAL"})
+    public AuditLogWriter.FsyncPolicy fsync;
+
+    private Path dir;
+    private AuditLogWriter writer;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("audit-bench");
+        writer = new AuditLogWriter(dir, 1024, backpressure, fsync, 1000, 64L * 1024 * 1024, 0, false);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        writer.close();
+        System.out.println("\n" + writer.describeStats());
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        writer.append("PASSED", SUMMARY);
+    }
+
+    // Several server-side callers at once, e.g. votes concluding while the writer is busy
+    @Benchmark
+    @Threads(4)
+    public void appendContended() {
+        writer.append("PASSED", SUMMARY);
+    }
+}
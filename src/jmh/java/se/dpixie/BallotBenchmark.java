@@ -0,0 +1,73 @@
+package se.dpixie.democraticcommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Ballot casting and tallying as a function of the electorate size
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BallotBenchmark {
+    @Param({"10", "100", "1000"})
+    public int voters;
+
+    private Electorate electorate;
+    private ActiveVote vote;
+    private UUID outsider;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        electorate = new Electorate(voters, 42);
+        outsider = new UUID(7, 7);
+    }
+
+    @Setup(Level.Iteration)
+    public void openVote() {
+        vote = electorate.vote(1, 0);
+        for (int i = 0; i < voters / 2; i++) {
+            vote.vote(electorate.voters[i], (i & 1) == 0);
+        }
+    }
+
+    // One /vote yes|no: eligibility check, ballot, and the "has everyone voted" check castVote does
+    @Benchmark
+    public int castBallot() {
+        int slot = next++ % voters;
+        UUID voter = electorate.voters[slot];
+        if (!vote.ballots.isEligible(voter)) return -1;
+        vote.vote(voter, (slot & 1) == 0);
+        return vote.ballots.notVotedCount();
+    }
+
+    @Benchmark
+    public boolean rejectIneligible() {
+        return vote.ballots.isEligible(outsider);
+    }
+
+    @Benchmark
+    public boolean tally() {
+        return vote.isPassed();
+    }
+
+    // A whole vote: create the ballot box, everyone votes, decide
+    @Benchmark
+    public boolean fullVote() {
+        ActiveVote fresh = electorate.vote(2, 0);
+        for (int i = 0; i < voters; i++) {
+            fresh.vote(electorate.voters[i], i % 3 != 0);
+        }
+        fresh.markAbstained();
+        return fresh.resolve();
+    }
+}
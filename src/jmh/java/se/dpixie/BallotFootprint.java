@@ -0,0 +1,80 @@
+package se.dpixie.democraticcommands;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+// Retained heap per vote: BallotBox against the four HashSet<UUID> plus name map each vote used to keep.
+// UUIDs and names are shared between votes, as they are on a server, so only the per-vote structures count.
+// Every voter has voted, half YES and half NO. Run with ./gradlew footprint, e.g. --args="--voters 500 --votes 400".
+public final class BallotFootprint {
+    // The per-vote state before BallotBox
+    private static final class LegacyBallots {
+        final Set<UUID> yesVotes = new HashSet<>();
+        final Set<UUID> noVotes = new HashSet<>();
+        final Set<UUID> abstained = new HashSet<>();
+        final Map<UUID, String> voterNames = new HashMap<>();
+        final Set<UUID> eligibleVoters = new HashSet<>();
+    }
+
+    // Keeps the votes being measured reachable while the heap is measured
+    private static Object[] retained;
+
+    private BallotFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int voters = 500;
+        int votes = 400;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--voters" -> voters = Integer.parseInt(args[i + 1]);
+                case "--votes" -> votes = Integer.parseInt(args[i + 1]);
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Electorate electorate = new Electorate(voters, 42);
+
+        long before = usedHeap();
+        Object[] legacy = new Object[votes];
+        retained = legacy;
+        for (int v = 0; v < votes; v++) {
+            LegacyBallots ballots = new LegacyBallots();
+            for (int i = 0; i < voters; i++) {
+                ballots.eligibleVoters.add(electorate.voters[i]);
+                ballots.voterNames.put(electorate.voters[i], electorate.names[i]);
+                ((i & 1) == 0 ? ballots.yesVotes : ballots.noVotes).add(electorate.voters[i]);
+            }
+            legacy[v] = ballots;
+        }
+        long legacyBytes = usedHeap() - before;
+        retained = null;
+
+        before = usedHeap();
+        Object[] boxes = new Object[votes];
+        retained = boxes;
+        for (int v = 0; v < votes; v++) {
+            BallotBox box = electorate.ballotBox();
+            for (int i = 0; i < voters; i++) {
+                box.cast(electorate.voters[i], (i & 1) == 0);
+            }
+            boxes[v] = box;
+        }
+        long boxBytes = usedHeap() - before;
+        retained = null;
+
+        System.out.printf("%d votes x %d voters, retained heap per vote:%n", votes, voters);
+        System.out.printf("  HashSet + name map: %.1f KB%n", legacyBytes / 1024.0 / votes);
+        System.out.printf("  BallotBox:          %.1f KB%n", boxBytes / 1024.0 / votes);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
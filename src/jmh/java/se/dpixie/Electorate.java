@@ -0,0 +1,62 @@
+package se.dpixie.democraticcommands;
+
+import java.util.Random;
+import java.util.UUID;
+
+// Headless stand-ins for the online players a vote is created with
+final class Electorate {
+    static final VotingPolicy.Rules DEFAULT_RULES = new VotingPolicy.Rules(30, 2, 2, 0.5, true, false);
+
+    final UUID[] voters;
+    final String[] names;
+
+    Electorate(int size, long seed) {
+        Random random = new Random(seed);
+        voters = new UUID[size];
+        names = new String[size];
+        for (int i = 0; i < size; i++) {
+            voters[i] = new UUID(random.nextLong(), random.nextLong());
+            names[i] = "Player" + i;
+        }
+    }
+
+    SyntheticVoter voter(int index) {
+        return new SyntheticVoter(voters[index], names[index]);
+    }
+
+    BallotBox ballotBox() {
+        return new BallotBox(voters.clone(), names.clone());
+    }
+
+    // A vote proposed by voter `initiator` that every player in the electorate may vote on
+    ActiveVote vote(int id, int initiator) {
+        String command = "gamemode creative " + names[initiator];
+        return new ActiveVote(id, command, CommandCanonicalizer.normalize(command), voter(initiator), ballotBox(),
+            null, DEFAULT_RULES, 0, Long.MAX_VALUE, null);
+    }
+
+    // A vote open to a random subset of the electorate
+    ActiveVote vote(int id, int initiator, int eligible, Random random) {
+        UUID[] subset = new UUID[eligible];
+        String[] subsetNames = new String[eligible];
+        int[] order = shuffled(voters.length, random);
+        for (int i = 0; i < eligible; i++) {
+            subset[i] = voters[order[i]];
+            subsetNames[i] = names[order[i]];
+        }
+        return new ActiveVote(id, "time set day", CommandCanonicalizer.normalize("time set day"), voter(initiator),
+            new BallotBox(subset, subsetNames), null, DEFAULT_RULES, 0, Long.MAX_VALUE, null);
+    }
+
+    private static int[] shuffled(int size, Random random) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) order[i] = i;
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int swap = order[i];
+            order[i] = order[j];
+            order[j] = swap;
+        }
+        return order;
+    }
+}
@@ -0,0 +1,123 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+// Cost of deciding whether an intercepted command needs a vote. Brigadier runs without a server here, against a
+// dispatcher holding the default gated commands plus the usual ungated ones.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InterceptionBenchmark {
+    private static final List<String> GATED = List.of(
+        "gamemode", "gamerule", "give", "tp", "teleport", "kill", "ban", "kick",
+        "op", "deop", "whitelist", "difficulty", "stop", "setblock", "fill",
+        "summon", "effect", "enchant", "weather", "time", "spawnpoint", "setworldspawn");
+    private static final List<String> UNGATED = List.of(
+        "say", "msg", "tell", "me", "help", "list", "trigger", "seed", "vote", "teammsg");
+
+    // A command-heavy server: functions, triggers, chat, execute chains, some gated commands and a namespaced one
+    private static final String[] COMMAND_MIX = {
+        "/function game:tick", "/trigger lobby", "/say hello everyone", "/msg Steve meet at spawn",
+        "/execute as @a at @s run particle flame ~ ~1 ~", "/function game:round/start", "/trigger shop set 3",
+        "/me waves", "/tell Alex ok", "/list", "/gamemode creative", "/tp Steve 0 64 0", "/help",
+        "/execute if entity @p[distance=..5] run say near", "/teammsg go", "/give @s minecraft:diamond 4",
+        "/minecraft:time set day", "/seed", "/vote yes", "/function game:cleanup"
+    };
+
+    private GatedCommandMatcher matcher;
+    private GatedCommandMatcher.NodeIndex index;
+    private Set<String> legacyGated;
+    private ParseResults<Object> gatedParse;
+    private ParseResults<Object> ungatedParse;
+    private ParseResults<Object> unknownParse;
+
+    @Setup
+    public void setup() {
+        CommandDispatcher<Object> dispatcher = new CommandDispatcher<>();
+        for (String name : GATED) {
+            register(dispatcher, name);
+        }
+        for (String name : UNGATED) {
+            register(dispatcher, name);
+        }
+        matcher = new GatedCommandMatcher(GATED);
+        legacyGated = new HashSet<>(GATED);
+
+        Object source = new Object();
+        gatedParse = dispatcher.parse("gamemode creative", source);
+        ungatedParse = dispatcher.parse("say hello", source);
+        unknownParse = dispatcher.parse("minecraft:unknowncommand arg", source);
+        // Built once per dispatcher, as the first intercepted command does on a server
+        index = matcher.index(dispatcher.getRoot());
+    }
+
+    private static void register(CommandDispatcher<Object> dispatcher, String name) {
+        dispatcher.register(LiteralArgumentBuilder.literal(name)
+            .executes(context -> 1)
+            .then(RequiredArgumentBuilder.argument("args", StringArgumentType.greedyString()).executes(context -> 1)));
+    }
+
+    @Benchmark
+    public String gatedParsed() {
+        return index.match(gatedParse);
+    }
+
+    @Benchmark
+    public String ungatedParsed() {
+        return index.match(ungatedParse);
+    }
+
+    // Input Brigadier could not parse falls back to matching the raw string
+    @Benchmark
+    public String unparsedFallback() {
+        return index.match(unknownParse);
+    }
+
+    @Benchmark
+    public String gatedString() {
+        return matcher.match("/minecraft:gamemode creative");
+    }
+
+    @Benchmark
+    public String ungatedString() {
+        return matcher.match("/say hello");
+    }
+
+    // The check onCommandEvent made before the matcher, without its per-command player NBT read and write
+    @Benchmark
+    @OperationsPerInvocation(20)
+    public int legacyMix() {
+        int gated = 0;
+        for (String command : COMMAND_MIX) {
+            if (legacyGated.contains(command.split(" ")[0].replace("/", ""))) gated++;
+        }
+        return gated;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(20)
+    public int stringMix() {
+        int gated = 0;
+        for (String command : COMMAND_MIX) {
+            if (matcher.match(command) != null) gated++;
+        }
+        return gated;
+    }
+}
@@ -0,0 +1,81 @@
+package se.dpixie.democraticcommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Server start after a crash: replaying a journal of open votes with most of their ballots cast and re-opening
+// them in a fresh engine. No world snapshot is involved, so every vote comes from the journal alone. The largest
+// case, 500 votes of 500 voters, replays about 190k ballot records. Run with -PjmhIncludes=RecoveryBenchmark.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecoveryBenchmark {
+    @Param({"100", "500"})
+    public int openVotes;
+
+    @Param({"50", "500"})
+    public int voters;
+
+    private Path dir;
+    private Path file;
+    private VotingPolicy policy;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = Files.createTempDirectory("journal-bench");
+        file = dir.resolve("votes.journal");
+        policy = new VotingPolicy(Electorate.DEFAULT_RULES, Map.of(), List.of(), new int[] { 10 },
+            DemocraticCommandsMod.Config.StatusDisplay.BOSS_BAR, 10, false, 8, true, VotingPolicy.Deduplication.OFF,
+            VotingPolicy.RateLimits.OFF, new VotingPolicy.Execution(5, 4096, 32768), Map.of(),
+            true, DemocraticCommandsMod.Config.DepartedVoters.ABSTAIN, Map.of());
+
+        Electorate electorate = new Electorate(voters, 42);
+        VoteJournal journal = new VoteJournal(file, VoteJournal.Snapshot.EMPTY);
+        journal.begin(0);
+        for (int id = 1; id <= openVotes; id++) {
+            ActiveVote vote = electorate.vote(id, id % voters);
+            journal.proposed(vote, id);
+            // Three quarters of the electorate has voted
+            for (int slot = 0; slot < voters * 3 / 4; slot++) {
+                journal.ballot(id, slot, slot % 3 == 0 ? BallotBox.NO : BallotBox.YES, id);
+            }
+        }
+        journal.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public VotingEngine recover() throws IOException {
+        VotingEngine engine = new VotingEngine(Collections::emptyList, new VoteSink() { }, System::currentTimeMillis);
+        try (VoteJournal journal = new VoteJournal(file, VoteJournal.Snapshot.EMPTY)) {
+            VoteJournal.Recovery recovery = journal.recovered();
+            for (SavedVote saved : recovery.votes()) {
+                engine.restore(policy, saved, recovery.ticksLeft(saved));
+            }
+        }
+        return engine;
+    }
+}
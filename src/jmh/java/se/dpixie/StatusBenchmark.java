@@ -0,0 +1,52 @@
+package se.dpixie.democraticcommands;
+
+import net.minecraft.network.chat.MutableComponent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import se.dpixie.democraticcommands.DemocraticCommandsMod.VotingEventHandler;
+
+// Building the live tally line pushed to the boss bar, action bar or chat; the vote's fixed message parts are
+// built on the first call and reused after that
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StatusBenchmark {
+    @Param({"10", "1000"})
+    public int voters;
+
+    private ActiveVote vote;
+
+    @Setup
+    public void setup() {
+        Electorate electorate = new Electorate(voters, 42);
+        vote = electorate.vote(17, 0);
+        for (int i = 0; i < voters / 3; i++) {
+            vote.vote(electorate.voters[i], i % 2 == 0);
+        }
+    }
+
+    @Benchmark
+    public MutableComponent statusLine() {
+        return VotingEventHandler.statusLine(vote);
+    }
+
+    // What a CHAT status update builds once and shares with every recipient
+    @Benchmark
+    public MutableComponent chatStatus() {
+        return VotingEventHandler.messagesFor(vote).chatStatus(vote.tally(), 17);
+    }
+
+    @Benchmark
+    public String namesWithYes() {
+        return String.join(", ", vote.ballots.namesWith(BallotBox.YES));
+    }
+}
@@ -0,0 +1,6 @@
+package se.dpixie.democraticcommands;
+
+import java.util.UUID;
+
+record SyntheticVoter(UUID id, String name) implements Voter {
+}
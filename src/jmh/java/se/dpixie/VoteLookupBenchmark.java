@@ -0,0 +1,66 @@
+package se.dpixie.democraticcommands;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Finding the vote a ballot or proposal refers to while several votes are open at once
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VoteLookupBenchmark {
+    private static final int PLAYERS = 200;
+
+    @Param({"1", "8", "64"})
+    public int openVotes;
+
+    private Electorate electorate;
+    private VoteRegistry registry;
+    private int next;
+
+    @Setup
+    public void setup() {
+        electorate = new Electorate(PLAYERS, 42);
+        registry = new VoteRegistry();
+        Random random = new Random(42);
+        for (int i = 0; i < openVotes; i++) {
+            registry.register(electorate.vote(registry.allocateId(), i, PLAYERS / 2, random));
+        }
+    }
+
+    // Bare /vote yes
+    @Benchmark
+    public ActiveVote latestForVoter() {
+        return registry.latestFor(electorate.voters[next++ % PLAYERS]);
+    }
+
+    // /vote yes <id>
+    @Benchmark
+    public ActiveVote byId() {
+        return registry.get(1 + next++ % openVotes);
+    }
+
+    // The one-vote-per-initiator check made for every proposal
+    @Benchmark
+    public ActiveVote byInitiator() {
+        return registry.getByInitiator(electorate.voters[next++ % PLAYERS]);
+    }
+
+    @Benchmark
+    public int registerAndRemove() {
+        UUID initiator = electorate.voters[PLAYERS - 1];
+        ActiveVote vote = electorate.vote(registry.allocateId(), PLAYERS - 1);
+        registry.register(vote);
+        registry.remove(vote);
+        return registry.getByInitiator(initiator) == null ? 0 : 1;
+    }
+}
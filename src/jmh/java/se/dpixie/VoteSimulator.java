@@ -0,0 +1,298 @@
+package se.dpixie.democraticcommands;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+// Deterministic load simulation of the voting engine. Thousands of synthetic players join and leave, propose
+// commands and cast ballots with a configurable delay distribution, all driven tick by tick without a server.
+// The same seed always produces the same sequence of proposals and ballots; only the timings differ between runs.
+//
+//   ./gradlew simulate --args="--players 5000 --minutes 30 --proposalsPerMinute 60 --timing LOGNORMAL"
+//
+// Reports throughput, ballot latency percentiles (time spent inside VotingEngine.cast) and the bytes allocated
+// by engine calls.
+public class VoteSimulator {
+    enum Timing { UNIFORM, EXPONENTIAL, LOGNORMAL }
+
+    private static final List<String> COMMANDS = List.of(
+        "time set day", "weather clear", "gamemode creative", "difficulty peaceful", "give @p diamond 1",
+        "tp @p 0 100 0", "kill @e[type=zombie]", "gamerule keepInventory true");
+
+    // Settings, overridable as --name value
+    private int players = 2000;
+    private int minutes = 30;
+    private int warmupMinutes = 5;
+    private double joinsPerMinute = 120;
+    private double leavesPerMinute = 120;
+    private double proposalsPerMinute = 30;
+    private double turnout = 0.8;
+    private double yesRatio = 0.6;
+    private Timing timing = Timing.LOGNORMAL;
+    private double meanDelaySeconds = 8;
+    private int timeoutSeconds = 30;
+    private long seed = 1;
+    // Merge repeated proposals and refuse recently decided ones, with the mod's default cooldowns
+    private boolean dedup = true;
+    private boolean earlyResolution = true;
+    private DemocraticCommandsMod.Config.DepartedVoters departed = DemocraticCommandsMod.Config.DepartedVoters.ABSTAIN;
+
+    private Random random;
+    private VotingEngine engine;
+    private VotingPolicy policy;
+    // Ballots waiting for their simulated voter to click, on the same tick clock as the engine
+    private final VoteScheduler pendingBallots = new VoteScheduler();
+    private final List<SyntheticVoter> online = new ArrayList<>();
+    private final Map<UUID, Integer> onlineIndex = new HashMap<>();
+    private int nextPlayer;
+
+    private final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    // Statistics, reset after the warm-up
+    private long[] latencies = new long[1 << 16];
+    private int latencyCount;
+    // Ticks from proposal to conclusion
+    private long[] durations = new long[1 << 10];
+    private int durationCount;
+    private long engineAllocated;
+    private long engineNanos;
+    private long proposed, merged, recentlyDecided, rejectedActive, rejectedVoters, ballots, ballotsLost, ballotsLate, passed, failed, executed;
+    private int peakOpenVotes;
+
+    public static void main(String[] args) {
+        VoteSimulator simulator = new VoteSimulator();
+        simulator.parse(args);
+        simulator.run();
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--players" -> players = Integer.parseInt(value);
+                case "--minutes" -> minutes = Integer.parseInt(value);
+                case "--warmupMinutes" -> warmupMinutes = Integer.parseInt(value);
+                case "--joinsPerMinute" -> joinsPerMinute = Double.parseDouble(value);
+                case "--leavesPerMinute" -> leavesPerMinute = Double.parseDouble(value);
+                case "--proposalsPerMinute" -> proposalsPerMinute = Double.parseDouble(value);
+                case "--turnout" -> turnout = Double.parseDouble(value);
+                case "--yesRatio" -> yesRatio = Double.parseDouble(value);
+                case "--timing" -> timing = Timing.valueOf(value.toUpperCase(Locale.ROOT));
+                case "--meanDelaySeconds" -> meanDelaySeconds = Double.parseDouble(value);
+                case "--timeout" -> timeoutSeconds = Integer.parseInt(value);
+                case "--seed" -> seed = Long.parseLong(value);
+                case "--dedup" -> dedup = Boolean.parseBoolean(value);
+                case "--earlyResolution" -> earlyResolution = Boolean.parseBoolean(value);
+                case "--departed" -> departed = DemocraticCommandsMod.Config.DepartedVoters.valueOf(value.toUpperCase(Locale.ROOT));
+                default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+    }
+
+    private void run() {
+        random = new Random(seed);
+        VotingPolicy.Rules rules = new VotingPolicy.Rules(timeoutSeconds, 2, 2, 0.5, true, false);
+        policy = new VotingPolicy(rules, Map.of(), List.of(), new int[] { 10 },
+            DemocraticCommandsMod.Config.StatusDisplay.BOSS_BAR, 10, false, 8, true,
+            dedup ? new VotingPolicy.Deduplication(true, 60, 30, List.of("weather", "time set", "difficulty", "gamerule", "gamemode"))
+                : VotingPolicy.Deduplication.OFF,
+            VotingPolicy.RateLimits.OFF, new VotingPolicy.Execution(5, 4096, 32768), Map.of(),
+            earlyResolution, departed, Map.of());
+        engine = new VotingEngine(() -> Collections.unmodifiableList(online), new SimulatedSink(),
+            () -> engine.currentTick() * 50);
+
+        for (int i = 0; i < players; i++) {
+            join();
+        }
+
+        long warmupTicks = VoteScheduler.secondsToTicks(warmupMinutes * 60L);
+        long measuredTicks = VoteScheduler.secondsToTicks(minutes * 60L);
+        System.out.printf("Simulating %d players for %d minutes (+%d warm-up), %s ballot delay, mean %.1fs, seed %d%n",
+            players, minutes, warmupMinutes, timing, meanDelaySeconds, seed);
+
+        simulate(warmupTicks);
+        resetStatistics();
+        long start = System.nanoTime();
+        simulate(measuredTicks);
+        report(measuredTicks, System.nanoTime() - start);
+    }
+
+    private void simulate(long ticks) {
+        double joinsPerTick = joinsPerMinute / 1200.0;
+        double leavesPerTick = leavesPerMinute / 1200.0;
+        double proposalsPerTick = proposalsPerMinute / 1200.0;
+        double joinsDue = 0, leavesDue = 0, proposalsDue = 0;
+
+        for (long tick = 0; tick < ticks; tick++) {
+            for (joinsDue += joinsPerTick; joinsDue >= 1; joinsDue--) {
+                join();
+            }
+            for (leavesDue += leavesPerTick; leavesDue >= 1 && !online.isEmpty(); leavesDue--) {
+                leave(online.get(random.nextInt(online.size())));
+            }
+            for (proposalsDue += proposalsPerTick; proposalsDue >= 1 && !online.isEmpty(); proposalsDue--) {
+                propose(online.get(random.nextInt(online.size())));
+            }
+
+            pendingBallots.tick();
+            long before = allocatedBytes();
+            long started = System.nanoTime();
+            engine.tick();
+            engineNanos += System.nanoTime() - started;
+            engineAllocated += allocatedBytes() - before;
+            peakOpenVotes = Math.max(peakOpenVotes, engine.votes().size());
+        }
+    }
+
+    private void join() {
+        int number = nextPlayer++;
+        SyntheticVoter voter = new SyntheticVoter(new UUID(seed, number), "Sim" + number);
+        onlineIndex.put(voter.id(), online.size());
+        online.add(voter);
+    }
+
+    private void leave(SyntheticVoter voter) {
+        int index = onlineIndex.remove(voter.id());
+        SyntheticVoter last = online.remove(online.size() - 1);
+        if (last != voter) {
+            online.set(index, last);
+            onlineIndex.put(last.id(), index);
+        }
+        engine.voterLeft(voter.id());
+    }
+
+    private void propose(SyntheticVoter initiator) {
+        String command = COMMANDS.get(random.nextInt(COMMANDS.size()));
+        long before = allocatedBytes();
+        long started = System.nanoTime();
+        VotingEngine.ProposalResult result = engine.propose(policy,
+            VotingEngine.Proposal.of(initiator, command, VoteHistoryStore.commandName(command)));
+        engineNanos += System.nanoTime() - started;
+        engineAllocated += allocatedBytes() - before;
+
+        switch (result.status()) {
+            case STARTED -> {
+                proposed++;
+                scheduleBallots(result.vote());
+            }
+            case MERGED -> merged++;
+            case RECENTLY_FAILED, RECENTLY_PASSED -> recentlyDecided++;
+            case ALREADY_ACTIVE -> rejectedActive++;
+            case NOT_ENOUGH_VOTERS -> rejectedVoters++;
+        }
+    }
+
+    private void castBallot(UUID voter, int voteId, boolean yes) {
+        // Players who left before getting round to it never vote
+        if (!onlineIndex.containsKey(voter)) {
+            ballotsLost++;
+            return;
+        }
+
+        long before = allocatedBytes();
+        long started = System.nanoTime();
+        VotingEngine.BallotResult result = engine.cast(voter, voteId, yes);
+        long elapsed = System.nanoTime() - started;
+        engineAllocated += allocatedBytes() - before;
+        engineNanos += elapsed;
+
+        if (latencyCount == latencies.length) {
+            latencies = Arrays.copyOf(latencies, latencies.length * 2);
+        }
+        latencies[latencyCount++] = elapsed;
+        if (result.status() == VotingEngine.BallotStatus.NO_VOTE) {
+            ballotsLate++;
+        } else {
+            ballots++;
+        }
+    }
+
+    // Decides who will vote, how and when; kept outside the measured engine call
+    private void scheduleBallots(ActiveVote vote) {
+        for (int slot = 0; slot < vote.ballots.size(); slot++) {
+            if (random.nextDouble() >= turnout) continue;
+            UUID voter = vote.ballots.voter(slot);
+            boolean yes = random.nextDouble() < yesRatio;
+            int voteId = vote.id;
+            pendingBallots.schedule(ballotDelayTicks(), () -> castBallot(voter, voteId, yes));
+        }
+    }
+
+    private long ballotDelayTicks() {
+        double meanTicks = meanDelaySeconds * VoteScheduler.TICKS_PER_SECOND;
+        double delay = switch (timing) {
+            case UNIFORM -> random.nextDouble() * 2 * meanTicks;
+            case EXPONENTIAL -> -Math.log(1 - random.nextDouble()) * meanTicks;
+            // sigma 1: a few quick clickers and a long tail of stragglers
+            case LOGNORMAL -> Math.exp(Math.log(meanTicks) - 0.5 + random.nextGaussian());
+        };
+        return Math.max(1, Math.round(delay));
+    }
+
+    private long allocatedBytes() {
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+
+    private void resetStatistics() {
+        latencyCount = 0;
+        durationCount = 0;
+        engineAllocated = 0;
+        engineNanos = 0;
+        proposed = merged = recentlyDecided = rejectedActive = rejectedVoters = ballots = ballotsLost = ballotsLate = passed = failed = executed = 0;
+        peakOpenVotes = 0;
+    }
+
+    private void report(long ticks, long wallNanos) {
+        double wallSeconds = wallNanos / 1e9;
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+
+        System.out.printf("Simulated %d ticks in %.2fs wall (%.0f ticks/s), %d players online at the end%n",
+            ticks, wallSeconds, ticks / wallSeconds, online.size());
+        System.out.printf("Proposals: %d started, %d merged, %d recently decided, %d rejected (initiator busy), " +
+            "%d rejected (too few voters), peak %d open%n",
+            proposed, merged, recentlyDecided, rejectedActive, rejectedVoters, peakOpenVotes);
+        long[] sortedDurations = Arrays.copyOf(durations, durationCount);
+        Arrays.sort(sortedDurations);
+        System.out.printf("Votes: %d passed, %d failed, %d executions requested, time to result p50 %.1fs, p99 %.1fs%n",
+            passed, failed, executed, percentile(sortedDurations, 0.50) / (double) VoteScheduler.TICKS_PER_SECOND,
+            percentile(sortedDurations, 0.99) / (double) VoteScheduler.TICKS_PER_SECOND);
+        System.out.printf("Ballots: %d cast, %d after their vote closed, %d lost to players leaving, %.0f ballots/s wall%n",
+            ballots, ballotsLate, ballotsLost, ballots / wallSeconds);
+        System.out.printf("Ballot latency: p50 %dns, p99 %dns, max %dns%n",
+            percentile(sorted, 0.50), percentile(sorted, 0.99), sorted.length == 0 ? 0 : sorted[sorted.length - 1]);
+        System.out.printf("Engine: %.1f%% of wall time, %.1f MB allocated (%.1f MB/s, %d B per ballot)%n",
+            100.0 * engineNanos / wallNanos, engineAllocated / 1e6, engineAllocated / 1e6 / wallSeconds,
+            ballots == 0 ? 0 : engineAllocated / ballots);
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    private final class SimulatedSink implements VoteSink {
+        @Override
+        public void concluded(ActiveVote vote, boolean votePassed) {
+            if (votePassed) passed++; else failed++;
+            if (durationCount == durations.length) {
+                durations = Arrays.copyOf(durations, durations.length * 2);
+            }
+            long startTick = vote.deadlineTick - VoteScheduler.secondsToTicks(vote.rules.timeoutSeconds());
+            durations[durationCount++] = engine.currentTick() - startTick;
+        }
+
+        @Override
+        public void executionRequested(ActiveVote vote) {
+            executed++;
+        }
+    }
+}
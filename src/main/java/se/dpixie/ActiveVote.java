@@ -0,0 +1,150 @@
+package se.dpixie.democraticcommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+// One open vote. Created and driven by VotingEngine; holds no Minecraft state.
+public class ActiveVote {
+    public final int id;
+    public final String command;
+    // Canonical form of the command, shared by every proposal merged into this vote
+    public final String key;
+    public final Voter initiator;
+    public final BallotBox ballots;
+    // Policy in force when the vote was proposed and the rules it resolved for this command
+    public final VotingPolicy policy;
+    public final VotingPolicy.Rules rules;
+    public final long startTime;
+    public final long deadlineTick;
+    // Set when the vote is shared with other servers
+    public final NetworkVote network;
+    private final List<VoteScheduler.Task> scheduledTasks = new ArrayList<>(2);
+    // Players who proposed the same command while this vote was open
+    private final List<Voter> coInitiators = new ArrayList<>(0);
+
+    // Live tally display, see VotingEngine.markStatusDirty
+    boolean statusDirty;
+    long lastStatusFlushTick = Long.MIN_VALUE / 2;
+    VoteScheduler.Task statusFlushTask;
+    private Boolean outcome;
+    private boolean closed;
+
+    // network is null unless the vote is shared with other servers
+    public ActiveVote(int id, String command, String key, Voter initiator, BallotBox ballots, VotingPolicy policy,
+                      VotingPolicy.Rules rules, long startTime, long deadlineTick, NetworkVote network) {
+        this.id = id;
+        this.command = command;
+        this.key = key;
+        this.initiator = initiator;
+        this.ballots = ballots;
+        this.policy = policy;
+        this.rules = rules;
+        this.startTime = startTime;
+        this.deadlineTick = deadlineTick;
+        this.network = network;
+    }
+
+    public boolean hasVoted(UUID playerId) {
+        return ballots.hasVoted(playerId);
+    }
+
+    public void vote(UUID playerId, boolean yes) {
+        ballots.cast(playerId, yes);
+    }
+
+    // False when this player already proposed the vote
+    public boolean addCoInitiator(Voter voter) {
+        if (voter.id().equals(initiator.id())) return false;
+        for (Voter coInitiator : coInitiators) {
+            if (coInitiator.id().equals(voter.id())) return false;
+        }
+        coInitiators.add(voter);
+        return true;
+    }
+
+    public List<Voter> coInitiators() {
+        return coInitiators;
+    }
+
+    public void markAbstained() {
+        ballots.markAbstained();
+        closed = true;
+    }
+
+    // Ballots on this server plus, for a network vote, those reported by the others. Once the vote has closed,
+    // the other servers' undecided voters count as abstaining like the local ones.
+    public Tally tally() {
+        Tally tally = Tally.of(ballots);
+        if (network != null) {
+            tally = tally.plus(network.remote());
+        }
+        return closed ? tally.closed() : tally;
+    }
+
+    public boolean isMirror() {
+        return network != null && network.mirror;
+    }
+
+    // A mirror's outcome is the one its origin decided
+    void decideRemotely(boolean passed) {
+        outcome = passed;
+    }
+
+    // Decides the vote once; later calls (summary, history) reuse the result
+    public boolean resolve() {
+        if (outcome == null) {
+            outcome = isPassed();
+        }
+        return outcome;
+    }
+
+    public boolean isPassed() {
+        return network == null ? rules.passes(ballots) : rules.passes(tally());
+    }
+
+    public int getTimeRemaining(long currentTick) {
+        long ticksLeft = Math.max(0, deadlineTick - currentTick);
+        return (int) ((ticksLeft + VoteScheduler.TICKS_PER_SECOND - 1) / VoteScheduler.TICKS_PER_SECOND);
+    }
+
+    // Expiry and reminder tasks belonging to this vote, cancelled when it concludes early
+    public void track(VoteScheduler.Task task) {
+        scheduledTasks.add(task);
+    }
+
+    public void cancelScheduled() {
+        for (VoteScheduler.Task task : scheduledTasks) {
+            task.cancel();
+        }
+        scheduledTasks.clear();
+        if (statusFlushTask != null) {
+            statusFlushTask.cancel();
+            statusFlushTask = null;
+        }
+    }
+
+    public String getVoteSummary() {
+        StringBuilder summary = new StringBuilder();
+        summary.append("Command: /").append(command).append("\n");
+        summary.append("Initiator: ").append(initiator.name()).append("\n");
+        if (!coInitiators.isEmpty()) {
+            summary.append("Co-initiators: ");
+            summary.append(String.join(", ", coInitiators.stream().map(Voter::name).toList())).append("\n");
+        }
+        summary.append("YES votes (").append(ballots.yesCount()).append("): ");
+        summary.append(String.join(", ", ballots.namesWith(BallotBox.YES))).append("\n");
+        summary.append("NO votes (").append(ballots.noCount()).append("): ");
+        summary.append(String.join(", ", ballots.namesWith(BallotBox.NO))).append("\n");
+        summary.append("Abstained (").append(ballots.abstainedCount()).append("): ");
+        summary.append(String.join(", ", ballots.namesWith(BallotBox.ABSTAIN))).append("\n");
+        if (network != null) {
+            Tally remote = network.remote();
+            summary.append("Other servers (").append(network.reportingServers()).append("): YES ").append(remote.yes())
+                .append(", NO ").append(remote.no()).append(", abstained ").append(remote.abstained() + (closed ? remote.undecided() : 0))
+                .append("\n");
+        }
+        summary.append("Result: ").append((outcome != null ? outcome : isPassed()) ? "PASSED" : "FAILED");
+        return summary.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package se.dpixie.democraticcommands;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.zip.GZIPInputStream;
+
+// Streams the free-text audit log (audit.txt plus rotated audit-*.txt[.gz] segments) into a VoteHistoryStore.
+// Only concluded votes are imported; the matching INITIATED entry, when present, supplies the start time.
+// A resumed import skips the votes an interrupted earlier attempt already appended, so it can be retried safely.
+public class AuditLogImporter {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final VoteHistoryStore store;
+    private final Function<String, UUID> nameResolver;
+    private final Map<String, UUID> resolved = new HashMap<>();
+    private final Map<String, Long> pendingStarts = new HashMap<>();
+    private final long importBefore;
+    private final Map<String, Integer> alreadyImported = new HashMap<>();
+    private int imported;
+
+    // Entries stamped at or after importBefore are skipped so nothing written by the running server is imported
+    // twice. A resumed import must pass the importBefore of the first attempt so it sees the same entries.
+    public AuditLogImporter(VoteHistoryStore store, Function<String, UUID> nameResolver, long importBefore,
+                            boolean resume) throws IOException {
+        this.store = store;
+        this.nameResolver = nameResolver;
+        this.importBefore = importBefore;
+        if (resume) {
+            // Imported records start before importBefore and live ones after it, so only the former are counted
+            for (int id = 0; id < store.size(); id++) {
+                VoteHistoryStore.VoteRecord record = store.get(id);
+                if (record.startedAt() < importBefore) {
+                    alreadyImported.merge(recordKey(record.startedAt(), record.initiatorName(), record.command(),
+                        record.passed()), 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private static String recordKey(long startedAt, String initiatorName, String command, boolean passed) {
+        return startedAt + "\u0000" + initiatorName + '\u0000' + command + '\u0000' + passed;
+    }
+
+    // Imports all segments in a log directory oldest first and returns the number of votes imported
+    public int importDirectory(Path logDir) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        if (Files.isDirectory(logDir)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(logDir, "audit-*.txt{,.gz}")) {
+                stream.forEach(segments::add);
+            }
+        }
+        // Segment names embed a sortable timestamp
+        segments.sort(null);
+        Path live = logDir.resolve("audit.txt");
+        if (Files.exists(live)) {
+            segments.add(live);
+        }
+        for (Path segment : segments) {
+            try (InputStream in = open(segment)) {
+                importStream(in);
+            }
+        }
+        return imported;
+    }
+
+    private static InputStream open(Path segment) throws IOException {
+        InputStream in = Files.newInputStream(segment);
+        return segment.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, 65536) : in;
+    }
+
+    public int importStream(InputStream input) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 65536);
+        Map<String, String> fields = new HashMap<>();
+        long timestamp = -1;
+        String status = null;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.startsWith("[") && line.contains("] Vote ")) {
+                int close = line.indexOf(']');
+                timestamp = parseTimestamp(line.substring(1, close));
+                status = line.substring(line.indexOf("] Vote ") + 7).trim();
+                fields.clear();
+            } else if (line.equals(AuditLogWriter.SEPARATOR)) {
+                if (status != null && timestamp >= 0) {
+                    handleEntry(timestamp, status, fields);
+                }
+                status = null;
+                fields.clear();
+            } else if (status != null) {
+                int colon = line.indexOf(": ");
+                if (colon > 0) {
+                    String key = line.substring(0, colon);
+                    int paren = key.indexOf(" (");
+                    fields.put(paren > 0 ? key.substring(0, paren) : key, line.substring(colon + 2));
+                } else if (line.endsWith(":")) {
+                    // "YES votes (0): " loses its trailing space when the list is empty and the line is trimmed
+                    String key = line.substring(0, line.length() - 1);
+                    int paren = key.indexOf(" (");
+                    fields.put(paren > 0 ? key.substring(0, paren) : key, "");
+                }
+            }
+        }
+        return imported;
+    }
+
+    private void handleEntry(long timestamp, String status, Map<String, String> fields) throws IOException {
+        String command = fields.get("Command");
+        String initiatorName = fields.get("Initiator");
+        if (command == null || initiatorName == null || timestamp >= importBefore) {
+            return;
+        }
+        if (command.startsWith("/")) {
+            command = command.substring(1);
+        }
+        String key = initiatorName + '\u0000' + command;
+
+        if (status.equals("INITIATED")) {
+            pendingStarts.put(key, timestamp);
+            return;
+        }
+        if (!status.equals("PASSED") && !status.equals("FAILED")) {
+            return;
+        }
+
+        Long started = pendingStarts.remove(key);
+        long startedAt = started != null ? started : timestamp;
+        boolean passed = status.equals("PASSED");
+        // Entries are replayed in the same order every attempt, so each stored duplicate cancels exactly one entry
+        String recordKey = recordKey(startedAt, initiatorName, command, passed);
+        Integer existing = alreadyImported.get(recordKey);
+        if (existing != null) {
+            if (existing == 1) {
+                alreadyImported.remove(recordKey);
+            } else {
+                alreadyImported.put(recordKey, existing - 1);
+            }
+            return;
+        }
+
+        List<VoteHistoryStore.Ballot> ballots = new ArrayList<>();
+        addBallots(ballots, fields.get("YES votes"), VoteHistoryStore.BALLOT_YES);
+        addBallots(ballots, fields.get("NO votes"), VoteHistoryStore.BALLOT_NO);
+        addBallots(ballots, fields.get("Abstained"), VoteHistoryStore.BALLOT_ABSTAIN);
+
+        store.append(new VoteHistoryStore.VoteRecord(-1, startedAt, timestamp, command,
+            resolve(initiatorName), initiatorName, passed, ballots));
+        imported++;
+    }
+
+    private void addBallots(List<VoteHistoryStore.Ballot> ballots, String names, byte choice) {
+        if (names == null || names.isBlank()) return;
+        for (String name : names.split(", ")) {
+            String trimmed = name.trim();
+            if (!trimmed.isEmpty() && !trimmed.equals("null")) {
+                ballots.add(new VoteHistoryStore.Ballot(resolve(trimmed), trimmed, choice));
+            }
+        }
+    }
+
+    private UUID resolve(String name) {
+        return resolved.computeIfAbsent(name, nameResolver);
+    }
+
+    private static long parseTimestamp(String text) {
+        try {
+            return LocalDateTime.parse(text, TIMESTAMP_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
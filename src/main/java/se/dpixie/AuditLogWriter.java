@@ -0,0 +1,421 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+// Writes audit entries from a background thread so the server tick never touches the disk.
+// Producers reserve a slot in a bounded lock-free queue; the writer drains it in batches,
+// keeps the file channel open between batches and rotates/compresses old segments.
+public class AuditLogWriter implements AutoCloseable {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public enum BackpressurePolicy {
+        DROP,   // Discard the entry and count it
+        BLOCK,  // Wait on the calling thread until the writer frees a slot
+        SPILL   // Append the entry straight to the spill file on the calling thread
+    }
+
+    public enum FsyncPolicy {
+        NEVER,    // Leave flushing to the OS
+        BATCH,    // fsync after every written batch
+        INTERVAL  // fsync at most once per configured interval
+    }
+
+    public static final String SEPARATOR = "----------------------------------------";
+
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+        .withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter SEGMENT_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS")
+        .withZone(ZoneId.systemDefault());
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private final Path directory;
+    private final Path logFile;
+    private final Path spillFile;
+    private final int capacity;
+    private final BackpressurePolicy backpressure;
+    private final FsyncPolicy fsync;
+    private final long fsyncIntervalNanos;
+    private final long rotateBytes;
+    private final long rotateMillis;
+    private final boolean compressRotated;
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+    // Producers between checking running and queueing their entry; the writer keeps draining until it's zero
+    private final AtomicInteger appending = new AtomicInteger();
+
+    // Writer-thread state
+    private FileChannel channel;
+    private long fileSize;
+    private long nextRotationMillis;
+    // After a failed rotation the current file is kept until then
+    private long rotationRetryMillis;
+    private long lastFsyncNanos;
+    private boolean unsynced;
+    private final StringBuilder batchText = new StringBuilder(4096);
+    // A batch taken off the queue that hasn't been written yet, retried after a failed write
+    private byte[] pendingBatch;
+    private int pendingCount;
+
+    // Stats, readable from any thread
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private volatile long lastFlushNanos;
+    private volatile long maxFlushNanos;
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+
+    public AuditLogWriter(Path directory, int capacity, BackpressurePolicy backpressure, FsyncPolicy fsync,
+                          long fsyncIntervalMillis, long rotateBytes, long rotateMillis, boolean compressRotated) throws IOException {
+        this.directory = directory;
+        this.logFile = directory.resolve("audit.txt");
+        this.spillFile = directory.resolve("audit.spill.txt");
+        this.capacity = capacity;
+        this.backpressure = backpressure;
+        this.fsync = fsync;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.rotateBytes = rotateBytes;
+        this.rotateMillis = rotateMillis;
+        this.compressRotated = compressRotated;
+
+        Files.createDirectories(directory);
+        openChannel();
+
+        this.writerThread = new Thread(this::runWriter, "DemocraticCommands-AuditWriter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    // Called from the server thread. Never touches the disk unless the policy is SPILL and the queue is full.
+    public void append(String status, String body) {
+        Entry entry = new Entry(System.currentTimeMillis(), status, body);
+        appending.incrementAndGet();
+        try {
+            enqueue(entry);
+        } finally {
+            appending.decrementAndGet();
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        // Checked after announcing the append, so close() either sees this entry or this sees close()
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        if (!reserveSlot()) {
+            switch (backpressure) {
+                case DROP -> {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                case SPILL -> {
+                    spill(entry);
+                    return;
+                }
+                case BLOCK -> {
+                    while (!reserveSlot()) {
+                        if (!running) {
+                            dropped.incrementAndGet();
+                            return;
+                        }
+                        LockSupport.unpark(writerThread);
+                        LockSupport.parkNanos(100_000L);
+                    }
+                }
+            }
+        }
+
+        queue.offer(entry);
+        LockSupport.unpark(writerThread);
+    }
+
+    private boolean reserveSlot() {
+        int current;
+        do {
+            current = depth.get();
+            if (current >= capacity) {
+                return false;
+            }
+        } while (!depth.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private synchronized void spill(Entry entry) {
+        try {
+            Files.writeString(spillFile, format(entry, new StringBuilder()),
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            spilled.incrementAndGet();
+        } catch (IOException e) {
+            dropped.incrementAndGet();
+            LOGGER.warn("Failed to spill audit entry: {}", e.getMessage());
+        }
+    }
+
+    private void runWriter() {
+        while (running || appending.get() > 0 || !queue.isEmpty() || pendingBatch != null) {
+            try {
+                if (!writeBatch()) {
+                    syncIfDue(System.nanoTime());
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Audit log write failed: {}", e.getMessage());
+                if (!running && appending.get() == 0 && queue.isEmpty()) {
+                    // Shutting down and the disk keeps failing; give up on the batch rather than hang
+                    dropped.addAndGet(pendingCount);
+                    pendingBatch = null;
+                    break;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+
+        try {
+            if (channel != null) {
+                channel.force(false);
+                channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close audit log: {}", e.getMessage());
+        }
+    }
+
+    // Drains up to MAX_BATCH entries and writes them with a single channel write. A batch that fails to write is
+    // kept and written by the next call.
+    private boolean writeBatch() throws IOException {
+        if (pendingBatch == null) {
+            batchText.setLength(0);
+            int count = 0;
+            Entry entry;
+            while (count < MAX_BATCH && (entry = queue.poll()) != null) {
+                format(entry, batchText);
+                count++;
+            }
+            if (count == 0) {
+                return false;
+            }
+            depth.addAndGet(-count);
+            pendingBatch = batchText.toString().getBytes(StandardCharsets.UTF_8);
+            pendingCount = count;
+        }
+
+        byte[] bytes = pendingBatch;
+        int count = pendingCount;
+        if (channel == null || !channel.isOpen()) {
+            openChannel();
+        }
+        rotateIfNeeded(bytes.length);
+
+        long start = System.nanoTime();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        fileSize += bytes.length;
+        unsynced = true;
+        if (fsync == FsyncPolicy.BATCH) {
+            channel.force(false);
+            unsynced = false;
+        } else {
+            syncIfDue(System.nanoTime());
+        }
+        pendingBatch = null;
+        recordFlush(System.nanoTime() - start);
+        written.addAndGet(count);
+        return true;
+    }
+
+    private void syncIfDue(long now) throws IOException {
+        if (fsync != FsyncPolicy.INTERVAL || !unsynced || now - lastFsyncNanos < fsyncIntervalNanos) {
+            return;
+        }
+        channel.force(false);
+        lastFsyncNanos = now;
+        unsynced = false;
+    }
+
+    private void recordFlush(long nanos) {
+        lastFlushNanos = nanos;
+        if (nanos > maxFlushNanos) {
+            maxFlushNanos = nanos;
+        }
+        totalFlushNanos.addAndGet(nanos);
+        flushCount.incrementAndGet();
+    }
+
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        fileSize = channel.size();
+
+        // Time based rotation counts from when the current segment was started, not from server start. File
+        // creation times aren't reliable on Linux, so an existing segment is dated by its first entry.
+        long segmentStart = System.currentTimeMillis();
+        if (fileSize > 0) {
+            segmentStart = Math.min(segmentStart, firstEntryTime(logFile, segmentStart));
+        }
+        nextRotationMillis = rotateMillis > 0 ? segmentStart + rotateMillis : Long.MAX_VALUE;
+    }
+
+    // Every entry starts with "\n[yyyy-MM-dd HH:mm:ss]"
+    private static long firstEntryTime(Path file, long fallback) {
+        byte[] head = new byte[64];
+        int length;
+        try (InputStream in = Files.newInputStream(file)) {
+            length = in.readNBytes(head, 0, head.length);
+        } catch (IOException e) {
+            return fallback;
+        }
+        String text = new String(head, 0, length, StandardCharsets.UTF_8);
+        int open = text.indexOf('[');
+        int close = text.indexOf(']', open + 1);
+        if (open < 0 || close < 0) return fallback;
+        try {
+            return LocalDateTime.parse(text.substring(open + 1, close), TIMESTAMP_FORMAT)
+                .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return fallback;
+        }
+    }
+
+    private void rotateIfNeeded(int incoming) throws IOException {
+        boolean sizeExceeded = rotateBytes > 0 && fileSize > 0 && fileSize + incoming > rotateBytes;
+        boolean timeExceeded = fileSize > 0 && System.currentTimeMillis() >= nextRotationMillis;
+        if (!sizeExceeded && !timeExceeded || System.currentTimeMillis() < rotationRetryMillis) {
+            return;
+        }
+
+        channel.force(false);
+        channel.close();
+        unsynced = false;
+
+        Path rolled = rolledName();
+        try {
+            Files.move(logFile, rolled);
+        } catch (IOException e) {
+            // Keep appending to the current file and try again in a minute
+            openChannel();
+            rotationRetryMillis = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(1);
+            LOGGER.warn("Failed to rotate audit log to {}: {}", rolled.getFileName(), e.getMessage());
+            return;
+        }
+        openChannel();
+
+        if (compressRotated) {
+            compress(rolled);
+        }
+    }
+
+    // Names sort by time; a name already taken, e.g. by a second rotation within the same millisecond, is moved on
+    // by a millisecond
+    private Path rolledName() {
+        long millis = System.currentTimeMillis();
+        while (true) {
+            String name = "audit-" + SEGMENT_FORMAT.format(Instant.ofEpochMilli(millis)) + ".txt";
+            Path rolled = directory.resolve(name);
+            if (!Files.exists(rolled) && !Files.exists(directory.resolve(name + ".gz"))) {
+                return rolled;
+            }
+            millis++;
+        }
+    }
+
+    private static void compress(Path rolled) {
+        Path target = rolled.resolveSibling(rolled.getFileName() + ".gz");
+        try (InputStream in = Files.newInputStream(rolled);
+             OutputStream out = new GZIPOutputStream(Files.newOutputStream(target), 65536)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to compress {}: {}", rolled.getFileName(), e.getMessage());
+            return;
+        }
+        try {
+            Files.delete(rolled);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to remove {}: {}", rolled.getFileName(), e.getMessage());
+        }
+    }
+
+    private static StringBuilder format(Entry entry, StringBuilder out) {
+        out.append("\n[").append(TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(entry.timestamp))).append("] Vote ")
+            .append(entry.status).append('\n')
+            .append(entry.body).append('\n')
+            .append(SEPARATOR).append('\n');
+        return out;
+    }
+
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public long getLastFlushNanos() {
+        return lastFlushNanos;
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos;
+    }
+
+    public long getAverageFlushNanos() {
+        long count = flushCount.get();
+        return count == 0 ? 0 : totalFlushNanos.get() / count;
+    }
+
+    public long getWritten() {
+        return written.get();
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    public String describeStats() {
+        return String.format("queue %d/%d, written %d, dropped %d, spilled %d, flush last %.2fms avg %.2fms max %.2fms",
+            getQueueDepth(), capacity, getWritten(), getDropped(), getSpilled(),
+            getLastFlushNanos() / 1_000_000.0, getAverageFlushNanos() / 1_000_000.0, getMaxFlushNanos() / 1_000_000.0);
+    }
+
+    // Stops accepting entries, drains whatever is queued and fsyncs the file.
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record Entry(long timestamp, String status, String body) {}
+}
@@ -0,0 +1,187 @@
+package se.dpixie.democraticcommands;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+// Ballots of one vote. Every eligible voter gets a slot when the vote is created; ballots are one byte per
+// slot and the yes/no/abstain totals are kept as running counters, so casting, tallying and checking a
+// voter are O(1) and nothing here walks a hash set.
+//
+// The UUID -> slot table is open-addressed over a plain int array (slot + 1, 0 = empty).
+public class BallotBox {
+    public static final byte NONE = 0;
+    public static final byte YES = 1;
+    public static final byte NO = 2;
+    public static final byte ABSTAIN = 3;
+    // Left the server during the vote under DepartedVoters.EXCLUDE; no longer part of the electorate
+    public static final byte EXCLUDED = 4;
+
+    private final UUID[] voters;
+    private final String[] names;
+    private final byte[] ballots;
+    private final int[] table;
+    private final int mask;
+
+    private int yes;
+    private int no;
+    private int abstained;
+    private int excluded;
+
+    public BallotBox(UUID[] voters, String[] names) {
+        if (voters.length != names.length) {
+            throw new IllegalArgumentException("voters and names differ in length");
+        }
+        this.voters = voters;
+        this.names = names;
+        this.ballots = new byte[voters.length];
+
+        int capacity = Integer.highestOneBit(Math.max(4, voters.length * 2 - 1)) << 1;
+        this.table = new int[capacity];
+        this.mask = capacity - 1;
+        for (int slot = 0; slot < voters.length; slot++) {
+            int index = hash(voters[slot]) & mask;
+            while (table[index] != 0) {
+                if (voters[table[index] - 1].equals(voters[slot])) {
+                    throw new IllegalArgumentException("Duplicate voter " + voters[slot]);
+                }
+                index = (index + 1) & mask;
+            }
+            table[index] = slot + 1;
+        }
+    }
+
+    // Each eligible voter gets a fixed ballot slot for the lifetime of the vote
+    public static BallotBox of(Collection<? extends Voter> electorate) {
+        UUID[] voters = new UUID[electorate.size()];
+        String[] names = new String[electorate.size()];
+        int slot = 0;
+        for (Voter voter : electorate) {
+            voters[slot] = voter.id();
+            names[slot] = voter.name();
+            slot++;
+        }
+        return new BallotBox(voters, names);
+    }
+
+    private static int hash(UUID id) {
+        long bits = id.getMostSignificantBits() ^ id.getLeastSignificantBits();
+        int h = (int) (bits ^ (bits >>> 32));
+        return h ^ (h >>> 16);
+    }
+
+    // Slot of the voter, or -1 if they aren't eligible
+    public int slotOf(UUID voter) {
+        int index = hash(voter) & mask;
+        int entry;
+        while ((entry = table[index]) != 0) {
+            if (voters[entry - 1].equals(voter)) {
+                return entry - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    public boolean isEligible(UUID voter) {
+        return slotOf(voter) >= 0;
+    }
+
+    public boolean hasVoted(UUID voter) {
+        int slot = slotOf(voter);
+        return slot >= 0 && (ballots[slot] == YES || ballots[slot] == NO);
+    }
+
+    public byte ballot(int slot) {
+        return ballots[slot];
+    }
+
+    // Records a ballot and returns the previous one, or -1 if the voter isn't eligible
+    public byte cast(UUID voter, boolean approve) {
+        int slot = slotOf(voter);
+        if (slot < 0) return -1;
+        return set(slot, approve ? YES : NO);
+    }
+
+    public byte set(int slot, byte ballot) {
+        byte previous = ballots[slot];
+        if (previous == ballot) return previous;
+        adjust(previous, -1);
+        adjust(ballot, 1);
+        ballots[slot] = ballot;
+        return previous;
+    }
+
+    private void adjust(byte ballot, int delta) {
+        switch (ballot) {
+            case YES -> yes += delta;
+            case NO -> no += delta;
+            case ABSTAIN -> abstained += delta;
+            case EXCLUDED -> excluded += delta;
+            default -> { }
+        }
+    }
+
+    // Everyone who hasn't voted abstains
+    public void markAbstained() {
+        for (int slot = 0; slot < ballots.length; slot++) {
+            if (ballots[slot] == NONE) {
+                ballots[slot] = ABSTAIN;
+                abstained++;
+            }
+        }
+    }
+
+    public int yesCount() {
+        return yes;
+    }
+
+    public int noCount() {
+        return no;
+    }
+
+    public int abstainedCount() {
+        return abstained;
+    }
+
+    public int votedCount() {
+        return yes + no;
+    }
+
+    public int notVotedCount() {
+        return voters.length - yes - no;
+    }
+
+    // Voters who could still cast a ballot: not voted, not abstained and not excluded
+    public int undecidedCount() {
+        return voters.length - yes - no - abstained - excluded;
+    }
+
+    // Eligible voters the rules count, i.e. everyone not excluded
+    public int electorateSize() {
+        return voters.length - excluded;
+    }
+
+    public int size() {
+        return voters.length;
+    }
+
+    public UUID voter(int slot) {
+        return voters[slot];
+    }
+
+    public String name(int slot) {
+        return names[slot];
+    }
+
+    public List<String> namesWith(byte ballot) {
+        List<String> result = new ArrayList<>();
+        for (int slot = 0; slot < ballots.length; slot++) {
+            if (ballots[slot] == ballot) {
+                result.add(names[slot]);
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,71 @@
+package se.dpixie.democraticcommands;
+
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.PacketSendListener;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.game.ClientboundSystemChatPacket;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.ChatVisiblity;
+
+// One message for many players. ServerPlayer.sendSystemMessage makes a packet per player; a broadcast makes the
+// packet once and hands the same instance to every connection. As with sendSystemMessage, players who hid chat
+// get action bar messages but no chat messages, and a message too large to encode is replaced by the same
+// "message not delivered" notice, so an oversized vote message doesn't disconnect anyone.
+//
+// Only used from the server thread, apart from the fallback below.
+public final class ChatBroadcast {
+    private final Component message;
+    private final ClientboundSystemChatPacket packet;
+    private final PacketSendListener fallback;
+    // Built by the first connection that fails to encode the packet, on its network thread. Two connections
+    // failing at once may both build it, which is harmless.
+    private volatile ClientboundSystemChatPacket notDelivered;
+    private int sent;
+
+    private ChatBroadcast(Component message, boolean overlay) {
+        this.message = message;
+        this.packet = new ClientboundSystemChatPacket(message, overlay);
+        this.fallback = PacketSendListener.exceptionallySend(this::notDelivered);
+    }
+
+    public static ChatBroadcast chat(Component message) {
+        return new ChatBroadcast(message, false);
+    }
+
+    public static ChatBroadcast actionBar(Component message) {
+        return new ChatBroadcast(message, true);
+    }
+
+    public ChatBroadcast to(ServerPlayer player) {
+        if (packet.overlay() || player.getChatVisibility() != ChatVisiblity.HIDDEN) {
+            // The notice goes to chat, so not to players who hid it
+            player.connection.send(packet, player.getChatVisibility() != ChatVisiblity.HIDDEN ? fallback : null);
+            sent++;
+        }
+        return this;
+    }
+
+    public ChatBroadcast toAll(Iterable<ServerPlayer> players) {
+        for (ServerPlayer player : players) {
+            to(player);
+        }
+        return this;
+    }
+
+    // The notice ServerPlayer.sendSystemMessage falls back to
+    private ClientboundSystemChatPacket notDelivered() {
+        ClientboundSystemChatPacket notice = notDelivered;
+        if (notice == null) {
+            Component shortened = Component.literal(message.getString(256)).withStyle(ChatFormatting.YELLOW);
+            notice = new ClientboundSystemChatPacket(
+                Component.translatable("multiplayer.message_not_delivered", shortened).withStyle(ChatFormatting.RED), false);
+            notDelivered = notice;
+        }
+        return notice;
+    }
+
+    // Players the message went to
+    public int sent() {
+        return sent;
+    }
+}
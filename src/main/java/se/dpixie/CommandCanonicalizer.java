@@ -0,0 +1,63 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.brigadier.ParseResults;
+import com.mojang.brigadier.context.CommandContextBuilder;
+import com.mojang.brigadier.context.ParsedCommandNode;
+import com.mojang.brigadier.tree.CommandNode;
+import com.mojang.brigadier.tree.LiteralCommandNode;
+
+import java.util.Locale;
+
+// Canonical form of a proposed command, used to recognise the same proposal typed differently:
+// "/minecraft:tp  @p 0 64 0" and "teleport @p 0 64 0" both become "teleport @p 0 64 0".
+//
+// A complete Brigadier parse gives literals by node, with aliases such as tp replaced by the command they redirect
+// to, and arguments as typed, separated by single spaces. Input that does not parse is only normalized as text.
+public final class CommandCanonicalizer {
+    private CommandCanonicalizer() {
+    }
+
+    // The parse must come from a source allowed to run the command, otherwise Brigadier stops at the root
+    public static <S> String canonicalize(ParseResults<S> parse) {
+        String input = parse.getReader().getString();
+        if (parse.getReader().canRead() || !parse.getExceptions().isEmpty() || parse.getContext().getNodes().isEmpty()) {
+            return normalize(input);
+        }
+
+        StringBuilder key = new StringBuilder(input.length());
+        for (CommandContextBuilder<S> context = parse.getContext(); context != null; context = context.getChild()) {
+            for (ParsedCommandNode<S> parsed : context.getNodes()) {
+                if (!key.isEmpty()) key.append(' ');
+                if (parsed.getNode() instanceof LiteralCommandNode<S> literal) {
+                    CommandNode<S> target = literal.getRedirect();
+                    key.append(target instanceof LiteralCommandNode<S> aliased ? aliased.getLiteral() : literal.getLiteral());
+                } else {
+                    key.append(parsed.getRange().get(input));
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    // Leading slash and namespace removed, command name lower-cased, runs of whitespace collapsed
+    public static String normalize(String input) {
+        String trimmed = input.trim();
+        if (trimmed.startsWith("/")) trimmed = trimmed.substring(1);
+        String[] words = trimmed.split("\\s+");
+        String name = words[0].toLowerCase(Locale.ROOT);
+        int colon = name.indexOf(':');
+        words[0] = colon >= 0 ? name.substring(colon + 1) : name;
+        return String.join(" ", words);
+    }
+
+    // The text the dispatcher should parse: no leading slash or namespace on the command name
+    public static String stripPrefix(String input) {
+        int start = input.startsWith("/") ? 1 : 0;
+        int space = input.indexOf(' ', start);
+        int colon = input.indexOf(':', start);
+        if (colon >= 0 && (space < 0 || colon < space)) {
+            start = colon + 1;
+        }
+        return input.substring(start);
+    }
+}
@@ -0,0 +1,109 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.brigadier.builder.ArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.tree.CommandNode;
+import com.mojang.brigadier.tree.RootCommandNode;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.synchronization.SuggestionProviders;
+import net.minecraft.network.protocol.game.ClientboundCommandsPacket;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Command trees for players below op level, with the vote-gated commands added so they show up in suggestions.
+// They are sent in place of the vanilla tree, see CommandsMixin.
+//
+// The tree is built the way Commands.sendCommands builds it, except that the gated root commands are included
+// even though the player's requirement check rejects them. Brigadier's own nodes are never modified. A tree
+// only depends on the permission level, so one packet per level is built and sent to every player of that
+// level until the dispatcher is replaced (/reload) or the gated commands change.
+//
+// Only used from the server thread.
+public class CommandTreeCache {
+    private final ClientboundCommandsPacket[] packets = new ClientboundCommandsPacket[Commands.LEVEL_GAMEMASTERS];
+    private RootCommandNode<CommandSourceStack> root;
+    private Set<String> gatedCommands;
+
+    // Players at this level or above run gated commands directly and keep the vanilla tree
+    public static boolean needsTree(int permissionLevel) {
+        return permissionLevel < Commands.LEVEL_GAMEMASTERS;
+    }
+
+    // Drops every packet; null when the server stops
+    public void reset(RootCommandNode<CommandSourceStack> dispatcherRoot) {
+        Arrays.fill(packets, null);
+        root = dispatcherRoot;
+        gatedCommands = null;
+    }
+
+    // The cached packet for the source's permission level; source is the first player of that level to ask
+    public ClientboundCommandsPacket packetFor(RootCommandNode<CommandSourceStack> dispatcherRoot, VotingPolicy policy,
+                                               CommandSourceStack source, int permissionLevel) {
+        if (dispatcherRoot != root || policy.gatedCommands() != gatedCommands) {
+            reset(dispatcherRoot);
+            gatedCommands = policy.gatedCommands();
+        }
+        ClientboundCommandsPacket packet = packets[permissionLevel];
+        if (packet == null) {
+            packet = build(dispatcherRoot, policy, source);
+            packets[permissionLevel] = packet;
+        }
+        return packet;
+    }
+
+    public static ClientboundCommandsPacket build(RootCommandNode<CommandSourceStack> dispatcherRoot, VotingPolicy policy,
+                                                  CommandSourceStack source) {
+        VoteMetrics.COMMAND_TREE_BUILDS.increment();
+        Set<String> gated = Set.of(policy.matcher().names());
+        Map<CommandNode<CommandSourceStack>, CommandNode<SharedSuggestionProvider>> copies = new HashMap<>();
+        RootCommandNode<SharedSuggestionProvider> tree = new RootCommandNode<>();
+        copies.put(dispatcherRoot, tree);
+        for (CommandNode<CommandSourceStack> child : dispatcherRoot.getChildren()) {
+            if (child.canUse(source) || gated.contains(child.getName())) {
+                copy(child, tree, source, copies);
+            }
+        }
+        return new ClientboundCommandsPacket(tree);
+    }
+
+    private static void fill(CommandNode<CommandSourceStack> node, CommandNode<SharedSuggestionProvider> target,
+                             CommandSourceStack source,
+                             Map<CommandNode<CommandSourceStack>, CommandNode<SharedSuggestionProvider>> copies) {
+        for (CommandNode<CommandSourceStack> child : node.getChildren()) {
+            if (child.canUse(source)) {
+                copy(child, target, source, copies);
+            }
+        }
+    }
+
+    // Same as vanilla: the client gets requirement-free nodes with placeholder commands and only the
+    // suggestion providers it knows about
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void copy(CommandNode<CommandSourceStack> child, CommandNode<SharedSuggestionProvider> target,
+                             CommandSourceStack source,
+                             Map<CommandNode<CommandSourceStack>, CommandNode<SharedSuggestionProvider>> copies) {
+        ArgumentBuilder<SharedSuggestionProvider, ?> builder = (ArgumentBuilder) child.createBuilder();
+        builder.requires(s -> true);
+        if (builder.getCommand() != null) {
+            builder.executes(context -> 0);
+        }
+        if (builder instanceof RequiredArgumentBuilder argument && argument.getSuggestionsProvider() != null) {
+            argument.suggests(SuggestionProviders.safelySwap(argument.getSuggestionsProvider()));
+        }
+        if (builder.getRedirect() != null) {
+            builder.redirect(copies.get(builder.getRedirect()));
+        }
+
+        CommandNode<SharedSuggestionProvider> copy = builder.build();
+        copies.put(child, copy);
+        target.addChild(copy);
+        if (!child.getChildren().isEmpty()) {
+            fill(child, copy, source, copies);
+        }
+    }
+}
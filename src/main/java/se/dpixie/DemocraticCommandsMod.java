@@ -2,40 +2,110 @@ package se.dpixie.democraticcommands;
 
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
+import net.minecraft.commands.SharedSuggestionProvider;
+import net.minecraft.commands.arguments.coordinates.Coordinates;
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.UUIDUtil;
 import net.minecraft.network.chat.*;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerBossEvent;
 import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.BossEvent;
+import net.minecraft.world.scores.PlayerTeam;
 import net.minecraft.world.level.storage.LevelResource;
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.event.CommandEvent;
 import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.entity.EntityEvent;
+import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.server.ServerStartingEvent;
+import net.minecraftforge.event.server.ServerStoppingEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
 import net.minecraftforge.fml.config.ModConfig;
+import net.minecraftforge.fml.event.config.ModConfigEvent;
 import net.minecraftforge.fml.event.lifecycle.FMLCommonSetupEvent;
 import net.minecraftforge.fml.javafmlmod.FMLJavaModLoadingContext;
 import net.minecraftforge.common.ForgeConfigSpec;
+import com.mojang.authlib.GameProfile;
+import com.mojang.logging.LogUtils;
 import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.ParseResults;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.context.CommandContext;
+import com.mojang.brigadier.context.CommandContextBuilder;
+import com.mojang.brigadier.context.ParsedArgument;
+import com.mojang.brigadier.exceptions.CommandSyntaxException;
+import com.mojang.brigadier.suggestion.Suggestions;
+import com.mojang.brigadier.suggestion.SuggestionsBuilder;
+import com.mojang.brigadier.tree.CommandNode;
+import com.mojang.brigadier.tree.RootCommandNode;
+import org.slf4j.Logger;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Mod("democraticcommands")
 public class DemocraticCommandsMod {
     public static final String MOD_ID = "democraticcommands";
-    private static final Map<UUID, ActiveVote> activeVotes = new ConcurrentHashMap<>();
-    private static Set<String> opCommands = new HashSet<>();
-    private static File auditLogFile;
+    private static final Logger LOGGER = LogUtils.getLogger();
+    // Created when the server starts; the voting state machine lives here, this class only adapts it to Forge
+    private static volatile VotingEngine engine;
+    // Compiled from Config on load and swapped whole on reload; null until the server config is loaded
+    private static final AtomicReference<VotingPolicy> policy = new AtomicReference<>();
+    private static volatile MinecraftServer runningServer;
+    // Trees with the gated commands added for non-op players, and the players due one at the end of the tick
+    private static final CommandTreeCache commandTrees = new CommandTreeCache();
+    private static final Set<UUID> pendingCommandTrees = new HashSet<>();
+    private static MetricsExporter metricsExporter;
+    // Non-zero while a passed vote's command is being dispatched, so its CommandEvent isn't intercepted again
+    private static int voteExecutionDepth;
+    // Per-player token buckets, see VotingPolicy.RateLimits
+    private static final RateLimiter proposalLimiter = new RateLimiter();
+    private static final RateLimiter ballotLimiter = new RateLimiter();
+    private static final RateLimiter statusLimiter = new RateLimiter();
+    private static final int LIMITER_EVICTION_INTERVAL_TICKS = 1200;
+    // Voters of votes resumed after a restart get this long to reconnect before the departed-voter policy applies
+    private static final long RESUMED_RECONNECT_TICKS = VoteScheduler.secondsToTicks(60);
+    private static AuditLogWriter auditLog;
+    private static VoteHistoryStore history;
+    private static ExecutorService historyExecutor;
+    // Gated root nodes of the current dispatcher for the current policy's matcher; server thread only
+    private static GatedCommandMatcher.NodeIndex gatedIndex;
+    // engine.votes().size() as of the last tick, for the open_votes gauge
+    private static final AtomicInteger openVoteCount = new AtomicInteger();
+    // Open votes survive restarts: snapshotted with every world save, journalled in between
+    private static OpenVotesData openVotes;
+    private static VoteJournal journal;
+    // Ids of the votes resumed on start and when their absent voters count as departed, see applyDepartedVoters
+    private static List<Integer> resumedVoteIds = List.of();
+    private static long departedCheckTick = -1;
+    // Commands of passed votes waiting for their share of a tick
+    private static ExecutionQueue<CommandSourceStack> executions;
+    // Parses of open votes' commands made when they were proposed, by vote id. Votes resumed after a restart
+    // have none and are parsed when they run.
+    private static final Map<Integer, ParseResults<CommandSourceStack>> preparedCommands = new HashMap<>();
+    // Online players by dimension and chunk, for votes with a local electorate
+    private static final PlayerChunkIndex playerChunks = new PlayerChunkIndex();
+    // Votes shared with the other servers of a proxy network; null unless a network transport is configured
+    private static NetworkVotes networkVotes;
     
     public DemocraticCommandsMod() {
         // Register config
@@ -44,59 +114,389 @@ public class DemocraticCommandsMod {
         MinecraftForge.EVENT_BUS.register(this);
         MinecraftForge.EVENT_BUS.register(new VotingEventHandler());
         MinecraftForge.EVENT_BUS.addListener(this::onServerStarting);
+        MinecraftForge.EVENT_BUS.addListener(this::onServerStopping);
+
+        // Config events are posted on the mod bus
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(this::onConfigLoading);
+        FMLJavaModLoadingContext.get().getModEventBus().addListener(this::onConfigReloading);
+    }
+
+    private void onConfigLoading(ModConfigEvent.Loading event) {
+        if (event.getConfig().getSpec() != Config.SPEC) return;
+        policy.set(VotingPolicy.fromConfig());
+        VoteMetrics.setEnabled(Config.METRICS_ENABLED.get());
+    }
+
+    // Fired on the config watcher thread. The new policy applies to votes proposed from now on; open votes
+    // keep the rules they were proposed under.
+    private void onConfigReloading(ModConfigEvent.Reloading event) {
+        if (event.getConfig().getSpec() != Config.SPEC) return;
+        VotingPolicy reloaded = VotingPolicy.fromConfig();
+        policy.set(reloaded);
+        LOGGER.info("Reloaded config: {}", reloaded.describe());
+
+        boolean metricsEnabled = Config.METRICS_ENABLED.get();
+        MinecraftServer server = runningServer;
+        if (server != null) {
+            server.execute(() -> {
+                VoteMetrics.setEnabled(metricsEnabled);
+                resendCommandTrees(server);
+            });
+        } else {
+            VoteMetrics.setEnabled(metricsEnabled);
+        }
     }
 
     private void onServerStarting(net.minecraftforge.event.server.ServerStartingEvent event) {
         MinecraftServer server = event.getServer();
         File worldDir = server.getWorldPath(LevelResource.ROOT).toFile();
 
-        // Initialize log file
+        // Start the background audit writer
         File modLogDir = new File(worldDir, "logs");
-        if (!modLogDir.exists()) {
-            modLogDir.mkdirs();
+        try {
+            auditLog = new AuditLogWriter(
+                modLogDir.toPath(),
+                Config.AUDIT_QUEUE_CAPACITY.get(),
+                Config.AUDIT_BACKPRESSURE.get(),
+                Config.AUDIT_FSYNC.get(),
+                Config.AUDIT_FSYNC_INTERVAL_MS.get(),
+                Config.AUDIT_ROTATE_SIZE_MB.get() * 1024L * 1024L,
+                Config.AUDIT_ROTATE_HOURS.get() * 3_600_000L,
+                Config.AUDIT_COMPRESS_ROTATED.get());
+        } catch (IOException e) {
+            auditLog = null;
+            LOGGER.warn("Failed to open audit log: {}", e.getMessage());
+        }
+
+        if (Config.HISTORY_ENABLED.get()) {
+            openHistory(server, worldDir.toPath(), modLogDir.toPath());
         }
-        auditLogFile = new File(modLogDir, "audit.txt");
-        
-        // Load op commands from config
-        opCommands = new HashSet<>(Config.OP_COMMANDS.get());
-        System.out.println("[DemocraticCommands] Loaded " + opCommands.size() + " commands requiring votes");
-        
-        // Make OP commands visible to all players for tab completion
-        CommandDispatcher<CommandSourceStack> dispatcher = server.getCommands().getDispatcher();
         
-        for (String opCommand : opCommands) {
+        VotingPolicy current = policy.updateAndGet(loaded -> loaded != null ? loaded : VotingPolicy.fromConfig());
+        LOGGER.info("Loaded {} commands requiring votes", current.gatedCommands().size());
+
+        VotingEventHandler.ServerVoteSink sink = new VotingEventHandler.ServerVoteSink(server);
+        executions = new ExecutionQueue<>((source, command, parsed) -> runVotedCommand(server, source, command, parsed), sink);
+        engine = new VotingEngine(
+            () -> server.getPlayerList().getPlayers().stream().<Voter>map(PlayerVoter::new).toList(),
+            sink,
+            System::currentTimeMillis);
+        restoreOpenVotes(server, worldDir.toPath(), current);
+        networkVotes = openNetwork(server, engine);
+
+        VoteMetrics.gauge("open_votes", "Votes currently open", openVoteCount::get);
+        VoteMetrics.gauge("audit_queue_depth", "Audit entries waiting to be written", () -> {
+            AuditLogWriter writer = auditLog;
+            return writer == null ? 0 : writer.getQueueDepth();
+        });
+        try {
+            metricsExporter = new MetricsExporter(worldDir.toPath().resolve(MOD_ID).resolve("metrics.prom"),
+                Config.METRICS_DUMP_INTERVAL_SECONDS.get(), Config.METRICS_HTTP_PORT.get());
+        } catch (IOException e) {
+            metricsExporter = null;
+            LOGGER.warn("Failed to start metrics export: {}", e.getMessage());
+        }
+
+        runningServer = server;
+    }
+
+    // Called by CommandsMixin in place of Commands.sendCommands. Players below op level get the tree with the gated
+    // commands instead of the vanilla one, so only one tree goes out; false lets vanilla send its own.
+    public static boolean sendCommands(ServerPlayer player, RootCommandNode<CommandSourceStack> root) {
+        MinecraftServer server = runningServer;
+        VotingPolicy current = policy.get();
+        if (server == null || current == null) return false;
+        pendingCommandTrees.remove(player.getUUID());
+        return VotingEventHandler.sendCommandTree(server, player, root, current);
+    }
+
+    // Every player gets a fresh command tree at the end of the tick, e.g. after the gated commands changed
+    private static void resendCommandTrees(MinecraftServer server) {
+        for (ServerPlayer player : server.getPlayerList().getPlayers()) {
+            pendingCommandTrees.add(player.getUUID());
+        }
+    }
+
+    // Commands dispatched from here skip vote creation. A parse from proposal time runs with the executing source
+    // swapped in; entity selectors are stored unresolved in the parse, so they pick their targets now. A parse made
+    // before /reload replaced the dispatcher is dropped and the command parsed again.
+    private static int runVotedCommand(MinecraftServer server, CommandSourceStack source, String command,
+                                       ParseResults<CommandSourceStack> parsed) {
+        long start = VoteMetrics.start();
+        voteExecutionDepth++;
+        try {
+            Commands commands = server.getCommands();
+            if (parsed != null && parsed.getContext().getRootNode() == commands.getDispatcher().getRoot()) {
+                ParseResults<CommandSourceStack> withSource = new ParseResults<>(parsed.getContext().copy().withSource(source),
+                    parsed.getReader(), parsed.getExceptions());
+                return commands.performCommand(withSource, command);
+            }
+            return commands.performPrefixedCommand(source, "/" + command);
+        } finally {
+            voteExecutionDepth--;
+            VoteMetrics.EXECUTE_COMMAND.recordSince(start);
+        }
+    }
+
+    private void onServerStopping(ServerStoppingEvent event) {
+        // Passed commands still waiting run now rather than being lost
+        if (executions != null) {
+            executions.drain();
+            executions = null;
+        }
+        preparedCommands.clear();
+        playerChunks.clear();
+        if (networkVotes != null) {
+            networkVotes.close();
+            networkVotes = null;
+        }
+        // The world is saved after this event, so the snapshot is taken while the engine is still here
+        if (openVotes != null && engine != null && journal != null) {
+            openVotes.freeze(snapshot(engine, journal));
+        }
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        openVotes = null;
+
+        runningServer = null;
+        engine = null;
+        resumedVoteIds = List.of();
+        departedCheckTick = -1;
+        openVoteCount.set(0);
+        VotingEventHandler.bossBars.clear();
+        VotingEventHandler.voteMessages.clear();
+        commandTrees.reset(null);
+        gatedIndex = null;
+        pendingCommandTrees.clear();
+        proposalLimiter.clear();
+        ballotLimiter.clear();
+        statusLimiter.clear();
+
+        if (metricsExporter != null) {
+            metricsExporter.close();
+            metricsExporter = null;
+        }
+
+        if (auditLog != null) {
+            auditLog.close();
+            LOGGER.info("Audit log closed ({})", auditLog.describeStats());
+            auditLog = null;
+        }
+
+        if (historyExecutor != null) {
+            historyExecutor.shutdown();
             try {
-                var commandNode = dispatcher.getRoot().getChild(opCommand);
-                if (commandNode != null) {
-                    try {
-                        // Use reflection to modify the requirement field
-                        var field = com.mojang.brigadier.tree.CommandNode.class.getDeclaredField("requirement");
-                        field.setAccessible(true);
-                        
-                        // Set new requirement that allows tab completion for everyone
-                        field.set(commandNode, (java.util.function.Predicate<CommandSourceStack>) (source) -> {
-                            // Allow everyone to see the command for tab completion
-                            return true;
-                        });
-                        
-                        System.out.println("[DemocraticCommands] Made " + opCommand + " visible to all players");
-                    } catch (Exception e) {
-                        System.err.println("[DemocraticCommands] Failed to modify " + opCommand + ": " + e.getMessage());
-                    }
+                historyExecutor.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            historyExecutor = null;
+        }
+        if (history != null) {
+            try {
+                history.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close vote history: {}", e.getMessage());
+            }
+            history = null;
+        }
+    }
+
+    private static void restoreOpenVotes(MinecraftServer server, Path worldDir, VotingPolicy current) {
+        long start = System.nanoTime();
+        openVotes = server.overworld().getDataStorage()
+            .computeIfAbsent(OpenVotesData::load, OpenVotesData::new, OpenVotesData.NAME);
+        try {
+            journal = new VoteJournal(worldDir.resolve(MOD_ID).resolve("votes.journal"), openVotes.snapshot());
+        } catch (IOException e) {
+            journal = null;
+            LOGGER.warn("Failed to open the vote journal, open votes will not survive a restart: {}", e.getMessage());
+            return;
+        }
+
+        VotingEngine running = engine;
+        VoteJournal runningJournal = journal;
+        VoteJournal.Recovery recovery = runningJournal.recovered();
+        runningJournal.begin(running.currentTick());
+        List<Integer> resumed = new ArrayList<>(recovery.votes().size());
+        for (SavedVote saved : recovery.votes()) {
+            ActiveVote vote = running.restore(current, saved, recovery.ticksLeft(saved));
+            if (vote != null) {
+                resumed.add(vote.id);
+            }
+        }
+        resumedVoteIds = resumed;
+        departedCheckTick = resumed.isEmpty() ? -1 : running.currentTick() + RESUMED_RECONNECT_TICKS;
+        openVotes.attach(() -> snapshot(running, runningJournal), runningJournal);
+        openVotes.setDirty();
+
+        if (!recovery.votes().isEmpty()) {
+            LOGGER.info("Resumed {} open votes in {}ms ({} journal records replayed)", recovery.votes().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), recovery.replayed());
+        }
+    }
+
+    // Nobody is online when votes are resumed, so voters who have not reconnected by departedCheckTick are
+    // handled as if they had left during the vote
+    private static void applyDepartedVoters(MinecraftServer server, VotingEngine running) {
+        Set<UUID> departed = new HashSet<>();
+        for (int id : resumedVoteIds) {
+            ActiveVote vote = running.votes().get(id);
+            if (vote == null) continue;
+            for (int slot = 0; slot < vote.ballots.size(); slot++) {
+                UUID voter = vote.ballots.voter(slot);
+                if (vote.ballots.ballot(slot) == BallotBox.NONE && server.getPlayerList().getPlayer(voter) == null) {
+                    departed.add(voter);
                 }
-            } catch (Exception e) {
-                // Command doesn't exist, skip
             }
         }
+        resumedVoteIds = List.of();
+        for (UUID voter : departed) {
+            running.voterLeft(voter);
+        }
+    }
+
+    private static VoteJournal.Snapshot snapshot(VotingEngine engine, VoteJournal journal) {
+        List<SavedVote> votes = new ArrayList<>(engine.votes().size());
+        for (ActiveVote vote : engine.votes().all()) {
+            // Network votes live as long as the network does, see NetworkVotes
+            if (vote.network == null) {
+                votes.add(SavedVote.of(vote));
+            }
+        }
+        return new VoteJournal.Snapshot(engine.currentTick(), journal.sequence(), votes);
+    }
+
+    private static NetworkVotes openNetwork(MinecraftServer server, VotingEngine running) {
+        Config.NetworkTransport kind = Config.NETWORK_TRANSPORT.get();
+        if (kind == Config.NetworkTransport.NONE) return null;
+        String node = Config.NETWORK_NODE_ID.get();
+        String secret = Config.NETWORK_SECRET.get();
+        VoteTransport transport;
+        try {
+            transport = switch (kind) {
+                case FILE -> new FileTransport(Path.of(Config.NETWORK_DIRECTORY.get()), node, secret);
+                case SOCKET -> new SocketTransport(parseAddress(Config.NETWORK_LISTEN.get()),
+                    Config.NETWORK_PEERS.get().stream().map(DemocraticCommandsMod::parseAddress).toList(), secret);
+                case NONE -> throw new IllegalStateException();
+            };
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.warn("Failed to join the vote network, votes stay on this server: {}", e.getMessage());
+            return null;
+        }
+        List<String> commands = new ArrayList<>(Config.NETWORK_COMMANDS.get());
+        LOGGER.info("Sharing votes on {} with the network as {} ({})", commands, node, kind);
+        // Mirrored commands run as the server when the vote passes, so that is the source they must parse for
+        return new NetworkVotes(node, transport, running, policy::get, commands, command -> {
+            CommandSourceStack source = server.createCommandSourceStack();
+            return VotingEventHandler.validate(server.getCommands().getDispatcher()
+                .parse(CommandCanonicalizer.stripPrefix(command), source));
+        });
+    }
+
+    // host:port
+    static InetSocketAddress parseAddress(String address) {
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) throw new IllegalArgumentException("Expected host:port, got " + address);
+        return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    private static boolean isValidAddress(Object entry) {
+        if (!(entry instanceof String text)) return false;
+        int colon = text.lastIndexOf(':');
+        if (colon <= 0) return false;
+        try {
+            int port = Integer.parseInt(text.substring(colon + 1));
+            return port > 0 && port <= 65535;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static void openHistory(MinecraftServer server, Path worldDir, Path logDir) {
+        Path historyDir = worldDir.resolve(MOD_ID).resolve("history");
+        try {
+            long start = System.nanoTime();
+            history = new VoteHistoryStore(historyDir);
+            LOGGER.info("Loaded {} past votes in {}ms", history.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (IOException e) {
+            history = null;
+            LOGGER.warn("Failed to open vote history: {}", e.getMessage());
+            return;
+        }
+
+        historyExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DemocraticCommands-History");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // One-time import of the audit log written by earlier versions. The cutoff of the first attempt is kept
+        // in import.started so an interrupted import can be retried without importing any vote twice.
+        Path marker = historyDir.resolve("imported");
+        if (!Files.exists(marker)) {
+            VoteHistoryStore store = history;
+            Path started = historyDir.resolve("import.started");
+            long now = System.currentTimeMillis();
+            historyExecutor.execute(() -> {
+                try {
+                    boolean resume = Files.exists(started);
+                    long importBefore;
+                    if (resume) {
+                        importBefore = Long.parseLong(Files.readString(started).trim());
+                    } else {
+                        importBefore = now;
+                        Files.writeString(started, Long.toString(importBefore));
+                    }
+                    AuditLogImporter importer = new AuditLogImporter(store, name -> server.getProfileCache().get(name)
+                        .map(GameProfile::getId)
+                        .orElseGet(() -> UUIDUtil.createOfflinePlayerUUID(name)), importBefore, resume);
+                    int imported = importer.importDirectory(logDir);
+                    Files.createFile(marker);
+                    Files.deleteIfExists(started);
+                    LOGGER.info("Imported {} votes from the audit log", imported);
+                } catch (IOException | NumberFormatException e) {
+                    LOGGER.warn("Audit log import failed: {}", e.getMessage());
+                }
+            });
+        }
+    }
+    
+    // The Forge side of a Voter
+    public record PlayerVoter(ServerPlayer player) implements Voter {
+        @Override
+        public UUID id() {
+            return player.getUUID();
+        }
+
+        @Override
+        public String name() {
+            return player.getName().getString();
+        }
     }
     
     public static class Config {
+        public enum StatusDisplay { BOSS_BAR, ACTION_BAR, CHAT }
+
+        // What happens to an open vote's ballot slot when a player who hasn't voted leaves the server
+        public enum DepartedVoters { KEEP, ABSTAIN, EXCLUDE }
+
+        // How votes on networkCommands reach the other servers of a proxy network
+        public enum NetworkTransport { NONE, FILE, SOCKET }
+
         public static final ForgeConfigSpec.Builder BUILDER = new ForgeConfigSpec.Builder();
         
         public static final ForgeConfigSpec.IntValue VOTE_TIMEOUT = BUILDER
             .comment("Time in seconds before a vote times out")
             .defineInRange("voteTimeout", 30, 10, 300);
             
+        public static final ForgeConfigSpec.ConfigValue<List<? extends Integer>> REMINDER_SECONDS = BUILDER
+            .comment("Seconds before a vote closes at which players who haven't voted yet are reminded")
+            .defineList("reminderSeconds", List.of(10), obj -> obj instanceof Integer seconds && seconds > 0);
+            
         public static final ForgeConfigSpec.IntValue MINIMUM_VOTERS = BUILDER
             .comment("Minimum number of players required online to initiate a vote")
             .defineInRange("minimumVoters", 2, 1, 100);
@@ -113,6 +513,14 @@ public class DemocraticCommandsMod {
             .comment("If true, requires more than 50% of online players to vote (not abstain) for the vote to be valid")
             .define("requireMajorityParticipation", true);
             
+        public static final ForgeConfigSpec.EnumValue<StatusDisplay> STATUS_DISPLAY = BUILDER
+            .comment("How the live tally is shown while a vote is open: BOSS_BAR, ACTION_BAR or CHAT (a chat message per update)")
+            .defineEnum("statusDisplay", StatusDisplay.BOSS_BAR);
+
+        public static final ForgeConfigSpec.IntValue STATUS_UPDATE_INTERVAL_TICKS = BUILDER
+            .comment("Minimum number of ticks between two tally updates of the same vote; ballots in between are coalesced")
+            .defineInRange("statusUpdateIntervalTicks", 10, 1, 200);
+            
         public static final ForgeConfigSpec.BooleanValue LOG_VOTES = BUILDER
             .comment("Enable logging of all votes to file")
             .define("logVotes", true);
@@ -120,7 +528,186 @@ public class DemocraticCommandsMod {
         public static final ForgeConfigSpec.BooleanValue COUNT_ABSTENTIONS_AS_NO = BUILDER
             .comment("If true, abstentions count as NO votes. If false, they are ignored")
             .define("countAbstentionsAsNo", false);
+
+        public static final ForgeConfigSpec.BooleanValue EARLY_RESOLUTION = BUILDER
+            .comment("End a vote as soon as the players who haven't voted can no longer change the result.",
+                     "Ballots can't be changed after that")
+            .define("earlyResolution", true);
+
+        public static final ForgeConfigSpec.EnumValue<DepartedVoters> DEPARTED_VOTERS = BUILDER
+            .comment("Players who leave before voting: KEEP waits for them until the timeout, ABSTAIN counts them as",
+                     "abstaining right away, EXCLUDE removes them from the electorate. Returning players can still vote")
+            .defineEnum("departedVoters", DepartedVoters.ABSTAIN);
+
+        public static final ForgeConfigSpec.IntValue AUDIT_QUEUE_CAPACITY = BUILDER
+            .comment("Maximum number of audit entries waiting to be written before the backpressure policy applies")
+            .defineInRange("auditQueueCapacity", 1024, 16, 65536);
+
+        public static final ForgeConfigSpec.EnumValue<AuditLogWriter.BackpressurePolicy> AUDIT_BACKPRESSURE = BUILDER
+            .comment("What to do when the audit queue is full: DROP discards the entry, BLOCK waits on the server thread,",
+                     "SPILL appends it directly to logs/audit.spill.txt")
+            .defineEnum("auditBackpressure", AuditLogWriter.BackpressurePolicy.SPILL);
+
+        public static final ForgeConfigSpec.EnumValue<AuditLogWriter.FsyncPolicy> AUDIT_FSYNC = BUILDER
+            .comment("When to fsync the audit log: NEVER, BATCH (after every write) or INTERVAL (see auditFsyncIntervalMs)")
+            .defineEnum("auditFsync", AuditLogWriter.FsyncPolicy.INTERVAL);
+
+        public static final ForgeConfigSpec.IntValue AUDIT_FSYNC_INTERVAL_MS = BUILDER
+            .comment("Minimum time in milliseconds between fsyncs when auditFsync is INTERVAL")
+            .defineInRange("auditFsyncIntervalMs", 1000, 10, 60000);
+
+        public static final ForgeConfigSpec.IntValue AUDIT_ROTATE_SIZE_MB = BUILDER
+            .comment("Rotate audit.txt once it would grow past this many megabytes (0 disables size rotation)")
+            .defineInRange("auditRotateSizeMb", 10, 0, 1024);
+
+        public static final ForgeConfigSpec.IntValue AUDIT_ROTATE_HOURS = BUILDER
+            .comment("Rotate audit.txt once the current file is this many hours old (0 disables time rotation)")
+            .defineInRange("auditRotateHours", 24, 0, 8760);
+
+        public static final ForgeConfigSpec.BooleanValue AUDIT_COMPRESS_ROTATED = BUILDER
+            .comment("Gzip rotated audit log segments")
+            .define("auditCompressRotated", true);
+
+        public static final ForgeConfigSpec.BooleanValue HISTORY_ENABLED = BUILDER
+            .comment("Record concluded votes in the indexed history store used by /vote history")
+            .define("historyEnabled", true);
+
+        public static final ForgeConfigSpec.IntValue HISTORY_PAGE_SIZE = BUILDER
+            .comment("Number of votes shown per page of /vote history")
+            .defineInRange("historyPageSize", 8, 1, 50);
+
+        public static final ForgeConfigSpec.BooleanValue CACHE_COMMAND_TREES = BUILDER
+            .comment("Build the command tree sent to non-op players once per permission level instead of once per player.",
+                     "Turn off if a permissions mod grants commands to individual players")
+            .define("cacheCommandTrees", true);
+
+        public static final ForgeConfigSpec.BooleanValue MERGE_PROPOSALS = BUILDER
+            .comment("Proposing a command that is already being voted on joins that vote as a co-initiator instead of",
+                     "starting another one. Commands are compared after resolving aliases (tp/teleport), namespaces and spacing")
+            .define("mergeProposals", true);
+
+        public static final ForgeConfigSpec.IntValue FAILED_VOTE_COOLDOWN_SECONDS = BUILDER
+            .comment("Seconds after a failed vote during which the same command is refused without a new vote (0 disables)")
+            .defineInRange("failedVoteCooldownSeconds", 60, 0, 3600);
+
+        public static final ForgeConfigSpec.IntValue PASSED_VOTE_CACHE_SECONDS = BUILDER
+            .comment("Seconds after a passed vote during which proposing the same idempotent command only reports that it",
+                     "already passed (0 disables)")
+            .defineInRange("passedVoteCacheSeconds", 30, 0, 3600);
+
+        public static final ForgeConfigSpec.ConfigValue<List<? extends String>> IDEMPOTENT_COMMANDS = BUILDER
+            .comment("Commands (or command prefixes) that have no further effect when repeated right after passing")
+            .defineList("idempotentCommands",
+                Arrays.asList("weather", "time set", "difficulty", "gamerule", "gamemode", "defaultgamemode"),
+                obj -> obj instanceof String text && !text.isBlank());
+
+        public static final ForgeConfigSpec.IntValue EXECUTION_BUDGET_MS = BUILDER
+            .comment("Milliseconds per tick that commands of passed votes may use; commands beyond that wait for the next tick")
+            .defineInRange("executionBudgetMs", 5, 1, 50);
+
+        public static final ForgeConfigSpec.IntValue SLICE_BLOCKS = BUILDER
+            .comment("Passed /fill and /fillbiome commands over more blocks than this run as chunk-aligned slices of at most",
+                     "this size, spread over several ticks")
+            .defineInRange("sliceBlocks", 4096, 256, 32768);
+
+        public static final ForgeConfigSpec.LongValue MAX_SLICED_BLOCKS = BUILDER
+            .comment("Largest region that is sliced. Larger regions run as a single command, which vanilla refuses above",
+                     "32768 blocks, so raising this allows votes on larger fills")
+            .defineInRange("maxSlicedBlocks", 32768L, 1L, 16_777_216L);
+
+        public static final ForgeConfigSpec.ConfigValue<List<? extends String>> ELECTORATE_SCOPES = BUILDER
+            .comment("Who may vote on a command, as \"command:scope\". Scopes: server (everyone, the default), dimension",
+                     "(players in the initiator's dimension), nearby=<chunks> (players within that many chunks of the",
+                     "command's target position, or of the initiator) and team=<name> (online members of a team)")
+            .defineList("electorateScopes", List.of(), VotingPolicy::isValidScope);
+
+        public static final ForgeConfigSpec.ConfigValue<List<? extends String>> EXECUTION_RULES = BUILDER
+            .comment("Per-command overrides of the execution settings as \"command:key=value,...\". Keys: budgetMs,",
+                     "sliceBlocks, maxBlocks")
+            .defineList("executionRules", List.of(), VotingPolicy::isValidExecutionRule);
+
+        public static final ForgeConfigSpec.IntValue PROPOSALS_PER_MINUTE = BUILDER
+            .comment("Vote proposals a player may make per minute once their burst is used up (0 = unlimited)")
+            .defineInRange("proposalsPerMinute", 2, 0, 1200);
+
+        public static final ForgeConfigSpec.IntValue PROPOSAL_BURST = BUILDER
+            .comment("Vote proposals a player may make in quick succession")
+            .defineInRange("proposalBurst", 3, 1, 100);
+
+        public static final ForgeConfigSpec.IntValue BALLOTS_PER_MINUTE = BUILDER
+            .comment("/vote yes|no a player may use per minute once their burst is used up (0 = unlimited)")
+            .defineInRange("ballotsPerMinute", 30, 0, 1200);
+
+        public static final ForgeConfigSpec.IntValue BALLOT_BURST = BUILDER
+            .comment("/vote yes|no a player may use in quick succession")
+            .defineInRange("ballotBurst", 6, 1, 100);
+
+        public static final ForgeConfigSpec.IntValue STATUS_PER_MINUTE = BUILDER
+            .comment("/vote status a player may use per minute once their burst is used up (0 = unlimited)")
+            .defineInRange("statusPerMinute", 12, 0, 1200);
+
+        public static final ForgeConfigSpec.IntValue STATUS_BURST = BUILDER
+            .comment("/vote status a player may use in quick succession")
+            .defineInRange("statusBurst", 3, 1, 100);
+
+        public static final ForgeConfigSpec.EnumValue<NetworkTransport> NETWORK_TRANSPORT = BUILDER
+            .comment("Vote on networkCommands together with the other servers behind a proxy. FILE shares a directory between",
+                     "servers on one machine (for testing), SOCKET connects the servers directly. Network settings take",
+                     "effect on restart")
+            .defineEnum("networkTransport", NetworkTransport.NONE);
+
+        public static final ForgeConfigSpec.ConfigValue<String> NETWORK_NODE_ID = BUILDER
+            .comment("This server's name in the network, unique among its servers")
+            .define("networkNodeId", "server");
+
+        public static final ForgeConfigSpec.ConfigValue<List<? extends String>> NETWORK_COMMANDS = BUILDER
+            .comment("Commands voted on by the whole network. Each server runs a passed command itself, so list the same",
+                     "commands on every server")
+            .defineList("networkCommands", Arrays.asList("whitelist", "ban", "ban-ip", "pardon", "pardon-ip", "difficulty"),
+                obj -> obj instanceof String text && !text.isBlank());
+
+        public static final ForgeConfigSpec.ConfigValue<String> NETWORK_SECRET = BUILDER
+            .comment("Secret shared by the servers of the network; messages are authenticated with it. Required for SOCKET")
+            .define("networkSecret", "");
+
+        public static final ForgeConfigSpec.ConfigValue<String> NETWORK_DIRECTORY = BUILDER
+            .comment("Directory shared by the servers, for the FILE transport")
+            .define("networkDirectory", "democraticcommands-network");
+
+        public static final ForgeConfigSpec.ConfigValue<String> NETWORK_LISTEN = BUILDER
+            .comment("host:port the SOCKET transport listens on for the other servers")
+            .define("networkListen", "0.0.0.0:25590", DemocraticCommandsMod::isValidAddress);
+
+        public static final ForgeConfigSpec.ConfigValue<List<? extends String>> NETWORK_PEERS = BUILDER
+            .comment("host:port of every other server's networkListen, for the SOCKET transport")
+            .defineList("networkPeers", List.of(), DemocraticCommandsMod::isValidAddress);
+
+        public static final ForgeConfigSpec.BooleanValue METRICS_ENABLED = BUILDER
+            .comment("Collect timings and counters for /vote metrics and the metrics export. When off, the instrumented code",
+                     "only checks a flag")
+            .define("metricsEnabled", true);
+
+        public static final ForgeConfigSpec.IntValue METRICS_DUMP_INTERVAL_SECONDS = BUILDER
+            .comment("How often metrics are written in Prometheus text format to <world>/democraticcommands/metrics.prom",
+                     "(0 disables the file). Takes effect on restart")
+            .defineInRange("metricsDumpIntervalSeconds", 60, 0, 3600);
+
+        public static final ForgeConfigSpec.IntValue METRICS_HTTP_PORT = BUILDER
+            .comment("Serve metrics at http://127.0.0.1:<port>/metrics (0 disables the endpoint). Takes effect on restart")
+            .defineInRange("metricsHttpPort", 0, 0, 65535);
             
+        public static final ForgeConfigSpec.ConfigValue<List<? extends String>> COMMAND_RULES = BUILDER
+            .comment("Per-command overrides of the voting rules as \"command:key=value,...\". Keys: threshold, minVotes,",
+                     "minVoters, timeout, majorityParticipation, abstainAsNo. Unlisted keys use the defaults above")
+            .defineList("commandRules",
+                Arrays.asList(
+                    "stop:threshold=0.75,minVotes=5",
+                    "op:threshold=0.75,minVotes=5",
+                    "deop:threshold=0.75,minVotes=5",
+                    "weather:threshold=0.5,majorityParticipation=false,timeout=15"
+                ),
+                VotingPolicy::isValidRule);
+
         public static final ForgeConfigSpec.ConfigValue<List<? extends String>> OP_COMMANDS = BUILDER
             .comment("List of commands that require voting when used by non-ops")
             .defineList("opCommands", 
@@ -134,106 +721,15 @@ public class DemocraticCommandsMod {
         public static final ForgeConfigSpec SPEC = BUILDER.build();
     }
     
-    public static class ActiveVote {
-        public final String command;
-        public final ServerPlayer initiator;
-        public final Set<UUID> yesVotes = new HashSet<>();
-        public final Set<UUID> noVotes = new HashSet<>();
-        public final Set<UUID> abstained = new HashSet<>();
-        public final Map<UUID, String> voterNames = new HashMap<>();
-        public final Set<UUID> eligibleVoters = new HashSet<>();
-        public final long startTime;
-        
-        public ActiveVote(String command, ServerPlayer initiator, Collection<ServerPlayer> players) {
-            this.command = command;
-            this.initiator = initiator;
-            this.startTime = System.currentTimeMillis();
-            for (ServerPlayer player : players) {
-                eligibleVoters.add(player.getUUID());
-                voterNames.put(player.getUUID(), player.getName().getString());
-            }
-        }
-        
-        public boolean hasVoted(UUID playerId) {
-            return yesVotes.contains(playerId) || noVotes.contains(playerId);
-        }
-        
-        public void vote(UUID playerId, boolean yes) {
-            if (!eligibleVoters.contains(playerId)) return;
-            
-            yesVotes.remove(playerId);
-            noVotes.remove(playerId);
-            abstained.remove(playerId);
-            
-            if (yes) {
-                yesVotes.add(playerId);
-            } else {
-                noVotes.add(playerId);
-            }
-        }
-        
-        public void markAbstained() {
-            for (UUID voter : eligibleVoters) {
-                if (!hasVoted(voter)) {
-                    abstained.add(voter);
-                }
-            }
-        }
-        
-        public boolean isPassed() {
-            int totalVotes = yesVotes.size() + noVotes.size();
-            
-            // Check minimum votes requirement
-            if (totalVotes < Config.MINIMUM_VOTES_REQUIRED.get()) {
-                return false;
-            }
-            
-            // Check majority participation if required
-            if (Config.REQUIRE_MAJORITY_PARTICIPATION.get()) {
-                double participationRate = (double) totalVotes / eligibleVoters.size();
-                if (participationRate <= 0.5) {
-                    return false;
-                }
-            }
-            
-            // Calculate approval based on config
-            int effectiveNo = noVotes.size();
-            if (Config.COUNT_ABSTENTIONS_AS_NO.get()) {
-                effectiveNo += abstained.size();
-            }
-            
-            int effectiveTotal = yesVotes.size() + effectiveNo;
-            if (effectiveTotal == 0) return false;
-            
-            double approvalRate = (double) yesVotes.size() / effectiveTotal;
-            return approvalRate >= Config.APPROVAL_THRESHOLD.get();
-        }
-        
-        public boolean isExpired() {
-            return System.currentTimeMillis() - startTime > (Config.VOTE_TIMEOUT.get() * 1000L);
-        }
-        
-        public int getTimeRemaining() {
-            return Math.max(0, Config.VOTE_TIMEOUT.get() - (int)((System.currentTimeMillis() - startTime) / 1000));
-        }
-        
-        public String getVoteSummary() {
-            StringBuilder summary = new StringBuilder();
-            summary.append("Command: /").append(command).append("\n");
-            summary.append("Initiator: ").append(initiator.getName().getString()).append("\n");
-            summary.append("YES votes (").append(yesVotes.size()).append("): ");
-            summary.append(yesVotes.stream().map(voterNames::get).collect(Collectors.joining(", "))).append("\n");
-            summary.append("NO votes (").append(noVotes.size()).append("): ");
-            summary.append(noVotes.stream().map(voterNames::get).collect(Collectors.joining(", "))).append("\n");
-            summary.append("Abstained (").append(abstained.size()).append("): ");
-            summary.append(abstained.stream().map(voterNames::get).collect(Collectors.joining(", "))).append("\n");
-            summary.append("Result: ").append(isPassed() ? "PASSED" : "FAILED");
-            return summary.toString();
-        }
-    }
-    
     @Mod.EventBusSubscriber(modid = MOD_ID)
     public static class VotingEventHandler {
+        private static final DateTimeFormatter HISTORY_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm")
+            .withZone(ZoneId.systemDefault());
+        // Live tally boss bars by vote id, when statusDisplay is BOSS_BAR
+        private static final Map<Integer, ServerBossEvent> bossBars = new HashMap<>();
+        // Prebuilt message parts by vote id, from when the vote opens until it closes
+        private static final Map<Integer, VoteMessages> voteMessages = new HashMap<>();
+        private static final Component COMMAND_EXECUTED = Component.literal("§aCommand executed successfully!");
         
         @SubscribeEvent
         public static void onRegisterCommands(RegisterCommandsEvent event) {
@@ -243,25 +739,59 @@ public class DemocraticCommandsMod {
             dispatcher.register(Commands.literal("vote")
                 .requires(source -> true)  // Anyone can use this
                 
-                // /vote yes
+                // /vote yes [id]
                 .then(Commands.literal("yes")
-                    .executes(context -> castVote(context, true)))
+                    .executes(context -> castVote(context, true, null))
+                    .then(Commands.argument("id", IntegerArgumentType.integer(1))
+                        .suggests(VotingEventHandler::suggestOpenVotes)
+                        .executes(context -> castVote(context, true, IntegerArgumentType.getInteger(context, "id")))))
                 
-                // /vote no
+                // /vote no [id]
                 .then(Commands.literal("no")
-                    .executes(context -> castVote(context, false)))
+                    .executes(context -> castVote(context, false, null))
+                    .then(Commands.argument("id", IntegerArgumentType.integer(1))
+                        .suggests(VotingEventHandler::suggestOpenVotes)
+                        .executes(context -> castVote(context, false, IntegerArgumentType.getInteger(context, "id")))))
                 
                 // /vote status
                 .then(Commands.literal("status")
                     .executes(context -> showVoteStatus(context)))
+
+                // /vote history [player|command|<n>h|<n>d] [page]
+                .then(Commands.literal("history")
+                    .executes(context -> showHistory(context, null, 1))
+                    .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                        .executes(context -> showHistory(context, null, IntegerArgumentType.getInteger(context, "page"))))
+                    .then(Commands.argument("filter", StringArgumentType.word())
+                        .suggests((context, builder) -> history == null ? builder.buildFuture()
+                            : SharedSuggestionProvider.suggest(history.knownCommands(), builder))
+                        .executes(context -> showHistory(context, StringArgumentType.getString(context, "filter"), 1))
+                        .then(Commands.argument("page", IntegerArgumentType.integer(1))
+                            .executes(context -> showHistory(context, StringArgumentType.getString(context, "filter"),
+                                IntegerArgumentType.getInteger(context, "page"))))))
+                
+                // /vote metrics [reset], operators only
+                .then(Commands.literal("metrics")
+                    .requires(source -> source.hasPermission(2))
+                    .executes(context -> showMetrics(context))
+                    .then(Commands.literal("reset")
+                        .executes(context -> {
+                            VoteMetrics.reset();
+                            context.getSource().sendSystemMessage(Component.literal("§7Vote metrics reset."));
+                            return 1;
+                        })))
                 
                 // Default: show help if just /vote is typed
                 .executes(context -> {
                     CommandSourceStack source = context.getSource();
                     source.sendSystemMessage(Component.literal("§6Democratic Commands - Vote System"));
-                    source.sendSystemMessage(Component.literal("§e/vote yes §7- Vote yes on the current proposal"));
-                    source.sendSystemMessage(Component.literal("§e/vote no §7- Vote no on the current proposal"));
+                    source.sendSystemMessage(Component.literal("§e/vote yes [id] §7- Vote yes on the latest (or given) proposal"));
+                    source.sendSystemMessage(Component.literal("§e/vote no [id] §7- Vote no on the latest (or given) proposal"));
                     source.sendSystemMessage(Component.literal("§e/vote status §7- Check current vote status"));
+                    source.sendSystemMessage(Component.literal("§e/vote history [player|command] [page] §7- Browse past votes"));
+                    if (source.hasPermission(2)) {
+                        source.sendSystemMessage(Component.literal("§e/vote metrics [reset] §7- Timings and counters of the vote system"));
+                    }
                     source.sendSystemMessage(Component.literal("§7Just type any OP command to start a vote!"));
                     return 1;
                 }));
@@ -269,272 +799,782 @@ public class DemocraticCommandsMod {
         
         @SubscribeEvent
         public static void onCommandEvent(CommandEvent event) {
-            CommandSourceStack source = event.getParseResults().getContext().getSource();
-            String fullCommand = event.getParseResults().getReader().getString();
+            long start = VoteMetrics.start();
+            interceptCommand(event);
+            VoteMetrics.COMMAND_EVENT.recordSince(start);
+        }
 
-            if (!(source.getEntity() instanceof ServerPlayer player)) {
+        private static void interceptCommand(CommandEvent event) {
+            // Commands dispatched by a passed vote skip vote creation
+            if (voteExecutionDepth > 0) {
                 return;
             }
 
-            // If this command is being run as a result of a passed vote, skip vote creation
-            if (player.getPersistentData().getBoolean("democraticcommands_vote_executing")) {
-                // Reset the flag so it doesn't persist
-                player.getPersistentData().putBoolean("democraticcommands_vote_executing", false);
+            ParseResults<CommandSourceStack> parse = event.getParseResults();
+            if (!(parse.getContext().getSource().getEntity() instanceof ServerPlayer player)) {
                 return;
             }
 
-            String commandName = fullCommand.split(" ")[0].replace("/", "");
+            VotingPolicy current = policy.get();
+            if (current == null || engine == null) {
+                return;
+            }
 
-            if (!opCommands.contains(commandName) || player.hasPermissions(2)) {
+            // Most commands aren't gated, so check that before anything that touches the player
+            GatedCommandMatcher.NodeIndex index = gatedIndex;
+            CommandNode<CommandSourceStack> root = parse.getContext().getRootNode();
+            if (index == null || !index.isFor(current.matcher(), root)) {
+                index = current.matcher().index(root);
+                gatedIndex = index;
+            }
+            String commandName = index.match(parse);
+            if (commandName == null || player.hasPermissions(2)) {
                 return;
             }
 
             event.setCanceled(true); // Block execution
 
-            createAndStartVote(fullCommand, player);
-        }
-
-        private static void createAndStartVote(String fullCommand, ServerPlayer initiator) {
-            // Check if player already has an active vote
-            if (activeVotes.containsKey(initiator.getUUID())) {
-                initiator.sendSystemMessage(Component.literal("§cYou already have an active vote. Please wait for it to complete."));
+            long wait = proposalLimiter.acquire(player.getUUID(), engine.currentTick(), current.rateLimits().proposals());
+            if (wait > 0) {
+                VoteMetrics.PROPOSALS_THROTTLED.increment();
+                sendThrottled(player, wait);
                 return;
             }
 
-            // Get all online players
-            MinecraftServer server = initiator.getServer();
-            List<ServerPlayer> players = server.getPlayerList().getPlayers();
-
-            // Check minimum voters requirement
-            if (players.size() < Config.MINIMUM_VOTERS.get()) {
-                initiator.sendSystemMessage(Component.literal(
-                    "§cNot enough players online to vote. Minimum required: " + Config.MINIMUM_VOTERS.get() +
-                    ", Currently online: " + players.size()));
+            String command = parse.getReader().getString();
+            ParseResults<CommandSourceStack> elevated = parseElevated(parse, command);
+            String invalid = validate(elevated);
+            if (invalid != null) {
+                VoteMetrics.PROPOSALS_REJECTED.increment();
+                player.sendSystemMessage(Component.literal("§cNo vote was started: " + invalid));
                 return;
             }
 
-            // Create new vote
-            ActiveVote activeVote = new ActiveVote(fullCommand, initiator, players);
-            activeVotes.put(initiator.getUUID(), activeVote);
+            VotingPolicy.Scope scope = current.scopeFor(commandName);
+            // Scoped votes stay local, their electorate is somewhere on this server
+            NetworkVote network = networkVotes != null && scope.isServerWide() && networkVotes.shares(commandName)
+                ? networkVotes.newVote() : null;
+            VotingEngine.ProposalResult result = engine.propose(current, new VotingEngine.Proposal(new PlayerVoter(player),
+                command, commandName, CommandCanonicalizer.canonicalize(elevated),
+                scope.isServerWide() ? null : electorate(scope, player, elevated), network));
+            if (result.status() == VotingEngine.ProposalStatus.STARTED) {
+                preparedCommands.put(result.vote().id, elevated);
+                if (network != null) {
+                    networkVotes.published(result.vote(), commandName);
+                }
+            }
+            switch (result.status()) {
+                case STARTED -> VoteMetrics.PROPOSALS.increment();
+                case MERGED -> VoteMetrics.PROPOSALS_MERGED.increment();
+                default -> VoteMetrics.PROPOSALS_REJECTED.increment();
+            }
+            switch (result.status()) {
+                case MERGED -> player.sendSystemMessage(Component.literal(
+                        "§eVote #" + result.vote().id + " on this command is already open; you joined it as a co-initiator. ")
+                    .append(messagesFor(result.vote()).buttons()));
+                case RECENTLY_FAILED -> player.sendSystemMessage(Component.literal(
+                    "§cVote #" + result.decision().voteId() + " on this command failed recently. You can propose it again in " +
+                    secondsLeft(result.decision()) + " seconds."));
+                case RECENTLY_PASSED -> player.sendSystemMessage(Component.literal(
+                    "§eVote #" + result.decision().voteId() + " on this command passed " +
+                    (engine.currentTick() - result.decision().decidedTick()) / VoteScheduler.TICKS_PER_SECOND +
+                    " seconds ago and was executed; no new vote needed."));
+                case ALREADY_ACTIVE -> player.sendSystemMessage(Component.literal(
+                    "§cYou already have an active vote. Please wait for it to complete."));
+                case NOT_ENOUGH_VOTERS -> player.sendSystemMessage(Component.literal(
+                    "§cNot enough players online to vote. Minimum required: " + result.rules().minimumVoters() +
+                    ", Currently online: " + result.electorate()));
+                case STARTED -> { }
+            }
+        }
+        
+        // The player's own parse stops at the root of a command they may not run, so validating and canonicalizing
+        // need a parse with op permission. Only proposals get here; the parse is kept for executing the command.
+        private static ParseResults<CommandSourceStack> parseElevated(ParseResults<CommandSourceStack> parse, String command) {
+            CommandSourceStack source = parse.getContext().getSource().withPermission(Commands.LEVEL_OWNERS);
+            return source.getServer().getCommands().getDispatcher().parse(CommandCanonicalizer.stripPrefix(command), source);
+        }
 
-            // Tag this vote as not yet executed (used to prevent re-voting loop)
-            initiator.getPersistentData().putBoolean("democraticcommands_vote_executing", false);
+        // Players in the command's scope, from the chunk index rather than the whole player list
+        private static List<Voter> electorate(VotingPolicy.Scope scope, ServerPlayer initiator,
+                                              ParseResults<CommandSourceStack> parse) {
+            List<ServerPlayer> players = switch (scope.kind()) {
+                case SERVER -> initiator.getServer().getPlayerList().getPlayers();
+                case DIMENSION -> playerChunks.inDimension(initiator.level().dimension());
+                case NEARBY -> playerChunks.near(initiator.level().dimension(), target(parse, initiator), scope.radiusChunks());
+                case TEAM -> {
+                    PlayerTeam team = initiator.getServer().getScoreboard().getPlayerTeam(scope.team());
+                    List<ServerPlayer> members = new ArrayList<>();
+                    if (team != null) {
+                        // One scoreboard lookup per online player rather than a player list scan per team member
+                        for (ServerPlayer player : initiator.getServer().getPlayerList().getPlayers()) {
+                            if (player.getTeam() == team) {
+                                members.add(player);
+                            }
+                        }
+                    }
+                    yield members;
+                }
+            };
+            List<Voter> voters = new ArrayList<>(players.size());
+            for (ServerPlayer player : players) {
+                voters.add(new PlayerVoter(player));
+            }
+            return voters;
+        }
 
-            // Create vote initiation message
-            MutableComponent voteMessage = Component.literal("§6===== VOTE INITIATED =====\n")
-                .append(Component.literal("§ePlayer §b" + initiator.getName().getString() + "§e wants to execute:\n"))
-                .append(Component.literal("§c/" + fullCommand + "\n"))
-                .append(Component.literal("§eVote using: "))
-                .append(createClickableVote("§a[YES]", "/vote yes", "§aClick to vote YES"))
-                .append(Component.literal(" "))
-                .append(createClickableVote("§c[NO]", "/vote no", "§cClick to vote NO"))
-                .append(Component.literal("\n§7Vote expires in " + Config.VOTE_TIMEOUT.get() + " seconds"))
-                .append(Component.literal("\n§7Required: " +
-                    (int)(Config.APPROVAL_THRESHOLD.get() * 100) + "% approval, " +
-                    "minimum " + Config.MINIMUM_VOTES_REQUIRED.get() + " votes"));
+        // The first block position among the command's arguments, e.g. where /setblock places its block, or the
+        // initiator's position for commands without one
+        private static BlockPos target(ParseResults<CommandSourceStack> parse, ServerPlayer initiator) {
+            CommandSourceStack source = parse.getContext().getSource();
+            for (CommandContextBuilder<CommandSourceStack> context = parse.getContext(); context != null; context = context.getChild()) {
+                for (ParsedArgument<CommandSourceStack, ?> argument : context.getArguments().values()) {
+                    if (argument.getResult() instanceof Coordinates coordinates) {
+                        return coordinates.getBlockPos(source);
+                    }
+                }
+            }
+            return initiator.blockPosition();
+        }
 
-            for (ServerPlayer player : players) {
-                player.sendSystemMessage(voteMessage);
+        // Why the command can't run, or null; the same checks the dispatcher makes before executing
+        private static String validate(ParseResults<CommandSourceStack> parse) {
+            CommandSyntaxException error = Commands.getParseException(parse);
+            if (error != null) {
+                return error.getMessage();
+            }
+            if (parse.getReader().canRead()) {
+                return "unknown or invalid argument at \"" + parse.getReader().getRemaining() + "\"";
             }
+            if (parse.getContext().getLastChild().getCommand() == null) {
+                return "the command is incomplete";
+            }
+            return null;
+        }
 
-            logVote("INITIATED", activeVote);
+        private static void sendThrottled(ServerPlayer player, long waitTicks) {
+            long seconds = (waitTicks + VoteScheduler.TICKS_PER_SECOND - 1) / VoteScheduler.TICKS_PER_SECOND;
+            player.sendSystemMessage(Component.literal("§cYou're doing that too often. Try again in " + seconds +
+                (seconds == 1 ? " second." : " seconds.")));
         }
-        
+
+        private static long secondsLeft(RecentDecisions.Decision decision) {
+            long ticks = decision.ticksLeft(engine.currentTick());
+            return (ticks + VoteScheduler.TICKS_PER_SECOND - 1) / VoteScheduler.TICKS_PER_SECOND;
+        }
+
         @SubscribeEvent
         public static void onServerTick(TickEvent.ServerTickEvent event) {
             if (event.phase != TickEvent.Phase.END) return;
+            flushCommandTrees();
+            if (engine == null) return;
             
-            Iterator<Map.Entry<UUID, ActiveVote>> iterator = activeVotes.entrySet().iterator();
-            while (iterator.hasNext()) {
-                Map.Entry<UUID, ActiveVote> entry = iterator.next();
-                ActiveVote vote = entry.getValue();
-                
-                if (vote.isExpired()) {
-                    vote.markAbstained();
-                    concludeVote(entry.getKey(), vote);
-                    iterator.remove();
-                }
+            // Expiry and reminders are driven by the scheduler; this is a single comparison when nothing is due
+            long start = VoteMetrics.start();
+            engine.tick();
+            if (departedCheckTick >= 0 && engine.currentTick() >= departedCheckTick) {
+                departedCheckTick = -1;
+                applyDepartedVoters(event.getServer(), engine);
             }
+            // The registry is not thread-safe, so the exporter threads read this copy
+            openVoteCount.set(engine.votes().size());
+            if (networkVotes != null) {
+                networkVotes.tick();
+            }
+            if (!executions.isEmpty()) {
+                executions.runTick();
+            }
+            if (engine.currentTick() % LIMITER_EVICTION_INTERVAL_TICKS == 0) {
+                VotingPolicy.RateLimits limits = policy.get().rateLimits();
+                proposalLimiter.evictIdle(engine.currentTick(), limits.proposals());
+                ballotLimiter.evictIdle(engine.currentTick(), limits.ballots());
+                statusLimiter.evictIdle(engine.currentTick(), limits.status());
+            }
+            if (journal != null && engine.currentTick() % VoteJournal.CLOCK_INTERVAL_TICKS == 0 && !engine.votes().isEmpty()) {
+                journal.clock(engine.currentTick());
+            }
+            VoteMetrics.SERVER_TICK.recordSince(start);
         }
         
-        private static int initiateVote(CommandContext<CommandSourceStack> context) {
-            // This method is no longer used since we removed /vote <command>
-            // Keeping it for backwards compatibility if needed
-            return 0;
-        }
-        
-        private static int castVote(CommandContext<CommandSourceStack> context, boolean yes) {
+        private static int castVote(CommandContext<CommandSourceStack> context, boolean yes, Integer voteId) {
             CommandSourceStack source = context.getSource();
             
-            if (!(source.getEntity() instanceof ServerPlayer)) {
+            if (!(source.getEntity() instanceof ServerPlayer) || engine == null) {
                 return 0;
             }
             
             ServerPlayer voter = (ServerPlayer) source.getEntity();
-            
-            // Find active vote for this player's server
-            ActiveVote activeVote = null;
-            UUID voteId = null;
-            
-            for (Map.Entry<UUID, ActiveVote> entry : activeVotes.entrySet()) {
-                ActiveVote vote = entry.getValue();
-                if (vote.eligibleVoters.contains(voter.getUUID())) {
-                    activeVote = vote;
-                    voteId = entry.getKey();
-                    break;
-                }
-            }
-            
-            if (activeVote == null) {
-                voter.sendSystemMessage(Component.literal("§cNo active vote found."));
+
+            long wait = ballotLimiter.acquire(voter.getUUID(), engine.currentTick(), policy.get().rateLimits().ballots());
+            if (wait > 0) {
+                VoteMetrics.BALLOTS_THROTTLED.increment();
+                sendThrottled(voter, wait);
                 return 0;
             }
-            
-            if (activeVote.hasVoted(voter.getUUID())) {
-                voter.sendSystemMessage(Component.literal("§eYou changed your vote to §" + (yes ? "aYES" : "cNO")));
-            } else {
-                voter.sendSystemMessage(Component.literal("§eYou voted §" + (yes ? "aYES" : "cNO")));
+
+            long start = VoteMetrics.start();
+            VotingEngine.BallotResult result = engine.cast(voter.getUUID(), voteId, yes);
+            VoteMetrics.CAST_VOTE.recordSince(start);
+            switch (result.status()) {
+                case NO_VOTE -> {
+                    voter.sendSystemMessage(Component.literal(voteId == null ? "§cNo active vote found." : "§cNo active vote #" + voteId + "."));
+                    return 0;
+                }
+                case NOT_ELIGIBLE -> {
+                    voter.sendSystemMessage(Component.literal("§cYou are not eligible to vote on #" + result.vote().id + "."));
+                    return 0;
+                }
+                default -> {
+                    VoteMetrics.BALLOTS.increment();
+                    return 1;
+                }
             }
-            
-            activeVote.vote(voter.getUUID(), yes);
-            
-            // Check if everyone has voted
-            if (activeVote.yesVotes.size() + activeVote.noVotes.size() == activeVote.eligibleVoters.size()) {
-                concludeVote(voteId, activeVote);
-                activeVotes.remove(voteId);
-            } else {
-                // Send update to all players
-                updateVoteStatus(activeVote);
+        }
+
+        private static CompletableFuture<Suggestions> suggestOpenVotes(CommandContext<CommandSourceStack> context, SuggestionsBuilder builder) {
+            if (engine != null && context.getSource().getEntity() instanceof ServerPlayer player) {
+                for (ActiveVote vote : engine.votes().openFor(player.getUUID())) {
+                    builder.suggest(vote.id);
+                }
             }
-            
-            return 1;
+            return builder.buildFuture();
         }
         
         private static int showVoteStatus(CommandContext<CommandSourceStack> context) {
             CommandSourceStack source = context.getSource();
             
-            if (activeVotes.isEmpty()) {
+            if (engine != null && source.getEntity() instanceof ServerPlayer player) {
+                long wait = statusLimiter.acquire(player.getUUID(), engine.currentTick(), policy.get().rateLimits().status());
+                if (wait > 0) {
+                    VoteMetrics.STATUS_THROTTLED.increment();
+                    sendThrottled(player, wait);
+                    return 0;
+                }
+            }
+
+            if (engine == null || engine.votes().isEmpty()) {
                 source.sendSystemMessage(Component.literal("§7No active votes."));
                 return 0;
             }
             
-            for (ActiveVote vote : activeVotes.values()) {
-                MutableComponent status = Component.literal("§6=== CURRENT VOTE STATUS ===\n")
+            for (ActiveVote vote : engine.votes().all()) {
+                Tally tally = vote.tally();
+                MutableComponent status = Component.literal("§6=== VOTE #" + vote.id + " STATUS ===\n")
                     .append(Component.literal("§eCommand: §c/" + vote.command + "\n"))
-                    .append(Component.literal("§aYES: " + vote.yesVotes.size() + 
-                        " §7| §cNO: " + vote.noVotes.size() + 
-                        " §7| §8Not voted: " + (vote.eligibleVoters.size() - vote.yesVotes.size() - vote.noVotes.size()) + "\n"))
-                    .append(Component.literal("§7Time remaining: " + vote.getTimeRemaining() + " seconds"));
+                    .append(Component.literal("§aYES: " + tally.yes() + 
+                        " §7| §cNO: " + tally.no() + 
+                        " §7| §8Not voted: " + (tally.electorate() - tally.voted()) + "\n"))
+                    .append(Component.literal("§7Time remaining: " + vote.getTimeRemaining(engine.currentTick()) + " seconds"));
                 
                 source.sendSystemMessage(status);
             }
             
             return 1;
         }
+
+        // The query reads the store from disk and may wait behind the audit import, so it runs on the history
+        // thread and the reply is sent from the server thread
+        private static int showHistory(CommandContext<CommandSourceStack> context, String filter, int page) {
+            CommandSourceStack source = context.getSource();
+            VoteHistoryStore store = history;
+            ExecutorService executor = historyExecutor;
+            if (store == null || executor == null) {
+                source.sendSystemMessage(Component.literal("§cVote history is disabled."));
+                return 0;
+            }
+
+            int pageSize = policy.get().historyPageSize();
+            MinecraftServer server = source.getServer();
+            try {
+                executor.execute(() -> {
+                    Component reply = historyReply(store, filter, page, pageSize);
+                    server.execute(() -> source.sendSystemMessage(reply));
+                });
+            } catch (RejectedExecutionException e) {
+                source.sendSystemMessage(Component.literal("§cVote history is disabled."));
+                return 0;
+            }
+            return 1;
+        }
+
+        private static Component historyReply(VoteHistoryStore store, String filter, int page, int pageSize) {
+            VoteHistoryStore.Page result;
+            String title;
+            try {
+                if (filter == null) {
+                    result = store.latest(page, pageSize);
+                    title = "all votes";
+                } else if (filter.matches("\\d+[hd]")) {
+                    long amount = Long.parseLong(filter.substring(0, filter.length() - 1));
+                    long window = filter.endsWith("d") ? TimeUnit.DAYS.toMillis(amount) : TimeUnit.HOURS.toMillis(amount);
+                    long now = System.currentTimeMillis();
+                    result = store.between(now - window, Long.MAX_VALUE, page, pageSize);
+                    title = "last " + filter;
+                } else {
+                    UUID player = store.findPlayer(filter);
+                    if (player != null) {
+                        result = store.byInitiator(player, page, pageSize);
+                        title = "proposed by " + filter;
+                    } else {
+                        result = store.byCommand(filter, page, pageSize);
+                        title = "/" + VoteHistoryStore.commandName(filter);
+                    }
+                }
+            } catch (IOException e) {
+                return Component.literal("§cFailed to read vote history: " + e.getMessage());
+            }
+
+            if (result.totalRecords() == 0) {
+                return Component.literal("§7No votes found for " + title + ".");
+            }
+
+            // A page past the end shows the last page
+            MutableComponent message = Component.literal("§6=== VOTE HISTORY: " + title + " (page " +
+                result.page() + "/" + result.totalPages() + ", " + result.totalRecords() + " votes) ===");
+            for (VoteHistoryStore.VoteRecord record : result.records()) {
+                message.append(Component.literal("\n§8" + HISTORY_TIME_FORMAT.format(Instant.ofEpochMilli(record.concludedAt())) +
+                    (record.passed() ? " §a✓ " : " §c✗ ") + "§c/" + record.command() +
+                    " §7by §b" + record.initiatorName() +
+                    " §7(§a" + record.count(VoteHistoryStore.BALLOT_YES) +
+                    "§7/§c" + record.count(VoteHistoryStore.BALLOT_NO) +
+                    "§7/§8" + record.count(VoteHistoryStore.BALLOT_ABSTAIN) + "§7)"));
+            }
+            return message;
+        }
         
-        private static void concludeVote(UUID voteId, ActiveVote vote) {
-            MinecraftServer server = vote.initiator.getServer();
-            List<ServerPlayer> players = server.getPlayerList().getPlayers();
-            
-            boolean passed = vote.isPassed();
-            int totalVotes = vote.yesVotes.size() + vote.noVotes.size();
-            
-            MutableComponent resultMessage = Component.literal("§6===== VOTE CONCLUDED =====\n")
-                .append(Component.literal("§eCommand: §c/" + vote.command + "\n"))
-                .append(Component.literal("§aYES: " + vote.yesVotes.size() + 
-                    " §7| §cNO: " + vote.noVotes.size() + 
-                    " §7| §8Abstained: " + vote.abstained.size() + "\n"));
-            
-            // Add failure reason if applicable
-            if (!passed) {
-                if (totalVotes < Config.MINIMUM_VOTES_REQUIRED.get()) {
-                    resultMessage.append(Component.literal("§cInsufficient votes: " + totalVotes + 
-                        "/" + Config.MINIMUM_VOTES_REQUIRED.get() + " required\n"));
-                } else if (Config.REQUIRE_MAJORITY_PARTICIPATION.get() && 
-                          (double)totalVotes / vote.eligibleVoters.size() <= 0.5) {
-                    resultMessage.append(Component.literal("§cInsufficient participation (>50% required)\n"));
+        // Counts every server's ballots for a network vote
+        static MutableComponent statusLine(ActiveVote vote) {
+            return messagesFor(vote).statusLine(vote.tally());
+        }
+
+        static float votedFraction(ActiveVote vote) {
+            Tally tally = vote.tally();
+            return tally.electorate() == 0 ? 0.0f : (float) tally.voted() / tally.electorate();
+        }
+
+        // Trees queued by resendCommandTrees. Login, respawn, dimension and permission changes and /reload go
+        // through Commands.sendCommands, where CommandsMixin sends ours in place of the vanilla tree.
+        private static void flushCommandTrees() {
+            if (pendingCommandTrees.isEmpty()) return;
+            MinecraftServer server = runningServer;
+            VotingPolicy current = policy.get();
+            if (server == null || current == null) return;
+
+            RootCommandNode<CommandSourceStack> root = server.getCommands().getDispatcher().getRoot();
+
+            for (UUID id : pendingCommandTrees) {
+                ServerPlayer player = server.getPlayerList().getPlayer(id);
+                // Ops keep the vanilla tree, which the policy does not change
+                if (player != null) {
+                    sendCommandTree(server, player, root, current);
                 }
             }
-            
-            resultMessage.append(Component.literal(passed ? "§a✓ VOTE PASSED" : "§c✗ VOTE FAILED"));
-            
-            for (ServerPlayer player : players) {
-                player.sendSystemMessage(resultMessage);
+            pendingCommandTrees.clear();
+        }
+
+        // False when the player gets the vanilla tree
+        static boolean sendCommandTree(MinecraftServer server, ServerPlayer player,
+                                       RootCommandNode<CommandSourceStack> root, VotingPolicy current) {
+            int level = server.getProfilePermissions(player.getGameProfile());
+            if (!CommandTreeCache.needsTree(level)) return false;
+
+            long start = VoteMetrics.start();
+            CommandSourceStack source = player.createCommandSourceStack();
+            player.connection.send(current.cacheCommandTrees()
+                ? commandTrees.packetFor(root, current, source, level)
+                : CommandTreeCache.build(root, current, source));
+            VoteMetrics.COMMAND_TREE.recordSince(start);
+            return true;
+        }
+
+        @SubscribeEvent
+        public static void onPlayerRespawn(PlayerEvent.PlayerRespawnEvent event) {
+            if (event.getEntity() instanceof ServerPlayer player) {
+                playerChunks.update(player);
             }
-            
-            // Execute command if vote passed
-            if (passed) {
-                try {
-                    // Mark the initiator so the command bypasses vote creation
-                    vote.initiator.getPersistentData().putBoolean("democraticcommands_vote_executing", true);
+        }
 
-                    // Create a command source using the initiator so output is sent to them
-                    CommandSourceStack commandSource = vote.initiator.createCommandSourceStack()
-                        .withPermission(4); // Give full permission for execution
+        @SubscribeEvent
+        public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
+            if (event.getEntity() instanceof ServerPlayer player) {
+                playerChunks.update(player);
+            }
+        }
 
-                    // Execute and capture success value
-                    int result = server.getCommands().performPrefixedCommand(commandSource, "/" + vote.command);
+        // Fired for every entity crossing a section boundary; only players moving to another chunk matter
+        @SubscribeEvent
+        public static void onEnteringSection(EntityEvent.EnteringSection event) {
+            if (event.didChunkChange() && event.getEntity() instanceof ServerPlayer player) {
+                playerChunks.update(player);
+            }
+        }
 
-                    // Notify all players of success/failure
-                    if (result > 0) {
-                        for (ServerPlayer player : players) {
-                            player.sendSystemMessage(Component.literal("§aCommand executed successfully!"));
-                        }
-                    } else {
-                        vote.initiator.sendSystemMessage(Component.literal("§cCommand returned no success value. Possible syntax issue."));
-                    }
+        @SubscribeEvent
+        public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+            if (!(event.getEntity() instanceof ServerPlayer player)) return;
+            playerChunks.update(player);
 
-                } catch (Exception e) {
-                    vote.initiator.sendSystemMessage(Component.literal("§cError executing command: " + e.getMessage()));
+            // Flag left behind by versions that marked vote executions in player NBT
+            if (player.getPersistentData().contains("democraticcommands_vote_executing")) {
+                player.getPersistentData().remove("democraticcommands_vote_executing");
+            }
+
+            if (engine == null) return;
+            // Rejoining voters, and everyone after a restart, get the boss bars of votes they can still vote on
+            for (ActiveVote vote : engine.votes().openFor(player.getUUID())) {
+                ServerBossEvent bossBar = bossBars.get(vote.id);
+                if (bossBar != null) {
+                    bossBar.addPlayer(player);
                 }
             }
-            
-            // Log vote conclusion
-            logVote(passed ? "PASSED" : "FAILED", vote);
         }
-        
-        private static void updateVoteStatus(ActiveVote vote) {
-            MinecraftServer server = vote.initiator.getServer();
-            List<ServerPlayer> players = server.getPlayerList().getPlayers();
-            
-            int notVoted = vote.eligibleVoters.size() - vote.yesVotes.size() - vote.noVotes.size();
-            
-            MutableComponent statusMessage = Component.literal("")
-                .append(Component.literal("§eVote status: §a" + vote.yesVotes.size() + 
-                    " YES §7| §c" + vote.noVotes.size() + 
-                    " NO §7| §8" + notVoted + " not voted"))
-                .append(Component.literal(" §7(" + vote.getTimeRemaining() + "s remaining)"));
-            
-            for (ServerPlayer player : players) {
-                player.sendSystemMessage(statusMessage);
+
+        @SubscribeEvent
+        public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+            if (!(event.getEntity() instanceof ServerPlayer player)) return;
+            playerChunks.remove(player);
+            if (engine == null) return;
+
+            for (ActiveVote vote : engine.votes().openFor(player.getUUID())) {
+                ServerBossEvent bossBar = bossBars.get(vote.id);
+                if (bossBar != null) {
+                    bossBar.removePlayer(player);
+                }
             }
+
+            engine.voterLeft(player.getUUID());
         }
         
-        private static MutableComponent createClickableVote(String display, String command, String hover) {
-            return Component.literal(display)
-                .withStyle(style -> style
-                    .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command))
-                    .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Component.literal(hover))));
+        static VoteMessages messagesFor(ActiveVote vote) {
+            return voteMessages.computeIfAbsent(vote.id, id -> new VoteMessages(id, vote.command));
         }
         
         private static void logVote(String status, ActiveVote vote) {
-            if (!Config.LOG_VOTES.get()) return;
-            
-            SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-            String timestamp = dateFormat.format(new Date());
-            
-            String logEntry = String.format(
-                "\n[%s] Vote %s\n%s\n%s\n",
-                timestamp,
-                status,
-                vote.getVoteSummary(),
-                "----------------------------------------"
-            );
-            
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(auditLogFile, true))) {
-                writer.write(logEntry);
-            } catch (IOException e) {
-                e.printStackTrace();
+            VotingPolicy current = policy.get();
+            if (current == null || !current.logVotes() || auditLog == null) return;
+
+            // Formatting and disk I/O happen on the audit writer thread
+            long start = VoteMetrics.start();
+            auditLog.append(status, vote.getVoteSummary());
+            VoteMetrics.LOG_VOTE.recordSince(start);
+        }
+
+        private static int showMetrics(CommandContext<CommandSourceStack> context) {
+            CommandSourceStack source = context.getSource();
+            if (!VoteMetrics.isEnabled()) {
+                source.sendSystemMessage(Component.literal("§7Vote metrics are disabled (metricsEnabled = false)."));
+                return 0;
+            }
+
+            MutableComponent message = Component.literal("§6=== VOTE METRICS ===");
+            for (String line : VoteMetrics.describe()) {
+                message.append(Component.literal("\n§7" + line));
+            }
+            source.sendSystemMessage(message);
+            return 1;
+        }
+
+        private static void recordHistory(ActiveVote vote, boolean passed) {
+            if (history == null || historyExecutor == null) return;
+
+            List<VoteHistoryStore.Ballot> ballots = new ArrayList<>(vote.ballots.size());
+            for (int slot = 0; slot < vote.ballots.size(); slot++) {
+                byte ballot = vote.ballots.ballot(slot);
+                if (ballot != BallotBox.NONE && ballot != BallotBox.EXCLUDED) {
+                    // History uses the same ballot codes as BallotBox
+                    ballots.add(new VoteHistoryStore.Ballot(vote.ballots.voter(slot), vote.ballots.name(slot), ballot));
+                }
+            }
+            VoteHistoryStore.VoteRecord record = new VoteHistoryStore.VoteRecord(-1, vote.startTime, System.currentTimeMillis(),
+                vote.command, vote.initiator.id(), vote.initiator.name(), passed, ballots);
+
+            VoteHistoryStore store = history;
+            historyExecutor.execute(() -> {
+                try {
+                    store.append(record);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to record vote history: {}", e.getMessage());
+                }
+            });
+        }
+
+        // Turns engine events into chat, boss bars, command execution, audit entries and history records
+        static final class ServerVoteSink implements VoteSink, ExecutionQueue.Listener<CommandSourceStack> {
+            private final MinecraftServer server;
+
+            ServerVoteSink(MinecraftServer server) {
+                this.server = server;
+            }
+
+            @Override
+            public void proposed(ActiveVote vote) {
+                List<ServerPlayer> players = audience(vote);
+
+                // Create vote initiation message
+                MutableComponent voteMessage = Component.literal("§6===== VOTE #" + vote.id + " INITIATED =====\n")
+                    .append(Component.literal("§ePlayer §b" + vote.initiator.name() +
+                        (vote.isMirror() ? "§e on §b" + vote.network.origin : "") + "§e wants to execute:\n"))
+                    .append(Component.literal("§c/" + vote.command + "\n"))
+                    .append(Component.literal("§eVote using: "))
+                    .append(messagesFor(vote).buttons())
+                    .append(Component.literal("\n§7Vote expires in " + vote.rules.timeoutSeconds() + " seconds"))
+                    .append(Component.literal("\n§7Required: " +
+                        (int)(vote.rules.approvalThreshold() * 100) + "% approval, " +
+                        "minimum " + vote.rules.minimumVotes() + " votes"));
+
+                VoteMetrics.BROADCASTS.add(ChatBroadcast.chat(voteMessage).toAll(players).sent());
+
+                showBossBar(vote, players);
+                if (journal != null && vote.network == null) {
+                    journal.proposed(vote, engine.currentTick());
+                    openVotes.setDirty();
+                }
+                logVote("INITIATED", vote);
+            }
+
+            @Override
+            public void resumed(ActiveVote vote) {
+                List<ServerPlayer> voters = new ArrayList<>();
+                for (int slot = 0; slot < vote.ballots.size(); slot++) {
+                    ServerPlayer player = server.getPlayerList().getPlayer(vote.ballots.voter(slot));
+                    if (player != null) {
+                        voters.add(player);
+                    }
+                }
+                showBossBar(vote, voters);
+                if (journal != null) {
+                    journal.proposed(vote, engine.currentTick());
+                }
+            }
+
+            // Everyone for server-wide votes; only the online electorate for scoped ones
+            private List<ServerPlayer> audience(ActiveVote vote) {
+                if (vote.policy.scopeFor(vote.command).isServerWide()) {
+                    return server.getPlayerList().getPlayers();
+                }
+                List<ServerPlayer> players = new ArrayList<>(vote.ballots.size());
+                for (int slot = 0; slot < vote.ballots.size(); slot++) {
+                    ServerPlayer player = server.getPlayerList().getPlayer(vote.ballots.voter(slot));
+                    if (player != null) {
+                        players.add(player);
+                    }
+                }
+                return players;
+            }
+
+            private void showBossBar(ActiveVote vote, List<ServerPlayer> players) {
+                if (vote.policy.statusDisplay() != Config.StatusDisplay.BOSS_BAR) return;
+                ServerBossEvent bossBar = new ServerBossEvent(statusLine(vote), BossEvent.BossBarColor.YELLOW,
+                    BossEvent.BossBarOverlay.NOTCHED_10);
+                bossBar.setProgress(votedFraction(vote));
+                for (ServerPlayer player : players) {
+                    bossBar.addPlayer(player);
+                }
+                bossBars.put(vote.id, bossBar);
+            }
+
+            @Override
+            public void ballotCast(ActiveVote vote, UUID voterId, boolean yes, boolean changed) {
+                if (vote.network != null) {
+                    if (networkVotes != null) {
+                        networkVotes.tallyChanged(vote);
+                    }
+                } else if (journal != null) {
+                    int slot = vote.ballots.slotOf(voterId);
+                    journal.ballot(vote.id, slot, vote.ballots.ballot(slot), engine.currentTick());
+                    openVotes.setDirty();
+                }
+
+                ServerPlayer voter = server.getPlayerList().getPlayer(voterId);
+                if (voter == null) return;
+                if (changed) {
+                    voter.sendSystemMessage(Component.literal("§eYou changed your vote on #" + vote.id + " to §" + (yes ? "aYES" : "cNO")));
+                } else {
+                    voter.sendSystemMessage(Component.literal("§eYou voted §" + (yes ? "aYES" : "cNO") + "§e on #" + vote.id));
+                }
+            }
+
+            @Override
+            public void voterLeft(ActiveVote vote, UUID voterId, byte ballot) {
+                if (vote.network != null) {
+                    if (networkVotes != null) {
+                        networkVotes.tallyChanged(vote);
+                    }
+                } else if (journal != null) {
+                    journal.ballot(vote.id, vote.ballots.slotOf(voterId), ballot, engine.currentTick());
+                    openVotes.setDirty();
+                }
+            }
+
+            // Reminds players who haven't voted yet that the vote is about to close
+            @Override
+            public void reminder(ActiveVote vote, int secondsLeft) {
+                ChatBroadcast reminder = ChatBroadcast.chat(messagesFor(vote).reminder(secondsLeft));
+                for (int slot = 0; slot < vote.ballots.size(); slot++) {
+                    if (vote.ballots.ballot(slot) != BallotBox.NONE) continue;
+                    ServerPlayer player = server.getPlayerList().getPlayer(vote.ballots.voter(slot));
+                    if (player != null) {
+                        reminder.to(player);
+                    }
+                }
+                VoteMetrics.BROADCASTS.add(reminder.sent());
+            }
+
+            @Override
+            public void statusChanged(ActiveVote vote) {
+                long start = VoteMetrics.start();
+                updateStatus(vote);
+                VoteMetrics.STATUS_UPDATE.recordSince(start);
+            }
+
+            private void updateStatus(ActiveVote vote) {
+                switch (vote.policy.statusDisplay()) {
+                    case BOSS_BAR -> {
+                        ServerBossEvent bossBar = bossBars.get(vote.id);
+                        if (bossBar == null) return;
+                        bossBar.setName(statusLine(vote));
+                        bossBar.setProgress(votedFraction(vote));
+                        bossBar.setColor(vote.isPassed() ? BossEvent.BossBarColor.GREEN : BossEvent.BossBarColor.YELLOW);
+                    }
+                    case ACTION_BAR -> {
+                        ChatBroadcast line = ChatBroadcast.actionBar(statusLine(vote));
+                        for (int slot = 0; slot < vote.ballots.size(); slot++) {
+                            ServerPlayer player = server.getPlayerList().getPlayer(vote.ballots.voter(slot));
+                            if (player != null) {
+                                line.to(player);
+                            }
+                        }
+                        VoteMetrics.BROADCASTS.add(line.sent());
+                    }
+                    case CHAT -> {
+                        MutableComponent statusMessage = messagesFor(vote).chatStatus(vote.tally(),
+                            vote.getTimeRemaining(engine.currentTick()));
+                        VoteMetrics.BROADCASTS.add(ChatBroadcast.chat(statusMessage).toAll(audience(vote)).sent());
+                    }
+                }
+            }
+
+            @Override
+            public void concluded(ActiveVote vote, boolean passed) {
+                // Journalled before the command runs, so a crash during execution can't run it a second time
+                if (vote.network != null) {
+                    if (networkVotes != null) {
+                        networkVotes.concluded(vote, passed);
+                    }
+                } else if (journal != null) {
+                    journal.closed(vote.id, engine.currentTick());
+                    openVotes.setDirty();
+                }
+
+                long start = VoteMetrics.start();
+                (passed ? VoteMetrics.PASSED : VoteMetrics.FAILED).increment();
+                announceResult(vote, passed);
+                VoteMetrics.CONCLUDE_VOTE.recordSince(start);
+            }
+
+            private void announceResult(ActiveVote vote, boolean passed) {
+                ServerBossEvent bossBar = bossBars.remove(vote.id);
+                if (bossBar != null) {
+                    bossBar.removeAllPlayers();
+                }
+
+                Tally tally = vote.tally();
+                int totalVotes = tally.voted();
+                MutableComponent resultMessage = Component.literal("§6===== VOTE #" + vote.id + " CONCLUDED =====\n")
+                    .append(Component.literal("§eCommand: §c/" + vote.command + "\n"))
+                    .append(Component.literal("§aYES: " + tally.yes() + 
+                        " §7| §cNO: " + tally.no() + 
+                        " §7| §8Abstained: " + tally.abstained() + "\n"));
+                
+                // Add failure reason if applicable
+                if (!passed) {
+                    if (totalVotes < vote.rules.minimumVotes()) {
+                        resultMessage.append(Component.literal("§cInsufficient votes: " + totalVotes + 
+                            "/" + vote.rules.minimumVotes() + " required\n"));
+                    } else if (vote.rules.requireMajorityParticipation() && 
+                              (double)totalVotes / tally.electorate() <= 0.5) {
+                        resultMessage.append(Component.literal("§cInsufficient participation (>50% required)\n"));
+                    }
+                }
+                
+                resultMessage.append(Component.literal(passed ? "§a✓ VOTE PASSED" : "§c✗ VOTE FAILED"));
+                
+                VoteMetrics.BROADCASTS.add(ChatBroadcast.chat(resultMessage).toAll(audience(vote)).sent());
+            }
+
+            @Override
+            public void executionRequested(ActiveVote vote) {
+                ServerPlayer initiator = server.getPlayerList().getPlayer(vote.initiator.id());
+
+                // A vote resumed after a restart may pass while its initiator is offline. Running it as the server
+                // would hand the command permissions nobody asked for, so it is recorded as not executed instead.
+                // A network vote's initiator is usually on another server; it runs as the server here because
+                // the command is one the network commands config explicitly shares.
+                if (initiator == null && vote.network == null) {
+                    preparedCommands.remove(vote.id);
+                    logVote("NOT EXECUTED (initiator offline)", vote);
+                    LOGGER.warn("Vote #{} passed but /{} was not run, {} is offline", vote.id, vote.command,
+                        vote.initiator.name());
+                    VoteMetrics.BROADCASTS.add(ChatBroadcast.chat(Component.literal("§eVote #" + vote.id +
+                        " passed, but /" + vote.command + " was not run because " + vote.initiator.name() +
+                        " is offline.")).toAll(audience(vote)).sent());
+                    return;
+                }
+
+                VoteMetrics.EXECUTIONS.increment();
+                // Create a command source using the initiator so output is sent to them
+                CommandSourceStack commandSource = initiator != null
+                    ? initiator.createCommandSourceStack().withPermission(4) // Give full permission for execution
+                    : server.createCommandSourceStack();
+
+                // Region commands are cut into slices now, while ~ still means where the initiator stands
+                VotingPolicy.Execution execution = vote.policy.executionFor(vote.command);
+                BlockPos origin = BlockPos.containing(commandSource.getPosition().x, commandSource.getPosition().y,
+                    commandSource.getPosition().z);
+                List<String> slices = RegionSlicer.slice(vote.command, origin.getX(), origin.getY(), origin.getZ(),
+                    execution.sliceBlocks(), execution.maxBlocks());
+                ParseResults<CommandSourceStack> parsed = preparedCommands.remove(vote.id);
+                executions.add(slices != null
+                    ? new ExecutionQueue.Job<>(vote, commandSource, slices, null, execution)
+                    : new ExecutionQueue.Job<>(vote, commandSource, List.of(vote.command), parsed, execution));
+            }
+
+            @Override
+            public void progress(ExecutionQueue.Job<CommandSourceStack> job) {
+                // About ten updates per job, on the initiator's action bar
+                int step = Math.max(1, job.total() / 10);
+                if (job.done() % step == 0 && job.source.getEntity() instanceof ServerPlayer initiator) {
+                    initiator.displayClientMessage(Component.literal("§eRunning /" + job.vote.command + ": " +
+                        job.done() * 100 / job.total() + "%"), true);
+                }
+            }
+
+            @Override
+            public void finished(ExecutionQueue.Job<CommandSourceStack> job, int result, Exception error) {
+                if (error != null) {
+                    if (job.source.getEntity() instanceof ServerPlayer initiator) {
+                        initiator.sendSystemMessage(Component.literal("§cError executing command: " + error.getMessage()));
+                    } else {
+                        LOGGER.warn("Error executing voted command /{}: {}", job.vote.command, error.getMessage());
+                    }
+                    return;
+                }
+
+                // Notify all players of success/failure
+                if (result > 0) {
+                    VoteMetrics.BROADCASTS.add(ChatBroadcast.chat(COMMAND_EXECUTED).toAll(audience(job.vote)).sent());
+                } else {
+                    job.source.sendSystemMessage(Component.literal("§cCommand returned no success value. Possible syntax issue."));
+                }
+            }
+
+            @Override
+            public void closed(ActiveVote vote, boolean passed) {
+                preparedCommands.remove(vote.id);
+                voteMessages.remove(vote.id);
+                // Log vote conclusion
+                logVote(passed ? "PASSED" : "FAILED", vote);
+                recordHistory(vote, passed);
             }
         }
     }
@@ -0,0 +1,173 @@
+package se.dpixie.democraticcommands;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+// The messages one server sends in one tick. epoch identifies the sending server's run and sequence numbers its
+// envelopes within that run, so receivers can drop envelopes they already have whatever the transport does.
+// sentAt is the sender's wall-clock time; it is covered by the check, so receivers can refuse stale envelopes.
+//
+// On the wire an envelope is framed like the journal's records: length, payload, then a CRC, or an HMAC-SHA256
+// when the network has a shared secret. A frame that fails the check is dropped.
+public record Envelope(String node, long epoch, long sequence, long sentAt, List<NetworkMessage> messages) {
+    private static final byte PROPOSAL = 0;
+    private static final byte TALLY = 1;
+    private static final byte RESULT = 2;
+
+    private static final int MAC_LENGTH = 32;
+    // Larger frames are corrupt or not ours
+    static final int MAX_PAYLOAD = 1 << 20;
+
+    // null without a secret; a Mac is not thread-safe, so every thread that frames envelopes needs its own
+    public static Mac mac(String secret) {
+        if (secret == null || secret.isEmpty()) return null;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 unavailable", e);
+        }
+    }
+
+    public byte[] frame(Mac mac) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + messages.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeInt(0);
+            writePayload(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] payload = buffer.toByteArray();
+        int length = payload.length - 4;
+        byte[] trailer = trailer(mac, payload, 4, length);
+
+        byte[] frame = new byte[payload.length + trailer.length];
+        System.arraycopy(payload, 0, frame, 0, payload.length);
+        System.arraycopy(trailer, 0, frame, payload.length, trailer.length);
+        frame[0] = (byte) (length >>> 24);
+        frame[1] = (byte) (length >>> 16);
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+        return frame;
+    }
+
+    public static int trailerLength(Mac mac) {
+        return mac == null ? 4 : MAC_LENGTH;
+    }
+
+    // Reads one frame; null when its check fails. Throws EOFException at the end of the stream.
+    public static Envelope read(DataInput in, Mac mac) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) throw new IOException("Bad frame length " + length);
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        byte[] trailer = new byte[trailerLength(mac)];
+        in.readFully(trailer);
+        return decode(payload, trailer, mac);
+    }
+
+    // payload and trailer as framed; null when the check fails
+    public static Envelope decode(byte[] payload, byte[] trailer, Mac mac) throws IOException {
+        if (!MessageDigest.isEqual(trailer, trailer(mac, payload, 0, payload.length))) return null;
+        return readPayload(new DataInputStream(new ByteArrayInputStream(payload)));
+    }
+
+    private static byte[] trailer(Mac mac, byte[] bytes, int offset, int length) {
+        if (mac != null) {
+            mac.update(bytes, offset, length);
+            return mac.doFinal();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        int value = (int) crc.getValue();
+        return new byte[] { (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value };
+    }
+
+    private void writePayload(DataOutputStream out) throws IOException {
+        out.writeUTF(node);
+        out.writeLong(epoch);
+        out.writeLong(sequence);
+        out.writeLong(sentAt);
+        out.writeInt(messages.size());
+        for (NetworkMessage message : messages) {
+            if (message instanceof NetworkMessage.Proposal proposal) {
+                out.writeByte(PROPOSAL);
+                writeUuid(out, proposal.vote());
+                out.writeUTF(proposal.command());
+                out.writeUTF(proposal.key());
+                out.writeUTF(proposal.commandName());
+                writeUuid(out, proposal.initiatorId());
+                out.writeUTF(proposal.initiatorName());
+                out.writeLong(proposal.ticksLeft());
+                VotingPolicy.Rules rules = proposal.rules();
+                out.writeInt(rules.timeoutSeconds());
+                out.writeInt(rules.minimumVoters());
+                out.writeInt(rules.minimumVotes());
+                out.writeDouble(rules.approvalThreshold());
+                out.writeBoolean(rules.requireMajorityParticipation());
+                out.writeBoolean(rules.countAbstentionsAsNo());
+            } else if (message instanceof NetworkMessage.TallyUpdate update) {
+                out.writeByte(TALLY);
+                writeUuid(out, update.vote());
+                out.writeUTF(update.node());
+                out.writeLong(update.version());
+                Tally tally = update.tally();
+                out.writeInt(tally.yes());
+                out.writeInt(tally.no());
+                out.writeInt(tally.abstained());
+                out.writeInt(tally.undecided());
+                out.writeInt(tally.electorate());
+            } else if (message instanceof NetworkMessage.Result result) {
+                out.writeByte(RESULT);
+                writeUuid(out, result.vote());
+                out.writeBoolean(result.passed());
+            }
+        }
+    }
+
+    private static Envelope readPayload(DataInputStream in) throws IOException {
+        String node = in.readUTF();
+        long epoch = in.readLong();
+        long sequence = in.readLong();
+        long sentAt = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > MAX_PAYLOAD) throw new IOException("Bad message count " + count);
+        List<NetworkMessage> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte type = in.readByte();
+            messages.add(switch (type) {
+                case PROPOSAL -> new NetworkMessage.Proposal(readUuid(in), in.readUTF(), in.readUTF(), in.readUTF(),
+                    readUuid(in), in.readUTF(), in.readLong(), new VotingPolicy.Rules(in.readInt(), in.readInt(),
+                    in.readInt(), in.readDouble(), in.readBoolean(), in.readBoolean()));
+                case TALLY -> new NetworkMessage.TallyUpdate(readUuid(in), in.readUTF(), in.readLong(),
+                    new Tally(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+                case RESULT -> new NetworkMessage.Result(readUuid(in), in.readBoolean());
+                default -> throw new IOException("Unknown message type " + type);
+            });
+        }
+        return new Envelope(node, epoch, sequence, sentAt, messages);
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInput in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+}
@@ -0,0 +1,116 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.brigadier.ParseResults;
+
+import java.util.ArrayDeque;
+import java.util.List;
+
+// Passed commands waiting to run. Each tick the queue runs commands until the budget of the job at its head is
+// used up, so several votes passing in the same tick, or one large region command cut into slices by
+// RegionSlicer, are spread over the following ticks instead of landing as one lag spike. At least one command
+// runs per tick, so a command that alone exceeds the budget still makes progress.
+//
+// Jobs run in the order they were queued. Only used from the server thread.
+public class ExecutionQueue<S> {
+    @FunctionalInterface
+    public interface Executor<S> {
+        // parsed is the command parsed when it was proposed, or null when it has to be parsed now
+        int execute(S source, String command, ParseResults<S> parsed) throws Exception;
+    }
+
+    public interface Listener<S> {
+        // Called after each command of a job that was sliced
+        default void progress(Job<S> job) {
+        }
+
+        // error is the exception that stopped the job early, or null
+        void finished(Job<S> job, int result, Exception error);
+    }
+
+    public static final class Job<S> {
+        public final ActiveVote vote;
+        public final S source;
+        public final List<String> commands;
+        // Only for a job of a single command
+        public final ParseResults<S> parsed;
+        public final VotingPolicy.Execution execution;
+        private int next;
+        private int result;
+
+        public Job(ActiveVote vote, S source, List<String> commands, ParseResults<S> parsed,
+                   VotingPolicy.Execution execution) {
+            this.vote = vote;
+            this.source = source;
+            this.commands = commands;
+            this.parsed = parsed;
+            this.execution = execution;
+        }
+
+        public int done() {
+            return next;
+        }
+
+        public int total() {
+            return commands.size();
+        }
+    }
+
+    private final ArrayDeque<Job<S>> jobs = new ArrayDeque<>();
+    private final Executor<S> executor;
+    private final Listener<S> listener;
+
+    public ExecutionQueue(Executor<S> executor, Listener<S> listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    public void add(Job<S> job) {
+        jobs.addLast(job);
+    }
+
+    // Runs queued commands within the head job's budget; returns the number of commands run
+    public int runTick() {
+        long start = System.nanoTime();
+        int ran = 0;
+        Job<S> job;
+        while ((job = jobs.peekFirst()) != null) {
+            if (ran > 0 && System.nanoTime() - start >= job.execution.budgetNanos()) break;
+            runNext(job);
+            ran++;
+        }
+        return ran;
+    }
+
+    // Runs everything left, e.g. when the server stops
+    public void drain() {
+        Job<S> job;
+        while ((job = jobs.peekFirst()) != null) {
+            runNext(job);
+        }
+    }
+
+    private void runNext(Job<S> job) {
+        try {
+            int index = job.next++;
+            job.result += Math.max(0, executor.execute(job.source, job.commands.get(index), index == 0 ? job.parsed : null));
+        } catch (Exception e) {
+            jobs.removeFirst();
+            listener.finished(job, job.result, e);
+            return;
+        }
+        if (job.next < job.commands.size()) {
+            listener.progress(job);
+        } else {
+            jobs.removeFirst();
+            listener.finished(job, job.result, null);
+        }
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    public boolean isEmpty() {
+        return jobs.isEmpty();
+    }
+}
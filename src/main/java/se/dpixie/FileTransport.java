@@ -0,0 +1,152 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import javax.crypto.Mac;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// Servers on one machine sharing a directory, for local testing without a network. Each server appends its
+// frames to <node>.log and reads the other servers' logs from where it last stopped. A log that outgrows
+// MAX_LOG_BYTES starts over; readers notice it got shorter and read it from the start.
+//
+// Logs that exist when the transport opens are read from their end, so a restarted server doesn't replay
+// votes that are long over. Writes happen on the server thread, which is fine for a test setup.
+public final class FileTransport implements VoteTransport {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final String SUFFIX = ".log";
+    private static final long MAX_LOG_BYTES = 16L << 20;
+    // How often the directory is listed for servers that joined later
+    private static final int SCAN_INTERVAL_POLLS = 20;
+
+    private static final class Peer {
+        final Path file;
+        long position;
+
+        Peer(Path file, long position) {
+            this.file = file;
+            this.position = position;
+        }
+    }
+
+    private final Path directory;
+    private final Path ownLog;
+    private final Mac mac;
+    private final FileChannel out;
+    private final Map<Path, Peer> peers = new HashMap<>();
+    private int pollsUntilScan;
+
+    public FileTransport(Path directory, String node, String secret) throws IOException {
+        this.directory = directory;
+        this.ownLog = directory.resolve(node + SUFFIX);
+        this.mac = Envelope.mac(secret);
+        Files.createDirectories(directory);
+        this.out = FileChannel.open(ownLog, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        scan(true);
+    }
+
+    @Override
+    public void send(Envelope envelope) {
+        try {
+            if (out.position() > MAX_LOG_BYTES) {
+                out.truncate(0);
+            }
+            ByteBuffer frame = ByteBuffer.wrap(envelope.frame(mac));
+            while (frame.hasRemaining()) {
+                out.write(frame);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write vote network log {}: {}", ownLog, e.getMessage());
+        }
+    }
+
+    @Override
+    public void poll(Consumer<Envelope> receiver) {
+        if (--pollsUntilScan <= 0) {
+            pollsUntilScan = SCAN_INTERVAL_POLLS;
+            scan(false);
+        }
+        Iterator<Peer> iterator = peers.values().iterator();
+        while (iterator.hasNext()) {
+            Peer peer = iterator.next();
+            try {
+                read(peer, receiver);
+            } catch (IOException e) {
+                // Deleted; found again by the next scan if it comes back
+                iterator.remove();
+            }
+        }
+    }
+
+    private void scan(boolean atStart) {
+        try (DirectoryStream<Path> logs = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path log : logs) {
+                if (log.equals(ownLog) || peers.containsKey(log)) continue;
+                peers.put(log, new Peer(log, atStart ? Files.size(log) : 0));
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to list vote network directory {}: {}", directory, e.getMessage());
+        }
+    }
+
+    private void read(Peer peer, Consumer<Envelope> receiver) throws IOException {
+        try (FileChannel in = FileChannel.open(peer.file, StandardOpenOption.READ)) {
+            long size = in.size();
+            if (size < peer.position) {
+                peer.position = 0;
+            }
+            if (size == peer.position) return;
+
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size - peer.position, MAX_LOG_BYTES + Envelope.MAX_PAYLOAD));
+            in.read(buffer, peer.position);
+            buffer.flip();
+
+            int trailerLength = Envelope.trailerLength(mac);
+            while (buffer.remaining() >= 4) {
+                int start = buffer.position();
+                int length = buffer.getInt();
+                if (length < 0 || length > Envelope.MAX_PAYLOAD) {
+                    // Read into a log that started over underneath us; pick up again from its end
+                    peer.position = size;
+                    return;
+                }
+                if (buffer.remaining() < length + trailerLength) {
+                    // Partly written, finished by a later poll
+                    buffer.position(start);
+                    break;
+                }
+                byte[] payload = new byte[length];
+                byte[] trailer = new byte[trailerLength];
+                buffer.get(payload).get(trailer);
+                Envelope envelope = Envelope.decode(payload, trailer, mac);
+                if (envelope != null) {
+                    receiver.accept(envelope);
+                } else {
+                    VoteMetrics.NETWORK_ENVELOPES_DROPPED.increment();
+                }
+            }
+            peer.position += buffer.position();
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close vote network log {}: {}", ownLog, e.getMessage());
+        }
+        peers.clear();
+    }
+}
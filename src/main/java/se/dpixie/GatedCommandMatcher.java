@@ -0,0 +1,132 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.brigadier.ParseResults;
+import com.mojang.brigadier.context.CommandContextBuilder;
+import com.mojang.brigadier.context.ParsedCommandNode;
+import com.mojang.brigadier.tree.CommandNode;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Decides whether an intercepted command is one of the vote-gated commands without allocating.
+//
+// When Brigadier managed to parse the root literal we look the node up by identity in a NodeIndex built for
+// that dispatcher. Commands that did not parse (unknown to the dispatcher or rejected by a requirement) fall
+// back to matching the raw input against the configured names, accepting an optional leading slash and
+// namespace such as "minecraft:give".
+//
+// Immutable, so it can live in the VotingPolicy snapshot. The caller keeps the NodeIndex for the current
+// dispatcher and builds a new one when the dispatcher or the matcher changes.
+public final class GatedCommandMatcher {
+    // Names bucketed by first character so the fallback only compares a handful of candidates
+    private final String[][] namesByFirstChar = new String[128][];
+    private final String[] allNames;
+
+    public GatedCommandMatcher(Collection<String> commands) {
+        allNames = commands.stream()
+            .map(GatedCommandMatcher::stripNamespace)
+            .map(name -> name.toLowerCase(Locale.ROOT))
+            .filter(name -> !name.isEmpty())
+            .distinct()
+            .toArray(String[]::new);
+
+        for (String name : allNames) {
+            char first = name.charAt(0);
+            if (first >= 128) continue;
+            String[] bucket = namesByFirstChar[first];
+            if (bucket == null) {
+                bucket = new String[] { name };
+            } else {
+                bucket = java.util.Arrays.copyOf(bucket, bucket.length + 1);
+                bucket[bucket.length - 1] = name;
+            }
+            namesByFirstChar[first] = bucket;
+        }
+    }
+
+    private static String stripNamespace(String command) {
+        String trimmed = command.trim();
+        if (trimmed.startsWith("/")) trimmed = trimmed.substring(1);
+        int colon = trimmed.indexOf(':');
+        return colon >= 0 ? trimmed.substring(colon + 1) : trimmed;
+    }
+
+    public String[] names() {
+        return allNames.clone();
+    }
+
+    // The gated root nodes of one dispatcher; a new one is needed whenever the dispatcher is replaced, e.g. by /reload
+    public NodeIndex index(CommandNode<?> root) {
+        Map<CommandNode<?>, String> nodes = new IdentityHashMap<>();
+        for (String name : allNames) {
+            CommandNode<?> node = root.getChild(name);
+            if (node != null) {
+                nodes.put(node, name);
+            }
+        }
+        return new NodeIndex(this, root, nodes);
+    }
+
+    public static final class NodeIndex {
+        private final GatedCommandMatcher matcher;
+        private final CommandNode<?> root;
+        private final Map<CommandNode<?>, String> gatedNodes;
+
+        private NodeIndex(GatedCommandMatcher matcher, CommandNode<?> root, Map<CommandNode<?>, String> gatedNodes) {
+            this.matcher = matcher;
+            this.root = root;
+            this.gatedNodes = gatedNodes;
+        }
+
+        public boolean isFor(GatedCommandMatcher matcher, CommandNode<?> root) {
+            return this.matcher == matcher && this.root == root;
+        }
+
+        // Returns the gated command name for this parse, or null when the command is not vote-gated. A parse
+        // against another dispatcher is matched on its raw input.
+        public <S> String match(ParseResults<S> parse) {
+            CommandContextBuilder<S> context = parse.getContext();
+            List<ParsedCommandNode<S>> nodes = context.getNodes();
+            if (!nodes.isEmpty() && context.getRootNode() == root) {
+                return gatedNodes.get(nodes.get(0).getNode());
+            }
+            return matcher.match(parse.getReader().getString());
+        }
+    }
+
+    public String match(String input) {
+        int length = input.length();
+        int start = 0;
+        while (start < length && input.charAt(start) == ' ') start++;
+        if (start < length && input.charAt(start) == '/') start++;
+
+        int end = start;
+        int colon = -1;
+        while (end < length) {
+            char c = input.charAt(end);
+            if (c == ' ') break;
+            if (c == ':' && colon < 0) colon = end;
+            end++;
+        }
+        if (colon >= 0) {
+            start = colon + 1;
+        }
+
+        int nameLength = end - start;
+        if (nameLength <= 0) return null;
+        char first = input.charAt(start);
+        if (first >= 128) return null;
+        String[] bucket = namesByFirstChar[first];
+        if (bucket == null) return null;
+
+        for (String name : bucket) {
+            if (name.length() == nameLength && input.regionMatches(start, name, 0, nameLength)) {
+                return name;
+            }
+        }
+        return null;
+    }
+}
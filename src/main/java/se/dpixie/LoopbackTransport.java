@@ -0,0 +1,62 @@
+package se.dpixie.democraticcommands;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+// Servers in one JVM, for tests and the simulator. Envelopes still go through their wire format, so what works
+// here works over the other transports.
+public final class LoopbackTransport implements VoteTransport {
+    public static final class Hub {
+        private final List<LoopbackTransport> members = new CopyOnWriteArrayList<>();
+
+        public LoopbackTransport join() {
+            LoopbackTransport transport = new LoopbackTransport(this);
+            members.add(transport);
+            return transport;
+        }
+    }
+
+    private final Hub hub;
+    private final Queue<byte[]> inbox = new ConcurrentLinkedQueue<>();
+
+    private LoopbackTransport(Hub hub) {
+        this.hub = hub;
+    }
+
+    @Override
+    public void send(Envelope envelope) {
+        byte[] frame = envelope.frame(null);
+        for (LoopbackTransport member : hub.members) {
+            if (member != this) {
+                member.inbox.add(frame);
+            }
+        }
+    }
+
+    @Override
+    public void poll(Consumer<Envelope> receiver) {
+        byte[] frame;
+        while ((frame = inbox.poll()) != null) {
+            try {
+                Envelope envelope = Envelope.read(new DataInputStream(new ByteArrayInputStream(frame)), null);
+                if (envelope != null) {
+                    receiver.accept(envelope);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Loopback frame unreadable", e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        hub.members.remove(this);
+        inbox.clear();
+    }
+}
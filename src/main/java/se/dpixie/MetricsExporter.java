@@ -0,0 +1,81 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Publishes VoteMetrics in Prometheus text format: periodically to a file (for the node exporter's textfile
+// collector or a quick look) and, when a port is configured, over HTTP on the loopback interface. All I/O
+// happens on the exporter's own daemon threads.
+public class MetricsExporter implements AutoCloseable {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    private final Path file;
+    private final ScheduledExecutorService dumper;
+    private final HttpServer http;
+
+    public MetricsExporter(Path file, int dumpIntervalSeconds, int httpPort) throws IOException {
+        this.file = file;
+        if (dumpIntervalSeconds > 0) {
+            Files.createDirectories(file.getParent());
+            dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "DemocraticCommands-Metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dumper.scheduleWithFixedDelay(this::dump, dumpIntervalSeconds, dumpIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            dumper = null;
+        }
+
+        if (httpPort > 0) {
+            http = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), httpPort), 0);
+            http.createContext("/metrics", exchange -> {
+                byte[] body = VoteMetrics.prometheus().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            http.start();
+            LOGGER.info("Serving metrics on http://{}:{}/metrics", InetAddress.getLoopbackAddress().getHostAddress(), httpPort);
+        } else {
+            http = null;
+        }
+    }
+
+    // Written to a temporary file and moved into place so readers never see a partial dump
+    public void dump() {
+        try {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.writeString(temp, VoteMetrics.prometheus(), StandardCharsets.UTF_8);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write metrics to {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (http != null) {
+            http.stop(0);
+        }
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dump();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package se.dpixie.democraticcommands;
+
+import java.util.UUID;
+
+// What servers sharing votes tell each other, see NetworkVotes. Every message names the vote by the network id its
+// origin server gave it, and every message can be applied any number of times: a proposal or result for a vote
+// that is already known is ignored, and a tally only replaces an older tally from the same server.
+public sealed interface NetworkMessage {
+    UUID vote();
+
+    // ticksLeft is taken when the message is sent, so a proposal sent again carries the time still left. rules are
+    // the ones the origin decides the vote by, so every server shows the same threshold and quorum.
+    record Proposal(UUID vote, String command, String key, String commandName, UUID initiatorId, String initiatorName,
+                    long ticksLeft, VotingPolicy.Rules rules) implements NetworkMessage {
+    }
+
+    // One server's share of the ballots. version grows with every change the server makes to its share.
+    record TallyUpdate(UUID vote, String node, long version, Tally tally) implements NetworkMessage {
+    }
+
+    record Result(UUID vote, boolean passed) implements NetworkMessage {
+    }
+}
@@ -0,0 +1,59 @@
+package se.dpixie.democraticcommands;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// The part of a vote shared with other servers, see NetworkVotes. The origin server proposed the vote and decides
+// it; every other server holds a mirror where its own players vote. Each server's share of the ballots arrives as
+// a partial tally, and the sum of the other servers' partials is kept up to date by swapping the old partial of a
+// server for its new one, so an update costs the same however many servers and voters there are.
+public final class NetworkVote {
+    public final UUID id;
+    public final String origin;
+    public final boolean mirror;
+    // The origin does not end the vote early before this tick, so the other servers have time to report their
+    // electorates first
+    public final long settleTick;
+
+    private record Partial(long version, Tally tally) {
+    }
+
+    private final Map<String, Partial> partials = new HashMap<>();
+    private Tally remote = Tally.EMPTY;
+    // The last partial this server sent, and its version
+    Tally lastSent;
+    long localVersion;
+
+    public NetworkVote(UUID id, String origin, boolean mirror, long settleTick) {
+        this.id = id;
+        this.origin = origin;
+        this.mirror = mirror;
+        this.settleTick = settleTick;
+    }
+
+    // False when a partial at least as new from that server was already applied
+    public boolean apply(String node, long version, Tally tally) {
+        Partial previous = partials.get(node);
+        if (previous != null && previous.version >= version) return false;
+        partials.put(node, new Partial(version, tally));
+        remote = remote.plus(tally);
+        if (previous != null) {
+            remote = remote.minus(previous.tally);
+        }
+        return true;
+    }
+
+    // The other servers' ballots combined
+    public Tally remote() {
+        return remote;
+    }
+
+    public int reportingServers() {
+        return partials.size();
+    }
+
+    public boolean isSettled(long currentTick) {
+        return currentTick >= settleTick;
+    }
+}
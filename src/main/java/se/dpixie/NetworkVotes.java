@@ -0,0 +1,260 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// Votes shared by the servers of a proxy network. A vote on one of the shared commands is proposed to every
+// server; each opens a mirror where its own players vote, and the servers exchange partial tallies (their own
+// share of the ballots) rather than ballots or voter lists. The origin decides the vote on the combined tally
+// and announces the result, and every server runs the passed command itself.
+//
+// Messages queued during a tick go out together in one envelope at the end of it, and several ballots on a vote
+// in one tick become a single tally. Envelopes are numbered per sender, repeats are dropped, and every message can
+// be applied more than once, so the origin's proposals and results and every server's tallies are simply sent
+// again every RESEND_TICKS; a server that missed something catches up then.
+//
+// A proposal is only mirrored when its command is a network command here and parses on this server. Envelopes
+// from an earlier run of a sender, sent before this server started or outside MAX_ENVELOPE_AGE_MILLIS of now are
+// dropped, so one captured before a restart cannot be replayed after it. Ids of concluded votes are remembered
+// until well after the origin could still be sending their proposal, so a late proposal never reopens a vote.
+//
+// Only used from the server thread. Not persisted: network votes do not survive a restart.
+public class NetworkVotes {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    // How long the origin waits for the other servers' electorates before it may end a vote early
+    public static final long SETTLE_TICKS = VoteScheduler.secondsToTicks(2);
+    // How long after its deadline a mirror waits for the origin's result before failing
+    public static final long GRACE_TICKS = VoteScheduler.secondsToTicks(5);
+    public static final long RESEND_TICKS = VoteScheduler.secondsToTicks(5);
+    // How long results are sent again, and how long past a vote's deadline its id is remembered
+    private static final long RESULT_MEMORY_TICKS = VoteScheduler.secondsToTicks(60);
+    private static final int MAX_MESSAGES_PER_ENVELOPE = 1024;
+    // Envelopes sent further than this from now, by the receiver's clock, are refused as stale or replayed
+    static final long MAX_ENVELOPE_AGE_MILLIS = 30_000;
+
+    private record Shared(ActiveVote vote, String commandName) {
+    }
+
+    // result is null for votes this server only mirrored; it is sent again until resendUntilTick
+    private record Concluded(NetworkMessage.Result result, long resendUntilTick, long forgetTick) {
+    }
+
+    // Checks a proposed command against this server's commands; returns why it cannot run here, or null
+    public interface CommandCheck {
+        String problem(String command);
+    }
+
+    private record Received(long epoch, long sequence) {
+    }
+
+    private final String node;
+    private final long epoch = System.currentTimeMillis();
+    private final VoteTransport transport;
+    private final VotingEngine engine;
+    private final Supplier<VotingPolicy> policy;
+    private final Set<String> commands;
+    private final CommandCheck check;
+    private final Map<UUID, Shared> open = new HashMap<>();
+    private final Map<UUID, Concluded> concluded = new LinkedHashMap<>();
+    private final Map<String, Received> received = new HashMap<>();
+    private final List<NetworkMessage> outbox = new ArrayList<>();
+    private final Set<ActiveVote> changed = new LinkedHashSet<>();
+    private long sequence;
+    private long nextResendTick;
+
+    // commands are the command names voted on network-wide
+    public NetworkVotes(String node, VoteTransport transport, VotingEngine engine, Supplier<VotingPolicy> policy,
+                        List<String> commands, CommandCheck check) {
+        this.node = node;
+        this.check = check;
+        this.transport = transport;
+        this.engine = engine;
+        this.policy = policy;
+        this.commands = new LinkedHashSet<>();
+        for (String command : commands) {
+            this.commands.add(command.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    public String node() {
+        return node;
+    }
+
+    public boolean shares(String commandName) {
+        return commands.contains(commandName.toLowerCase(Locale.ROOT));
+    }
+
+    // Network side of a vote this server is about to propose
+    public NetworkVote newVote() {
+        return new NetworkVote(UUID.randomUUID(), node, false, engine.currentTick() + SETTLE_TICKS);
+    }
+
+    // A vote proposed here with a NetworkVote from newVote started
+    public void published(ActiveVote vote, String commandName) {
+        open.put(vote.network.id, new Shared(vote, commandName));
+        outbox.add(proposal(vote, commandName));
+        changed.add(vote);
+    }
+
+    // Ballots on a shared vote changed on this server
+    public void tallyChanged(ActiveVote vote) {
+        if (vote.network != null && open.containsKey(vote.network.id)) {
+            changed.add(vote);
+        }
+    }
+
+    public void concluded(ActiveVote vote, boolean passed) {
+        if (vote.network == null || open.remove(vote.network.id) == null) return;
+        changed.remove(vote);
+        NetworkMessage.Result result = null;
+        if (!vote.network.mirror) {
+            result = new NetworkMessage.Result(vote.network.id, passed);
+            outbox.add(result);
+        }
+        remember(vote.network.id, result, vote.deadlineTick + GRACE_TICKS);
+    }
+
+    // The origin sends a vote's proposal at most until its deadline, so the id is kept well beyond that
+    private void remember(UUID id, NetworkMessage.Result result, long deadlineTick) {
+        long currentTick = engine.currentTick();
+        concluded.put(id, new Concluded(result, currentTick + RESULT_MEMORY_TICKS,
+            Math.max(currentTick, deadlineTick) + RESULT_MEMORY_TICKS));
+    }
+
+    // Applies what arrived, then sends what this tick queued. Called once per tick after the engine's tick.
+    public void tick() {
+        transport.poll(this::receive);
+
+        long currentTick = engine.currentTick();
+        if (currentTick >= nextResendTick) {
+            nextResendTick = currentTick + RESEND_TICKS;
+            resend(currentTick);
+        }
+
+        for (ActiveVote vote : changed) {
+            NetworkVote network = vote.network;
+            Tally local = Tally.of(vote.ballots);
+            if (!local.equals(network.lastSent)) {
+                network.lastSent = local;
+                network.localVersion++;
+            }
+            outbox.add(new NetworkMessage.TallyUpdate(network.id, node, network.localVersion, local));
+        }
+        changed.clear();
+
+        for (int from = 0; from < outbox.size(); from += MAX_MESSAGES_PER_ENVELOPE) {
+            List<NetworkMessage> messages = outbox.subList(from, Math.min(outbox.size(), from + MAX_MESSAGES_PER_ENVELOPE));
+            transport.send(new Envelope(node, epoch, ++sequence, System.currentTimeMillis(), List.copyOf(messages)));
+            VoteMetrics.NETWORK_ENVELOPES_SENT.increment();
+        }
+        outbox.clear();
+    }
+
+    private void resend(long currentTick) {
+        for (Shared shared : open.values()) {
+            if (!shared.vote.network.mirror) {
+                outbox.add(proposal(shared.vote, shared.commandName));
+            }
+            changed.add(shared.vote);
+        }
+        Iterator<Concluded> iterator = concluded.values().iterator();
+        while (iterator.hasNext()) {
+            Concluded entry = iterator.next();
+            if (entry.forgetTick <= currentTick) {
+                iterator.remove();
+            } else if (entry.result != null && entry.resendUntilTick > currentTick) {
+                outbox.add(entry.result);
+            }
+        }
+    }
+
+    private NetworkMessage.Proposal proposal(ActiveVote vote, String commandName) {
+        return new NetworkMessage.Proposal(vote.network.id, vote.command, vote.key, commandName, vote.initiator.id(),
+            vote.initiator.name(), vote.deadlineTick - engine.currentTick(), vote.rules);
+    }
+
+    private void receive(Envelope envelope) {
+        if (envelope.node().equals(node)) return;
+        long now = System.currentTimeMillis();
+        // Sent before this server started, or a run that claims to start after it sent
+        if (envelope.sentAt() < epoch || envelope.epoch() > envelope.sentAt()
+            || Math.abs(now - envelope.sentAt()) > MAX_ENVELOPE_AGE_MILLIS) {
+            VoteMetrics.NETWORK_ENVELOPES_DROPPED.increment();
+            return;
+        }
+        Received last = received.get(envelope.node());
+        // An envelope from an earlier run of the sender, or one already applied
+        if (last != null && (envelope.epoch() < last.epoch
+            || envelope.epoch() == last.epoch && envelope.sequence() <= last.sequence)) {
+            VoteMetrics.NETWORK_ENVELOPES_DROPPED.increment();
+            return;
+        }
+        received.put(envelope.node(), new Received(envelope.epoch(), envelope.sequence()));
+        VoteMetrics.NETWORK_ENVELOPES_RECEIVED.increment();
+
+        for (NetworkMessage message : envelope.messages()) {
+            if (message instanceof NetworkMessage.Proposal proposal) {
+                openMirror(envelope.node(), proposal);
+            } else if (message instanceof NetworkMessage.TallyUpdate update) {
+                Shared shared = open.get(update.vote());
+                // A server only speaks for its own share of the ballots
+                if (shared != null && update.node().equals(envelope.node())) {
+                    engine.applyRemoteTally(shared.vote, update.node(), update.version(), update.tally());
+                }
+            } else if (message instanceof NetworkMessage.Result result) {
+                Shared shared = open.get(result.vote());
+                // Only the origin decides
+                if (shared != null && shared.vote.isMirror() && shared.vote.network.origin.equals(envelope.node())) {
+                    engine.concludeRemotely(shared.vote, result.passed());
+                }
+            }
+        }
+    }
+
+    private void openMirror(String origin, NetworkMessage.Proposal proposal) {
+        if (open.containsKey(proposal.vote()) || concluded.containsKey(proposal.vote()) || proposal.ticksLeft() <= 0) {
+            return;
+        }
+        // The command name is taken from the command itself, never from what the sender says it is
+        String commandName = VoteHistoryStore.commandName(proposal.command());
+        String problem = !commandName.equals(proposal.commandName().toLowerCase(Locale.ROOT))
+            ? "it names /" + proposal.commandName() + " but runs /" + commandName
+            : !shares(commandName) ? commandName + " is not a network command here" : check.problem(proposal.command());
+        if (problem != null) {
+            LOGGER.warn("Ignoring network vote on /{} from {}: {}", proposal.command(), origin, problem);
+            VoteMetrics.PROPOSALS_REJECTED.increment();
+            remember(proposal.vote(), null, engine.currentTick() + proposal.ticksLeft() + GRACE_TICKS);
+            return;
+        }
+        NetworkVote network = new NetworkVote(proposal.vote(), origin, true, engine.currentTick());
+        ActiveVote vote = engine.openMirror(policy.get(), network, proposal.command(), proposal.key(), proposal.rules(),
+            new Voter.Known(proposal.initiatorId(), proposal.initiatorName()), proposal.ticksLeft(), GRACE_TICKS);
+        open.put(network.id, new Shared(vote, commandName));
+        changed.add(vote);
+    }
+
+    public int size() {
+        return open.size();
+    }
+
+    public void close() {
+        transport.close();
+        open.clear();
+        concluded.clear();
+        changed.clear();
+        outbox.clear();
+    }
+}
@@ -0,0 +1,140 @@
+package se.dpixie.democraticcommands;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.world.level.saveddata.SavedData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+// Snapshot of the open votes, saved with the overworld's data (data/democraticcommands_votes.dat) whenever the
+// world is saved. It is only as fresh as the last save; VoteJournal covers everything since.
+public class OpenVotesData extends SavedData {
+    public static final String NAME = "democraticcommands_votes";
+
+    private final VoteJournal.Snapshot loaded;
+    private Supplier<VoteJournal.Snapshot> source;
+    private VoteJournal journal;
+    // Journal sequence contained in the snapshot that is on disk
+    private long savedSequence;
+
+    public OpenVotesData() {
+        this(VoteJournal.Snapshot.EMPTY);
+    }
+
+    private OpenVotesData(VoteJournal.Snapshot loaded) {
+        this.loaded = loaded;
+        this.source = () -> loaded;
+        this.savedSequence = loaded.sequence();
+    }
+
+    // The snapshot read from disk when the server started
+    public VoteJournal.Snapshot snapshot() {
+        return loaded;
+    }
+
+    // From now on every save snapshots the running engine and lets the journal drop what is on disk
+    public void attach(Supplier<VoteJournal.Snapshot> source, VoteJournal journal) {
+        this.source = source;
+        this.journal = journal;
+    }
+
+    // Keeps the given state for the world save that follows server stop, when the engine is already gone
+    public void freeze(VoteJournal.Snapshot snapshot) {
+        this.source = () -> snapshot;
+        this.journal = null;
+        setDirty();
+    }
+
+    @Override
+    public CompoundTag save(CompoundTag tag) {
+        VoteJournal.Snapshot snapshot = source.get();
+        tag.putLong("tick", snapshot.tick());
+        tag.putLong("sequence", snapshot.sequence());
+        ListTag votes = new ListTag();
+        for (SavedVote vote : snapshot.votes()) {
+            votes.add(writeVote(vote));
+        }
+        tag.put("votes", votes);
+
+        // The previous snapshot was written before this save started, so its records are safe to drop
+        if (journal != null) {
+            journal.compact(savedSequence);
+        }
+        savedSequence = snapshot.sequence();
+        return tag;
+    }
+
+    public static OpenVotesData load(CompoundTag tag) {
+        ListTag votesTag = tag.getList("votes", Tag.TAG_COMPOUND);
+        List<SavedVote> votes = new ArrayList<>(votesTag.size());
+        for (int i = 0; i < votesTag.size(); i++) {
+            votes.add(readVote(votesTag.getCompound(i)));
+        }
+        return new OpenVotesData(new VoteJournal.Snapshot(tag.getLong("tick"), tag.getLong("sequence"), votes));
+    }
+
+    private static CompoundTag writeVote(SavedVote vote) {
+        CompoundTag tag = new CompoundTag();
+        tag.putInt("id", vote.id());
+        tag.putString("command", vote.command());
+        tag.putString("key", vote.key());
+        tag.putUUID("initiator", vote.initiatorId());
+        tag.putString("initiatorName", vote.initiatorName());
+        tag.putLong("startTime", vote.startTime());
+        tag.putLong("deadlineTick", vote.deadlineTick());
+
+        VotingPolicy.Rules rules = vote.rules();
+        CompoundTag rulesTag = new CompoundTag();
+        rulesTag.putInt("timeout", rules.timeoutSeconds());
+        rulesTag.putInt("minVoters", rules.minimumVoters());
+        rulesTag.putInt("minVotes", rules.minimumVotes());
+        rulesTag.putDouble("threshold", rules.approvalThreshold());
+        rulesTag.putBoolean("majorityParticipation", rules.requireMajorityParticipation());
+        rulesTag.putBoolean("abstainAsNo", rules.countAbstentionsAsNo());
+        tag.put("rules", rulesTag);
+
+        // Voters as most/least significant bit pairs, names in slot order
+        long[] voters = new long[vote.voters().length * 2];
+        ListTag names = new ListTag();
+        for (int slot = 0; slot < vote.voters().length; slot++) {
+            voters[slot * 2] = vote.voters()[slot].getMostSignificantBits();
+            voters[slot * 2 + 1] = vote.voters()[slot].getLeastSignificantBits();
+            names.add(StringTag.valueOf(vote.names()[slot]));
+        }
+        tag.putLongArray("voters", voters);
+        tag.put("names", names);
+        tag.putByteArray("ballots", vote.ballots());
+        return tag;
+    }
+
+    private static SavedVote readVote(CompoundTag tag) {
+        CompoundTag rulesTag = tag.getCompound("rules");
+        VotingPolicy.Rules rules = new VotingPolicy.Rules(rulesTag.getInt("timeout"), rulesTag.getInt("minVoters"),
+            rulesTag.getInt("minVotes"), rulesTag.getDouble("threshold"), rulesTag.getBoolean("majorityParticipation"),
+            rulesTag.getBoolean("abstainAsNo"));
+
+        long[] voterBits = tag.getLongArray("voters");
+        ListTag namesTag = tag.getList("names", Tag.TAG_STRING);
+        UUID[] voters = new UUID[voterBits.length / 2];
+        String[] names = new String[voters.length];
+        for (int slot = 0; slot < voters.length; slot++) {
+            voters[slot] = new UUID(voterBits[slot * 2], voterBits[slot * 2 + 1]);
+            names[slot] = namesTag.getString(slot);
+        }
+        byte[] ballots = tag.getByteArray("ballots");
+        if (ballots.length != voters.length) {
+            ballots = new byte[voters.length];
+        }
+
+        String command = tag.getString("command");
+        String key = tag.contains("key", Tag.TAG_STRING) ? tag.getString("key") : CommandCanonicalizer.normalize(command);
+        return new SavedVote(tag.getInt("id"), command, key, tag.getUUID("initiator"),
+            tag.getString("initiatorName"), rules, tag.getLong("startTime"), tag.getLong("deadlineTick"),
+            voters, names, ballots);
+    }
+}
@@ -0,0 +1,110 @@
+package se.dpixie.democraticcommands;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Online players by dimension and chunk, so a locally scoped vote finds its electorate by looking at the chunks
+// around a position instead of checking every player on the server. Kept up to date from the login, logout,
+// respawn, dimension change and chunk crossing events; nothing scans the player list.
+//
+// Only used from the server thread.
+public class PlayerChunkIndex {
+    private record Entry(ServerPlayer player, ResourceKey<Level> dimension, long chunk) {
+    }
+
+    private final Map<ResourceKey<Level>, Map<Long, List<ServerPlayer>>> buckets = new HashMap<>();
+    private final Map<ResourceKey<Level>, List<ServerPlayer>> byDimension = new HashMap<>();
+    private final Map<UUID, Entry> entries = new HashMap<>();
+
+    // Called whenever the player may have moved to another chunk or dimension; cheap when they haven't
+    public void update(ServerPlayer player) {
+        ResourceKey<Level> dimension = player.level().dimension();
+        BlockPos pos = player.blockPosition();
+        long chunk = ChunkPos.asLong(pos.getX() >> 4, pos.getZ() >> 4);
+
+        Entry previous = entries.get(player.getUUID());
+        if (previous != null) {
+            if (previous.player == player && previous.dimension.equals(dimension) && previous.chunk == chunk) return;
+            unlink(previous);
+        }
+        Entry entry = new Entry(player, dimension, chunk);
+        entries.put(player.getUUID(), entry);
+        buckets.computeIfAbsent(dimension, k -> new HashMap<>()).computeIfAbsent(chunk, k -> new ArrayList<>(2)).add(player);
+        byDimension.computeIfAbsent(dimension, k -> new ArrayList<>()).add(player);
+    }
+
+    public void remove(ServerPlayer player) {
+        Entry entry = entries.remove(player.getUUID());
+        if (entry != null) {
+            unlink(entry);
+        }
+    }
+
+    private void unlink(Entry entry) {
+        Map<Long, List<ServerPlayer>> chunks = buckets.get(entry.dimension);
+        List<ServerPlayer> bucket = chunks.get(entry.chunk);
+        bucket.remove(entry.player);
+        if (bucket.isEmpty()) {
+            chunks.remove(entry.chunk);
+        }
+        byDimension.get(entry.dimension).remove(entry.player);
+    }
+
+    public List<ServerPlayer> inDimension(ResourceKey<Level> dimension) {
+        List<ServerPlayer> players = byDimension.get(dimension);
+        return players == null ? List.of() : Collections.unmodifiableList(players);
+    }
+
+    // Players in the square of chunks at most radius chunks from the one containing pos
+    public List<ServerPlayer> near(ResourceKey<Level> dimension, BlockPos pos, int radius) {
+        Map<Long, List<ServerPlayer>> chunks = buckets.get(dimension);
+        if (chunks == null) return List.of();
+        int centerX = pos.getX() >> 4;
+        int centerZ = pos.getZ() >> 4;
+        List<ServerPlayer> players = new ArrayList<>();
+
+        // Probe the square unless it is larger than the number of occupied chunks
+        long side = 2L * radius + 1;
+        if (side * side <= chunks.size()) {
+            for (int x = centerX - radius; x <= centerX + radius; x++) {
+                for (int z = centerZ - radius; z <= centerZ + radius; z++) {
+                    List<ServerPlayer> bucket = chunks.get(ChunkPos.asLong(x, z));
+                    if (bucket != null) {
+                        players.addAll(bucket);
+                    }
+                }
+            }
+        } else {
+            for (Map.Entry<Long, List<ServerPlayer>> bucket : chunks.entrySet()) {
+                long chunk = bucket.getKey();
+                // ChunkPos packs x in the low and z in the high 32 bits
+                int x = (int) chunk;
+                int z = (int) (chunk >>> 32);
+                if (Math.abs(x - centerX) <= radius && Math.abs(z - centerZ) <= radius) {
+                    players.addAll(bucket.getValue());
+                }
+            }
+        }
+        return players;
+    }
+
+    public void clear() {
+        buckets.clear();
+        byDimension.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,71 @@
+package se.dpixie.democraticcommands;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+
+// Token buckets per player. A bucket holds up to burst tokens and refills at perMinute tokens per minute; each
+// request takes one. Times are server ticks, so a lagging server does not refill faster than it runs.
+//
+// Only used from the server thread, so buckets are plain objects in a HashMap. Buckets that have refilled
+// completely carry no information and are dropped by evictIdle.
+public class RateLimiter {
+    private static final double TICKS_PER_MINUTE = 60.0 * VoteScheduler.TICKS_PER_SECOND;
+
+    private static final class Bucket {
+        double tokens;
+        long lastTick;
+    }
+
+    private final Map<UUID, Bucket> buckets = new HashMap<>();
+
+    // 0 when the request may go ahead, otherwise the ticks until the player has a token again
+    public long acquire(UUID player, long currentTick, VotingPolicy.Limit limit) {
+        if (limit.isUnlimited()) return 0;
+
+        Bucket bucket = buckets.get(player);
+        if (bucket == null) {
+            bucket = new Bucket();
+            bucket.tokens = limit.burst();
+            bucket.lastTick = currentTick;
+            buckets.put(player, bucket);
+        } else {
+            refill(bucket, currentTick, limit);
+        }
+
+        if (bucket.tokens >= 1) {
+            bucket.tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - bucket.tokens) * TICKS_PER_MINUTE / limit.perMinute());
+    }
+
+    private static void refill(Bucket bucket, long currentTick, VotingPolicy.Limit limit) {
+        long elapsed = currentTick - bucket.lastTick;
+        if (elapsed > 0) {
+            bucket.tokens = Math.min(limit.burst(), bucket.tokens + elapsed * limit.perMinute() / TICKS_PER_MINUTE);
+            bucket.lastTick = currentTick;
+        }
+    }
+
+    // Drops the buckets that are full again; a returning player starts from a full bucket anyway
+    public void evictIdle(long currentTick, VotingPolicy.Limit limit) {
+        Iterator<Bucket> iterator = buckets.values().iterator();
+        while (iterator.hasNext()) {
+            Bucket bucket = iterator.next();
+            refill(bucket, currentTick, limit);
+            if (limit.isUnlimited() || bucket.tokens >= limit.burst()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        buckets.clear();
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
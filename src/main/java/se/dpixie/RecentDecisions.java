@@ -0,0 +1,56 @@
+package se.dpixie.democraticcommands;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Recently concluded votes by canonical command, so a proposal that just failed can be refused and one that just
+// passed can be reported instead of being voted on again. Entries expire after the cooldown the policy gave them
+// and the least recently used entry is evicted once the cache is full. Times are engine ticks.
+//
+// Not thread-safe; owned by VotingEngine.
+public class RecentDecisions {
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public record Decision(String key, int voteId, boolean passed, long decidedTick, long expiresTick) {
+        public long ticksLeft(long currentTick) {
+            return Math.max(0, expiresTick - currentTick);
+        }
+    }
+
+    private final Map<String, Decision> decisions;
+
+    public RecentDecisions(int capacity) {
+        this.decisions = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    // Nothing is kept when the policy has no cooldown for this outcome
+    public void record(String key, int voteId, boolean passed, long currentTick, long cooldownTicks) {
+        if (cooldownTicks <= 0) {
+            decisions.remove(key);
+            return;
+        }
+        decisions.put(key, new Decision(key, voteId, passed, currentTick, currentTick + cooldownTicks));
+    }
+
+    public Decision get(String key, long currentTick) {
+        Decision decision = decisions.get(key);
+        if (decision != null && currentTick >= decision.expiresTick()) {
+            decisions.remove(key);
+            return null;
+        }
+        return decision;
+    }
+
+    public void clear() {
+        decisions.clear();
+    }
+
+    public int size() {
+        return decisions.size();
+    }
+}
@@ -0,0 +1,88 @@
+package se.dpixie.democraticcommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+// Splits a region command such as "fill 0 0 0 99 60 99 stone" into several commands over chunk-aligned boxes of
+// at most sliceBlocks blocks each, so ExecutionQueue can spread the work over several ticks. Every box lies within
+// one chunk column; columns are cut into layers thin enough to stay within the slice size.
+//
+// Only forms whose result does not depend on the whole region are sliced: block positions must be absolute or
+// relative (~) to the origin, and fill's hollow and outline modes, which only make sense for the complete box,
+// are left alone. Anything else returns null and runs as a single command.
+public final class RegionSlicer {
+    private static final Set<String> REGION_COMMANDS = Set.of("fill", "fillbiome");
+    private static final Set<String> WHOLE_REGION_MODES = Set.of("hollow", "outline");
+    private static final int CHUNK = 16;
+
+    private RegionSlicer() {
+    }
+
+    // origin is the block position ~ refers to
+    public static List<String> slice(String command, int originX, int originY, int originZ, int sliceBlocks, long maxBlocks) {
+        // Only the name and the six coordinates are split off; the rest may hold NBT or text whose spacing matters
+        String text = CommandCanonicalizer.stripPrefix(command.trim());
+        String[] words = new String[7];
+        int position = 0;
+        for (int i = 0; i < words.length; i++) {
+            while (position < text.length() && text.charAt(position) == ' ') position++;
+            int end = text.indexOf(' ', position);
+            if (end < 0) return null;
+            words[i] = text.substring(position, end);
+            position = end;
+        }
+        while (position < text.length() && text.charAt(position) == ' ') position++;
+        if (position == text.length()) return null;
+        String rest = text.substring(position);
+
+        String name = words[0].toLowerCase(Locale.ROOT);
+        if (!REGION_COMMANDS.contains(name)) return null;
+        // A mode word anywhere after the block, even inside NBT, leaves the command whole
+        String[] modes = rest.split(" +");
+        for (int i = 1; i < modes.length; i++) {
+            if (WHOLE_REGION_MODES.contains(modes[i].toLowerCase(Locale.ROOT))) return null;
+        }
+
+        int[] origin = { originX, originY, originZ };
+        int[] corners = new int[6];
+        for (int i = 0; i < 6; i++) {
+            Integer coordinate = coordinate(words[i + 1], origin[i % 3]);
+            if (coordinate == null) return null;
+            corners[i] = coordinate;
+        }
+        int minX = Math.min(corners[0], corners[3]), maxX = Math.max(corners[0], corners[3]);
+        int minY = Math.min(corners[1], corners[4]), maxY = Math.max(corners[1], corners[4]);
+        int minZ = Math.min(corners[2], corners[5]), maxZ = Math.max(corners[2], corners[5]);
+
+        long volume = (long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1);
+        if (volume <= sliceBlocks || volume > maxBlocks) return null;
+
+        List<String> slices = new ArrayList<>();
+        for (int x = minX; x <= maxX; x = Math.floorDiv(x, CHUNK) * CHUNK + CHUNK) {
+            int toX = Math.min(maxX, Math.floorDiv(x, CHUNK) * CHUNK + CHUNK - 1);
+            for (int z = minZ; z <= maxZ; z = Math.floorDiv(z, CHUNK) * CHUNK + CHUNK) {
+                int toZ = Math.min(maxZ, Math.floorDiv(z, CHUNK) * CHUNK + CHUNK - 1);
+                int layer = Math.max(1, sliceBlocks / ((toX - x + 1) * (toZ - z + 1)));
+                for (int y = minY; y <= maxY; y += layer) {
+                    int toY = Math.min(maxY, y + layer - 1);
+                    slices.add(name + " " + x + " " + y + " " + z + " " + toX + " " + toY + " " + toZ + " " + rest);
+                }
+            }
+        }
+        return slices;
+    }
+
+    private static Integer coordinate(String word, int origin) {
+        try {
+            if (word.startsWith("~")) {
+                return word.length() == 1 ? origin : origin + Integer.parseInt(word.substring(1));
+            }
+            return Integer.parseInt(word);
+        } catch (NumberFormatException e) {
+            // Local (^) or fractional coordinates
+            return null;
+        }
+    }
+}
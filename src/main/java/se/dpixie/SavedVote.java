@@ -0,0 +1,35 @@
+package se.dpixie.democraticcommands;
+
+import java.util.UUID;
+
+// Everything needed to re-open a vote after a restart. The deadline is in ticks of the server run that saved it;
+// VoteJournal.recover turns it into the time the vote had left.
+//
+// The arrays are copies owned by this record; the journal replay updates ballots in place.
+public record SavedVote(int id, String command, String key, UUID initiatorId, String initiatorName, VotingPolicy.Rules rules,
+                        long startTime, long deadlineTick, UUID[] voters, String[] names, byte[] ballots) {
+
+    public static SavedVote of(ActiveVote vote) {
+        BallotBox box = vote.ballots;
+        UUID[] voters = new UUID[box.size()];
+        String[] names = new String[box.size()];
+        byte[] ballots = new byte[box.size()];
+        for (int slot = 0; slot < box.size(); slot++) {
+            voters[slot] = box.voter(slot);
+            names[slot] = box.name(slot);
+            ballots[slot] = box.ballot(slot);
+        }
+        return new SavedVote(vote.id, vote.command, vote.key, vote.initiator.id(), vote.initiator.name(), vote.rules,
+            vote.startTime, vote.deadlineTick, voters, names, ballots);
+    }
+
+    public BallotBox toBallotBox() {
+        BallotBox box = new BallotBox(voters.clone(), names.clone());
+        for (int slot = 0; slot < ballots.length; slot++) {
+            if (ballots[slot] != BallotBox.NONE) {
+                box.set(slot, ballots[slot]);
+            }
+        }
+        return box;
+    }
+}
@@ -0,0 +1,208 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import javax.crypto.Mac;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+// Servers talking TCP directly. Each server listens on a port and connects out to every peer; frames are
+// authenticated with the network's shared secret, and a connection that sends a frame failing the check is
+// closed. A background thread writes to the peers and reconnects to those that went away, one thread per
+// incoming connection reads. Envelopes sent while a peer is unreachable are lost to it; NetworkVotes sends the
+// state of open votes again every few seconds, so it catches up once the connection is back.
+public final class SocketTransport implements VoteTransport {
+    private static final Logger LOGGER = LogUtils.getLogger();
+    private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+    private static final long RECONNECT_DELAY_MILLIS = 5000;
+    // Frames waiting for the writer; more than this and the newest are dropped
+    private static final int MAX_PENDING = 1024;
+
+    private final class Peer {
+        final InetSocketAddress address;
+        Socket socket;
+        OutputStream out;
+        long nextAttempt;
+
+        Peer(InetSocketAddress address) {
+            this.address = address;
+        }
+
+        boolean connect() {
+            if (socket != null) return true;
+            long now = System.currentTimeMillis();
+            if (now < nextAttempt) return false;
+            try {
+                Socket connection = new Socket();
+                connection.connect(address, CONNECT_TIMEOUT_MILLIS);
+                connection.setTcpNoDelay(true);
+                socket = connection;
+                out = new BufferedOutputStream(connection.getOutputStream());
+                LOGGER.info("Connected to vote network peer {}", address);
+                return true;
+            } catch (IOException e) {
+                nextAttempt = now + RECONNECT_DELAY_MILLIS;
+                return false;
+            }
+        }
+
+        void disconnect() {
+            closeQuietly(socket);
+            socket = null;
+            out = null;
+            nextAttempt = System.currentTimeMillis() + RECONNECT_DELAY_MILLIS;
+        }
+    }
+
+    private final String secret;
+    private final Mac mac;
+    private final ServerSocket server;
+    private final List<Peer> peers = new ArrayList<>();
+    private final BlockingQueue<byte[]> outbox = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final Queue<Envelope> inbox = new ConcurrentLinkedQueue<>();
+    private final List<Socket> incoming = new CopyOnWriteArrayList<>();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    public SocketTransport(InetSocketAddress listen, List<InetSocketAddress> peerAddresses, String secret) throws IOException {
+        if (secret == null || secret.isEmpty()) {
+            throw new IllegalArgumentException("A shared secret is required for the socket transport");
+        }
+        this.secret = secret;
+        this.mac = Envelope.mac(secret);
+        for (InetSocketAddress address : peerAddresses) {
+            peers.add(new Peer(address));
+        }
+        this.server = new ServerSocket();
+        this.server.bind(listen);
+
+        Thread listener = new Thread(this::runListener, "DemocraticCommands-NetworkListener");
+        listener.setDaemon(true);
+        listener.start();
+        this.writerThread = new Thread(this::runWriter, "DemocraticCommands-NetworkWriter");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public void send(Envelope envelope) {
+        if (!outbox.offer(envelope.frame(mac))) {
+            VoteMetrics.NETWORK_ENVELOPES_DROPPED.increment();
+        }
+    }
+
+    @Override
+    public void poll(Consumer<Envelope> receiver) {
+        Envelope envelope;
+        while ((envelope = inbox.poll()) != null) {
+            receiver.accept(envelope);
+        }
+    }
+
+    private void runWriter() {
+        while (running) {
+            byte[] frame;
+            try {
+                frame = outbox.poll(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (frame == null) continue;
+            for (Peer peer : peers) {
+                if (!peer.connect()) continue;
+                try {
+                    peer.out.write(frame);
+                    peer.out.flush();
+                } catch (IOException e) {
+                    LOGGER.warn("Lost connection to vote network peer {}: {}", peer.address, e.getMessage());
+                    peer.disconnect();
+                }
+            }
+        }
+        for (Peer peer : peers) {
+            peer.disconnect();
+        }
+    }
+
+    private void runListener() {
+        while (running) {
+            try {
+                Socket socket = server.accept();
+                incoming.add(socket);
+                Thread reader = new Thread(() -> runReader(socket), "DemocraticCommands-NetworkReader");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                if (running) {
+                    LOGGER.warn("Vote network listener failed: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void runReader(Socket socket) {
+        // The transport's own Mac belongs to the server thread, which frames what is sent
+        Mac readerMac = Envelope.mac(secret);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (running) {
+                Envelope envelope = Envelope.read(in, readerMac);
+                if (envelope == null) {
+                    VoteMetrics.NETWORK_ENVELOPES_DROPPED.increment();
+                    LOGGER.warn("Closing vote network connection from {}: frame failed authentication",
+                        socket.getRemoteSocketAddress());
+                    break;
+                }
+                inbox.add(envelope);
+            }
+        } catch (EOFException e) {
+            // Peer went away
+        } catch (IOException e) {
+            if (running) {
+                LOGGER.warn("Vote network connection from {} failed: {}", socket.getRemoteSocketAddress(), e.getMessage());
+            }
+        } finally {
+            incoming.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closeQuietly(server);
+        for (Socket socket : incoming) {
+            closeQuietly(socket);
+        }
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
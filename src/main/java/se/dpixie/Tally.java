@@ -0,0 +1,31 @@
+package se.dpixie.democraticcommands;
+
+// Ballot counts of a vote, or of one server's share of a network vote. undecided are voters who could still vote;
+// electorate excludes voters removed under DepartedVoters.EXCLUDE.
+public record Tally(int yes, int no, int abstained, int undecided, int electorate) {
+    public static final Tally EMPTY = new Tally(0, 0, 0, 0, 0);
+
+    public static Tally of(BallotBox ballots) {
+        return new Tally(ballots.yesCount(), ballots.noCount(), ballots.abstainedCount(), ballots.undecidedCount(),
+            ballots.electorateSize());
+    }
+
+    public Tally plus(Tally other) {
+        return new Tally(yes + other.yes, no + other.no, abstained + other.abstained, undecided + other.undecided,
+            electorate + other.electorate);
+    }
+
+    public Tally minus(Tally other) {
+        return new Tally(yes - other.yes, no - other.no, abstained - other.abstained, undecided - other.undecided,
+            electorate - other.electorate);
+    }
+
+    // The tally once the deadline has passed: whoever hasn't voted abstains
+    public Tally closed() {
+        return new Tally(yes, no, abstained + undecided, 0, electorate);
+    }
+
+    public int voted() {
+        return yes + no;
+    }
+}
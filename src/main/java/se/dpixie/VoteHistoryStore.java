@@ -0,0 +1,464 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+// Append-only store of concluded votes.
+//
+// votes.dat holds length-prefixed, CRC-checked binary records. votes.idx is a memory-mapped array of
+// (offset, concludedAt) pairs so any record can be located by id in O(1) and time ranges found by binary
+// search. Initiator, command and player-name indexes are kept in memory and saved to votes.six, which records
+// how much of votes.dat it covers; on open only the records after that point are scanned.
+public class VoteHistoryStore implements AutoCloseable {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public static final byte BALLOT_YES = 1;
+    public static final byte BALLOT_NO = 2;
+    public static final byte BALLOT_ABSTAIN = 3;
+
+    private static final int RECORD_VERSION = 1;
+    private static final int INDEX_MAGIC = 0x44435649; // "DCVI"
+    private static final int INDEX_HEADER = 16;
+    private static final int INDEX_ENTRY = 16;
+    private static final int INITIAL_INDEX_CAPACITY = 4096;
+    private static final int SECONDARY_MAGIC = 0x44435653; // "DCVS"
+    private static final int SECONDARY_VERSION = 1;
+
+    private final FileChannel data;
+    private final FileChannel indexChannel;
+    private final Path secondaryFile;
+    private MappedByteBuffer index;
+    private int indexCapacity;
+    private int count;
+    private long dataEnd;
+    private long lastTimestamp;
+
+    private final Map<UUID, IntArrayList> byInitiator = new HashMap<>();
+    private final Map<String, IntArrayList> byCommand = new HashMap<>();
+    private final Map<String, UUID> playersByName = new HashMap<>();
+
+    public record Ballot(UUID voter, String name, byte choice) {}
+
+    public record VoteRecord(int id, long startedAt, long concludedAt, String command, UUID initiator,
+                             String initiatorName, boolean passed, List<Ballot> ballots) {
+        public int count(byte choice) {
+            int total = 0;
+            for (Ballot ballot : ballots) {
+                if (ballot.choice() == choice) total++;
+            }
+            return total;
+        }
+    }
+
+    public record Page(int page, int totalPages, int totalRecords, List<VoteRecord> records) {}
+
+    public VoteHistoryStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        this.data = FileChannel.open(directory.resolve("votes.dat"),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(directory.resolve("votes.idx"),
+            StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.secondaryFile = directory.resolve("votes.six");
+        load();
+    }
+
+    // Normalized command name used by the command index: first word, no slash, no namespace
+    public static String commandName(String command) {
+        int start = command.startsWith("/") ? 1 : 0;
+        int end = command.indexOf(' ', start);
+        String name = command.substring(start, end < 0 ? command.length() : end).toLowerCase(Locale.ROOT);
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    private void load() throws IOException {
+        boolean fresh = indexChannel.size() < INDEX_HEADER;
+        indexCapacity = fresh ? INITIAL_INDEX_CAPACITY
+            : Math.max(INITIAL_INDEX_CAPACITY, (int) ((indexChannel.size() - INDEX_HEADER) / INDEX_ENTRY));
+        mapIndex();
+
+        if (fresh || index.getInt(0) != INDEX_MAGIC) {
+            index.putInt(0, INDEX_MAGIC);
+            index.putInt(4, RECORD_VERSION);
+            index.putInt(8, 0);
+        }
+        count = index.getInt(8);
+
+        // Resume from the saved secondary indexes and scan only the records appended after them. Anything
+        // after the last indexed record (crash between the data and index write) is re-indexed, and a torn
+        // tail is truncated. Without a usable snapshot every record is scanned.
+        long fileSize = data.size();
+        int id = loadSecondaryIndexes(fileSize);
+        long offset = id == 0 ? 0 : dataEnd;
+        int first = id;
+        data.position(offset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(data), 1 << 16));
+        while (offset < fileSize) {
+            VoteRecord record;
+            int length;
+            try {
+                length = in.readInt();
+                if (length <= 0 || offset + 8 + length > fileSize) break;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                int crc = in.readInt();
+                if (crc != crc(payload)) break;
+                record = decode(id, payload);
+            } catch (EOFException e) {
+                break;
+            }
+            if (id >= count) {
+                putIndexEntry(id, offset, record.concludedAt());
+            }
+            addToSecondaryIndexes(record);
+            lastTimestamp = Math.max(lastTimestamp, record.concludedAt());
+            offset += 8 + length;
+            id++;
+        }
+
+        if (offset < fileSize) {
+            LOGGER.warn("Truncating {} unreadable bytes from vote history", fileSize - offset);
+            data.truncate(offset);
+        }
+        dataEnd = offset;
+        count = id;
+        index.putInt(8, count);
+        if (id > first) {
+            // Records appended from here on are only ever added after dataEnd, so the snapshot stays a valid prefix
+            saveSecondaryIndexes();
+        }
+    }
+
+    // Restores the secondary indexes from votes.six and returns the number of records they cover, or 0 when
+    // the snapshot is missing or does not match votes.dat and votes.idx
+    private int loadSecondaryIndexes(long fileSize) throws IOException {
+        if (!Files.exists(secondaryFile)) return 0;
+        byte[] bytes = Files.readAllBytes(secondaryFile);
+        try {
+            if (bytes.length < 4) throw new EOFException();
+            CRC32 check = new CRC32();
+            check.update(bytes, 0, bytes.length - 4);
+            if ((int) check.getValue() != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+                throw new IOException("checksum mismatch");
+            }
+            DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(bytes, 0, bytes.length - 4));
+            if (in.readInt() != SECONDARY_MAGIC || in.readInt() != SECONDARY_VERSION) {
+                throw new IOException("unknown format");
+            }
+            int covered = in.readInt();
+            long coveredEnd = in.readLong();
+            long coveredTimestamp = in.readLong();
+            if (covered <= 0 || covered > count || coveredEnd > fileSize
+                || offsetOf(covered - 1) >= coveredEnd || (covered < count && offsetOf(covered) != coveredEnd)) {
+                throw new IOException("does not match votes.dat");
+            }
+            int initiators = in.readInt();
+            for (int i = 0; i < initiators; i++) {
+                byInitiator.put(new UUID(in.readLong(), in.readLong()), readIds(in));
+            }
+            int commands = in.readInt();
+            for (int i = 0; i < commands; i++) {
+                byCommand.put(in.readUTF(), readIds(in));
+            }
+            int players = in.readInt();
+            for (int i = 0; i < players; i++) {
+                playersByName.put(in.readUTF(), new UUID(in.readLong(), in.readLong()));
+            }
+            dataEnd = coveredEnd;
+            lastTimestamp = coveredTimestamp;
+            return covered;
+        } catch (IOException e) {
+            LOGGER.warn("Ignoring saved vote history indexes ({}), rebuilding from votes.dat", e.getMessage());
+            byInitiator.clear();
+            byCommand.clear();
+            playersByName.clear();
+            // A rejected snapshot must not be mistaken for a valid prefix once votes.dat grows again
+            Files.deleteIfExists(secondaryFile);
+            return 0;
+        }
+    }
+
+    private static IntArrayList readIds(DataInputStream in) throws IOException {
+        int size = in.readInt();
+        IntArrayList ids = new IntArrayList(size);
+        for (int i = 0; i < size; i++) {
+            ids.add(in.readInt());
+        }
+        return ids;
+    }
+
+    // Writes the secondary indexes covering all records up to dataEnd, replacing the previous snapshot atomically
+    private void saveSecondaryIndexes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + count * 8 + playersByName.size() * 40);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SECONDARY_MAGIC);
+        out.writeInt(SECONDARY_VERSION);
+        out.writeInt(count);
+        out.writeLong(dataEnd);
+        out.writeLong(lastTimestamp);
+        out.writeInt(byInitiator.size());
+        for (Map.Entry<UUID, IntArrayList> entry : byInitiator.entrySet()) {
+            out.writeLong(entry.getKey().getMostSignificantBits());
+            out.writeLong(entry.getKey().getLeastSignificantBits());
+            writeIds(out, entry.getValue());
+        }
+        out.writeInt(byCommand.size());
+        for (Map.Entry<String, IntArrayList> entry : byCommand.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeIds(out, entry.getValue());
+        }
+        out.writeInt(playersByName.size());
+        for (Map.Entry<String, UUID> entry : playersByName.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().getMostSignificantBits());
+            out.writeLong(entry.getValue().getLeastSignificantBits());
+        }
+        out.flush();
+        CRC32 check = new CRC32();
+        check.update(bytes.toByteArray());
+        out.writeInt((int) check.getValue());
+        out.flush();
+
+        // The snapshot must never claim records that are not yet durable in votes.dat and votes.idx
+        data.force(false);
+        index.force();
+        Path temp = secondaryFile.resolveSibling(secondaryFile.getFileName() + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        Files.move(temp, secondaryFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeIds(DataOutputStream out, IntArrayList ids) throws IOException {
+        out.writeInt(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            out.writeInt(ids.getInt(i));
+        }
+    }
+
+    private void mapIndex() throws IOException {
+        index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, INDEX_HEADER + (long) indexCapacity * INDEX_ENTRY);
+    }
+
+    private void putIndexEntry(int id, long offset, long timestamp) throws IOException {
+        if (id >= indexCapacity) {
+            index.force();
+            indexCapacity *= 2;
+            mapIndex();
+        }
+        int position = INDEX_HEADER + id * INDEX_ENTRY;
+        index.putLong(position, offset);
+        index.putLong(position + 8, timestamp);
+    }
+
+    private long offsetOf(int id) {
+        return index.getLong(INDEX_HEADER + id * INDEX_ENTRY);
+    }
+
+    private long timestampOf(int id) {
+        return index.getLong(INDEX_HEADER + id * INDEX_ENTRY + 8);
+    }
+
+    private void addToSecondaryIndexes(VoteRecord record) {
+        byInitiator.computeIfAbsent(record.initiator(), k -> new IntArrayList()).add(record.id());
+        byCommand.computeIfAbsent(commandName(record.command()), k -> new IntArrayList()).add(record.id());
+        playersByName.put(record.initiatorName().toLowerCase(Locale.ROOT), record.initiator());
+        for (Ballot ballot : record.ballots()) {
+            playersByName.putIfAbsent(ballot.name().toLowerCase(Locale.ROOT), ballot.voter());
+        }
+    }
+
+    // Appends a record and returns its id. The id on the passed record is ignored.
+    public synchronized int append(VoteRecord record) throws IOException {
+        int id = count;
+        // The time index relies on non-decreasing timestamps, so clock steps backwards are clamped
+        long timestamp = Math.max(lastTimestamp, record.concludedAt());
+        VoteRecord stored = new VoteRecord(id, record.startedAt(), timestamp, record.command(), record.initiator(),
+            record.initiatorName(), record.passed(), record.ballots());
+
+        byte[] payload = encode(stored);
+        ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+        buffer.putInt(payload.length).put(payload).putInt(crc(payload)).flip();
+        long offset = dataEnd;
+        while (buffer.hasRemaining()) {
+            offset += data.write(buffer, offset);
+        }
+
+        putIndexEntry(id, dataEnd, timestamp);
+        dataEnd = offset;
+        count = id + 1;
+        index.putInt(8, count);
+        lastTimestamp = timestamp;
+        addToSecondaryIndexes(stored);
+        return id;
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+    public synchronized UUID findPlayer(String name) {
+        return playersByName.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public synchronized List<String> knownCommands() {
+        return new ArrayList<>(byCommand.keySet());
+    }
+
+    public synchronized VoteRecord get(int id) throws IOException {
+        if (id < 0 || id >= count) return null;
+        long offset = offsetOf(id);
+        ByteBuffer header = ByteBuffer.allocate(4);
+        data.read(header, offset);
+        int length = header.getInt(0);
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        while (payload.hasRemaining()) {
+            if (data.read(payload, offset + 4 + payload.position()) < 0) throw new EOFException();
+        }
+        return decode(id, payload.array());
+    }
+
+    public synchronized Page latest(int page, int pageSize) throws IOException {
+        return pageOfRange(0, count, page, pageSize);
+    }
+
+    public synchronized Page byInitiator(UUID initiator, int page, int pageSize) throws IOException {
+        return pageOf(byInitiator.get(initiator), page, pageSize);
+    }
+
+    public synchronized Page byCommand(String command, int page, int pageSize) throws IOException {
+        return pageOf(byCommand.get(commandName(command)), page, pageSize);
+    }
+
+    // Votes concluded in [from, to), newest first
+    public synchronized Page between(long from, long to, int page, int pageSize) throws IOException {
+        return pageOfRange(lowerBound(from), lowerBound(to), page, pageSize);
+    }
+
+    private int lowerBound(long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampOf(mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Pages past the end are clamped to the last page, so a page always shows records when there are any
+    private Page pageOfRange(int fromId, int toId, int page, int pageSize) throws IOException {
+        int total = toId - fromId;
+        int totalPages = Math.max(1, (total + pageSize - 1) / pageSize);
+        page = Math.max(1, Math.min(page, totalPages));
+        List<VoteRecord> records = new ArrayList<>(pageSize);
+        int first = toId - 1 - (page - 1) * pageSize;
+        for (int id = first; id >= fromId && id > first - pageSize; id--) {
+            records.add(get(id));
+        }
+        return new Page(page, totalPages, total, records);
+    }
+
+    private Page pageOf(IntArrayList ids, int page, int pageSize) throws IOException {
+        if (ids == null) {
+            return new Page(1, 1, 0, Collections.emptyList());
+        }
+        int total = ids.size();
+        int totalPages = Math.max(1, (total + pageSize - 1) / pageSize);
+        page = Math.max(1, Math.min(page, totalPages));
+        List<VoteRecord> records = new ArrayList<>(pageSize);
+        int first = total - 1 - (page - 1) * pageSize;
+        for (int i = first; i >= 0 && i > first - pageSize; i--) {
+            records.add(get(ids.getInt(i)));
+        }
+        return new Page(page, totalPages, total, records);
+    }
+
+    private static byte[] encode(VoteRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128 + record.ballots().size() * 40);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(RECORD_VERSION);
+        out.writeLong(record.startedAt());
+        out.writeLong(record.concludedAt());
+        out.writeUTF(record.command());
+        out.writeLong(record.initiator().getMostSignificantBits());
+        out.writeLong(record.initiator().getLeastSignificantBits());
+        out.writeUTF(record.initiatorName());
+        out.writeBoolean(record.passed());
+        out.writeInt(record.ballots().size());
+        for (Ballot ballot : record.ballots()) {
+            out.writeLong(ballot.voter().getMostSignificantBits());
+            out.writeLong(ballot.voter().getLeastSignificantBits());
+            out.writeUTF(ballot.name());
+            out.writeByte(ballot.choice());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static VoteRecord decode(int id, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new java.io.ByteArrayInputStream(payload));
+        int version = in.readUnsignedByte();
+        if (version != RECORD_VERSION) {
+            throw new IOException("Unsupported vote history record version " + version);
+        }
+        long startedAt = in.readLong();
+        long concludedAt = in.readLong();
+        String command = in.readUTF();
+        UUID initiator = new UUID(in.readLong(), in.readLong());
+        String initiatorName = in.readUTF();
+        boolean passed = in.readBoolean();
+        int ballotCount = in.readInt();
+        List<Ballot> ballots = new ArrayList<>(ballotCount);
+        for (int i = 0; i < ballotCount; i++) {
+            ballots.add(new Ballot(new UUID(in.readLong(), in.readLong()), in.readUTF(), in.readByte()));
+        }
+        return new VoteRecord(id, startedAt, concludedAt, command, initiator, initiatorName, passed, ballots);
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            if (count > 0) {
+                saveSecondaryIndexes();
+            }
+            index.force();
+            data.force(false);
+        } finally {
+            data.close();
+            indexChannel.close();
+        }
+    }
+}
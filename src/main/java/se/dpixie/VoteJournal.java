@@ -0,0 +1,364 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Write-ahead journal of open votes. The world save only snapshots open votes every few minutes (see
+// OpenVotesData); everything that happens in between is journalled here and replayed on top of the last
+// snapshot when the server starts, so a crash loses at most the last second of ballots.
+//
+// Records use the history store's framing (length, payload, CRC) and carry a sequence number; the snapshot
+// remembers the last sequence it contains, so the replay skips what it already has. Records are encoded and
+// written by a background thread and fsynced at most once per second. Each snapshot lets the journal drop
+// everything the previous snapshot (which is on disk by then) already contains.
+public class VoteJournal implements AutoCloseable {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    // A server run begins; the votes it resumed are journalled again right after, in its own tick clock
+    private static final byte BEGIN = 0;
+    private static final byte PROPOSED = 1;
+    private static final byte BALLOT = 2;
+    private static final byte CLOSED = 3;
+    // The tick clock moved on; keeps restored deadlines close even when nobody votes for a while
+    private static final byte CLOCK = 4;
+
+    // How often the host should journal the tick while votes are open
+    public static final int CLOCK_INTERVAL_TICKS = 100;
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+
+    // Open votes as last saved with the world
+    public record Snapshot(long tick, long sequence, List<SavedVote> votes) {
+        public static final Snapshot EMPTY = new Snapshot(0, 0, List.of());
+    }
+
+    // Open votes after the journal has been applied to the snapshot. Deadlines are in the clock of the run
+    // that wrote them, lastTick is the last tick that run is known to have reached.
+    public record Recovery(List<SavedVote> votes, long lastTick, long lastSequence, int replayed) {
+        public long ticksLeft(SavedVote vote) {
+            return Math.max(0, vote.deadlineTick() - lastTick);
+        }
+    }
+
+    private interface Body {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final Path file;
+    private final Recovery recovered;
+    private final ScheduledExecutorService writer;
+    // Last sequence handed out, server thread only
+    private long sequence;
+
+    // Writer-thread state
+    private FileChannel channel;
+    private boolean unsynced;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    // Replays the journal on top of the snapshot, cuts off a torn tail and opens the file for appending
+    public VoteJournal(Path file, Snapshot snapshot) throws IOException {
+        this.file = file;
+        Files.createDirectories(file.getParent());
+
+        Replay replay = new Replay(snapshot);
+        long validLength = Files.exists(file) ? scan(file, replay::apply) : 0;
+        this.recovered = replay.result();
+        this.sequence = recovered.lastSequence();
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (channel.size() > validLength) {
+            LOGGER.warn("Truncating {} unreadable bytes from the vote journal", channel.size() - validLength);
+            channel.truncate(validLength);
+        }
+        channel.position(validLength);
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DemocraticCommands-Journal");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::syncIfNeeded, SYNC_INTERVAL_MILLIS, SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public Recovery recovered() {
+        return recovered;
+    }
+
+    // Sequence of the last record appended, for the snapshot taken now
+    public long sequence() {
+        return sequence;
+    }
+
+    public void begin(long tick) {
+        append(BEGIN, tick, out -> { });
+    }
+
+    // The vote is copied on the calling thread and encoded on the writer thread
+    public void proposed(ActiveVote vote, long tick) {
+        SavedVote saved = SavedVote.of(vote);
+        append(PROPOSED, tick, out -> writeVote(out, saved));
+    }
+
+    public void ballot(int voteId, int slot, byte ballot, long tick) {
+        append(BALLOT, tick, out -> {
+            out.writeInt(voteId);
+            out.writeInt(slot);
+            out.writeByte(ballot);
+        });
+    }
+
+    public void closed(int voteId, long tick) {
+        append(CLOSED, tick, out -> out.writeInt(voteId));
+    }
+
+    public void clock(long tick) {
+        append(CLOCK, tick, out -> { });
+    }
+
+    private void append(byte type, long tick, Body body) {
+        if (writer.isShutdown()) return;
+        long recordSequence = ++sequence;
+        writer.execute(() -> write(type, recordSequence, tick, body));
+    }
+
+    private void write(byte type, long recordSequence, long tick, Body body) {
+        try {
+            buffer.reset();
+            out.writeByte(type);
+            out.writeLong(recordSequence);
+            out.writeLong(tick);
+            body.write(out);
+            out.flush();
+            ByteBuffer frame = frame(ByteBuffer.wrap(buffer.toByteArray()));
+            while (frame.hasRemaining()) {
+                channel.write(frame);
+            }
+            unsynced = true;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write to the vote journal: {}", e.getMessage());
+        }
+    }
+
+    private void syncIfNeeded() {
+        if (!unsynced) return;
+        try {
+            channel.force(false);
+            unsynced = false;
+        } catch (IOException e) {
+            LOGGER.warn("Failed to sync the vote journal: {}", e.getMessage());
+        }
+    }
+
+    // Drops every record up to and including the given sequence. Only pass the sequence of a snapshot that is
+    // known to be on disk.
+    public void compact(long throughSequence) {
+        if (writer.isShutdown()) return;
+        writer.execute(() -> {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                List<ByteBuffer> kept = new ArrayList<>();
+                scan(file, payload -> {
+                    if (payload.getLong(1) > throughSequence) kept.add(payload);
+                });
+                try (FileChannel compacted = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                    for (ByteBuffer payload : kept) {
+                        ByteBuffer frame = frame(payload);
+                        while (frame.hasRemaining()) {
+                            compacted.write(frame);
+                        }
+                    }
+                    compacted.force(true);
+                }
+                channel.close();
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to compact the vote journal: {}", e.getMessage());
+            }
+
+            try {
+                if (!channel.isOpen()) {
+                    channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    channel.position(channel.size());
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to reopen the vote journal: {}", e.getMessage());
+            }
+        });
+    }
+
+    // Writes out everything queued so far and syncs it
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(10, TimeUnit.SECONDS)) {
+                LOGGER.warn("Vote journal writer did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(false);
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to close the vote journal: {}", e.getMessage());
+        }
+    }
+
+    // Calls the consumer with the payload of every intact record and returns the length of the intact prefix.
+    // The journal only holds what happened since the last snapshot, so it is read in one go.
+    private static long scan(Path file, Consumer<ByteBuffer> consumer) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        CRC32 crc = new CRC32();
+        int offset = 0;
+        while (offset + 8 <= data.limit()) {
+            int length = data.getInt(offset);
+            if (length <= 0 || offset + 8L + length > data.limit()) break;
+            crc.reset();
+            crc.update(data.array(), offset + 4, length);
+            if (data.getInt(offset + 4 + length) != (int) crc.getValue()) break;
+            consumer.accept(data.slice(offset + 4, length));
+            offset += 8 + length;
+        }
+        return offset;
+    }
+
+    private static ByteBuffer frame(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        ByteBuffer frame = ByteBuffer.allocate(8 + payload.remaining());
+        frame.putInt(payload.remaining()).put(payload.duplicate()).putInt((int) crc.getValue()).flip();
+        return frame;
+    }
+
+    private static final class Replay {
+        private final Snapshot snapshot;
+        private final Map<Integer, SavedVote> votes = new LinkedHashMap<>();
+        private long lastTick;
+        private long lastSequence;
+        private int replayed;
+
+        Replay(Snapshot snapshot) {
+            this.snapshot = snapshot;
+            for (SavedVote vote : snapshot.votes()) {
+                votes.put(vote.id(), vote);
+            }
+            lastTick = snapshot.tick();
+            lastSequence = snapshot.sequence();
+        }
+
+        void apply(ByteBuffer payload) {
+            try {
+                byte type = payload.get();
+                long recordSequence = payload.getLong();
+                long tick = payload.getLong();
+                lastSequence = Math.max(lastSequence, recordSequence);
+                // Already part of the snapshot
+                if (recordSequence <= snapshot.sequence()) return;
+
+                switch (type) {
+                    case BEGIN -> votes.clear();
+                    case PROPOSED -> {
+                        SavedVote vote = readVote(new DataInputStream(new ByteArrayInputStream(payload.array(),
+                            payload.arrayOffset() + payload.position(), payload.remaining())));
+                        votes.put(vote.id(), vote);
+                    }
+                    case BALLOT -> {
+                        SavedVote vote = votes.get(payload.getInt());
+                        int slot = payload.getInt();
+                        byte ballot = payload.get();
+                        if (vote != null && slot >= 0 && slot < vote.ballots().length) {
+                            vote.ballots()[slot] = ballot;
+                        }
+                    }
+                    case CLOSED -> votes.remove(payload.getInt());
+                    case CLOCK -> { }
+                    default -> {
+                        LOGGER.warn("Skipping vote journal record of unknown type {}", type);
+                        return;
+                    }
+                }
+                lastTick = tick;
+                replayed++;
+            } catch (IOException | BufferUnderflowException e) {
+                LOGGER.warn("Skipping unreadable vote journal record: {}", e.getMessage());
+            }
+        }
+
+        Recovery result() {
+            return new Recovery(new ArrayList<>(votes.values()), lastTick, lastSequence, replayed);
+        }
+    }
+
+    private static void writeVote(DataOutputStream out, SavedVote vote) throws IOException {
+        out.writeInt(vote.id());
+        out.writeUTF(vote.command());
+        out.writeLong(vote.initiatorId().getMostSignificantBits());
+        out.writeLong(vote.initiatorId().getLeastSignificantBits());
+        out.writeUTF(vote.initiatorName());
+        VotingPolicy.Rules rules = vote.rules();
+        out.writeInt(rules.timeoutSeconds());
+        out.writeInt(rules.minimumVoters());
+        out.writeInt(rules.minimumVotes());
+        out.writeDouble(rules.approvalThreshold());
+        out.writeBoolean(rules.requireMajorityParticipation());
+        out.writeBoolean(rules.countAbstentionsAsNo());
+        out.writeLong(vote.startTime());
+        out.writeLong(vote.deadlineTick());
+        out.writeInt(vote.voters().length);
+        for (int slot = 0; slot < vote.voters().length; slot++) {
+            out.writeLong(vote.voters()[slot].getMostSignificantBits());
+            out.writeLong(vote.voters()[slot].getLeastSignificantBits());
+            out.writeUTF(vote.names()[slot]);
+            out.writeByte(vote.ballots()[slot]);
+        }
+        out.writeUTF(vote.key());
+    }
+
+    private static SavedVote readVote(DataInputStream in) throws IOException {
+        int id = in.readInt();
+        String command = in.readUTF();
+        UUID initiatorId = new UUID(in.readLong(), in.readLong());
+        String initiatorName = in.readUTF();
+        VotingPolicy.Rules rules = new VotingPolicy.Rules(in.readInt(), in.readInt(), in.readInt(), in.readDouble(),
+            in.readBoolean(), in.readBoolean());
+        long startTime = in.readLong();
+        long deadlineTick = in.readLong();
+        int size = in.readInt();
+        UUID[] voters = new UUID[size];
+        String[] names = new String[size];
+        byte[] ballots = new byte[size];
+        for (int slot = 0; slot < size; slot++) {
+            voters[slot] = new UUID(in.readLong(), in.readLong());
+            names[slot] = in.readUTF();
+            ballots[slot] = in.readByte();
+        }
+        // Journals written before proposals were canonicalized end after the ballots
+        String key = in.available() > 0 ? in.readUTF() : CommandCanonicalizer.normalize(command);
+        return new SavedVote(id, command, key, initiatorId, initiatorName, rules, startTime, deadlineTick, voters, names, ballots);
+    }
+}
@@ -0,0 +1,55 @@
+package se.dpixie.democraticcommands;
+
+import net.minecraft.network.chat.ClickEvent;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.MutableComponent;
+
+// The parts of a vote's messages that stay the same while it is open: the clickable [YES] [NO] buttons with their
+// hover text, and the "Vote #id /command" prefix of the tally and reminder lines. They are built once per vote, so
+// a status update or reminder only builds the text with the counters in it. Components are not changed once
+// built, so the same instances can be part of any number of messages.
+public final class VoteMessages {
+    private final Component buttons;
+    private final Component prefix;
+
+    public VoteMessages(int voteId, String command) {
+        this.buttons = Component.literal("")
+            .append(clickable("§a[YES]", "/vote yes " + voteId, "§aClick to vote YES"))
+            .append(Component.literal(" "))
+            .append(clickable("§c[NO]", "/vote no " + voteId, "§cClick to vote NO"));
+        this.prefix = Component.literal("§eVote #" + voteId + " §c/" + command);
+    }
+
+    public static MutableComponent clickable(String display, String command, String hover) {
+        return Component.literal(display)
+            .withStyle(style -> style
+                .withClickEvent(new ClickEvent(ClickEvent.Action.RUN_COMMAND, command))
+                .withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, Component.literal(hover))));
+    }
+
+    public Component buttons() {
+        return buttons;
+    }
+
+    public MutableComponent statusLine(Tally tally) {
+        return Component.literal("").append(prefix).append(Component.literal(counts(tally)));
+    }
+
+    // The status line with the time left, for statusDisplay CHAT
+    public MutableComponent chatStatus(Tally tally, int secondsLeft) {
+        return Component.literal("").append(prefix)
+            .append(Component.literal(counts(tally) + " §7(" + secondsLeft + "s remaining)"));
+    }
+
+    public MutableComponent reminder(int secondsLeft) {
+        return Component.literal("").append(prefix)
+            .append(Component.literal("§e: §6" + secondsLeft + " seconds left §7"))
+            .append(buttons);
+    }
+
+    private static String counts(Tally tally) {
+        return "§7: §a" + tally.yes() + " YES §7| §c" + tally.no() + " NO §7| §8" + (tally.electorate() - tally.voted()) +
+            " not voted";
+    }
+}
@@ -0,0 +1,273 @@
+package se.dpixie.democraticcommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// Counters and timing histograms for the mod's server-thread work, exported through /vote metrics and in
+// Prometheus text format (see MetricsExporter).
+//
+// Recording is lock-free. While metrics are disabled every start() returns 0 and every record or increment
+// returns after one read of a volatile static field, so instrumented code pays a single predictable branch.
+public final class VoteMetrics {
+    private static final String PREFIX = "democraticcommands_";
+
+    // Written when the config is applied; read by the hot paths and by the exporter's dump and HTTP threads
+    private static volatile boolean enabled;
+
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+    private static final List<Timer> TIMERS = new ArrayList<>();
+    private static final List<Gauge> GAUGES = new ArrayList<>();
+
+    public static final Counter PROPOSALS = counter("proposals_total", "Votes started");
+    public static final Counter PROPOSALS_MERGED = counter("proposals_merged_total", "Proposals that joined an open vote on the same command");
+    public static final Counter PROPOSALS_REJECTED = counter("proposals_rejected_total", "Proposals refused before a vote started");
+    public static final Counter PROPOSALS_THROTTLED = counter("proposals_throttled_total", "Proposals refused by the per-player rate limit");
+    public static final Counter BALLOTS_THROTTLED = counter("ballots_throttled_total", "/vote yes|no refused by the per-player rate limit");
+    public static final Counter STATUS_THROTTLED = counter("status_throttled_total", "/vote status refused by the per-player rate limit");
+    public static final Counter BALLOTS = counter("ballots_total", "Ballots cast, including changed votes");
+    public static final Counter PASSED = counter("votes_passed_total", "Votes that passed");
+    public static final Counter FAILED = counter("votes_failed_total", "Votes that failed");
+    public static final Counter EXECUTIONS = counter("executions_total", "Commands executed after a vote passed");
+    public static final Counter BROADCASTS = counter("broadcast_messages_total", "Chat, action bar and reminder messages sent to players");
+    public static final Counter NETWORK_ENVELOPES_SENT = counter("network_envelopes_sent_total", "Envelopes of vote messages sent to other servers");
+    public static final Counter NETWORK_ENVELOPES_RECEIVED = counter("network_envelopes_received_total", "Envelopes of vote messages received from other servers");
+    public static final Counter NETWORK_ENVELOPES_DROPPED = counter("network_envelopes_dropped_total", "Envelopes dropped as repeated, failing their check or over the send queue limit");
+    public static final Counter COMMAND_TREE_BUILDS = counter("command_tree_builds_total", "Command trees built with the gated commands added");
+
+    public static final Timer COMMAND_EVENT = timer("command_event", "CommandEvent handler");
+    public static final Timer SERVER_TICK = timer("server_tick", "Server tick handler, including due expiries and status updates");
+    public static final Timer CAST_VOTE = timer("cast_vote", "/vote yes|no");
+    public static final Timer CONCLUDE_VOTE = timer("conclude_vote", "Result broadcast when a vote concludes");
+    public static final Timer EXECUTE_COMMAND = timer("execute_command", "Running the command of a passed vote");
+    public static final Timer LOG_VOTE = timer("log_vote", "Handing an entry to the audit writer");
+    public static final Timer STATUS_UPDATE = timer("status_update", "Pushing a live tally update");
+    public static final Timer COMMAND_TREE = timer("command_tree", "Sending the command tree with gated commands to a player");
+
+    private VoteMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    // Start timestamp for Timer.recordSince, or 0 when metrics are off
+    public static long start() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    private static Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help);
+        COUNTERS.add(counter);
+        return counter;
+    }
+
+    private static Timer timer(String name, String help) {
+        Timer timer = new Timer(name, help);
+        TIMERS.add(timer);
+        return timer;
+    }
+
+    // Gauges are sampled when metrics are exported, so the supplier may be called from any thread
+    public static synchronized void gauge(String name, String help, LongSupplier value) {
+        GAUGES.removeIf(gauge -> gauge.name.equals(name));
+        GAUGES.add(new Gauge(name, help, value));
+    }
+
+    public static synchronized void reset() {
+        COUNTERS.forEach(Counter::reset);
+        TIMERS.forEach(Timer::reset);
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final String help;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void increment() {
+            if (enabled) value.increment();
+        }
+
+        public void add(long amount) {
+            if (enabled) value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+
+        private void reset() {
+            value.reset();
+        }
+    }
+
+    private record Gauge(String name, String help, LongSupplier value) {
+    }
+
+    // Nanosecond durations in log-linear buckets: 8 sub-buckets per power of two, so any recorded value is
+    // reported within 12.5% of its true value using 488 fixed buckets.
+    public static final class Timer {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final String name;
+        private final String help;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Timer(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void recordSince(long start) {
+            if (start != 0L) {
+                record(System.nanoTime() - start);
+            }
+        }
+
+        public void record(long nanos) {
+            if (!enabled || nanos < 0) return;
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            sum.add(nanos);
+            long current;
+            while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+                // retry
+            }
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) return (int) value;
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+            long sub = bucket % SUB_BUCKETS;
+            return (1L << exponent) | (sub << (exponent - SUB_BUCKET_BITS));
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long sum() {
+            return sum.sum();
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        // Upper edge of the bucket holding the given quantile, capped at the largest value seen
+        public long quantile(double quantile) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) return 0;
+
+            long target = Math.max(1, (long) Math.ceil(quantile * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= target) {
+                    long upper = i + 1 < BUCKETS ? lowerBound(i + 1) - 1 : Long.MAX_VALUE;
+                    return Math.min(upper, max.get());
+                }
+            }
+            return max.get();
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+    }
+
+    // Human-readable lines for /vote metrics
+    public static synchronized List<String> describe() {
+        List<String> lines = new ArrayList<>();
+        StringBuilder counters = new StringBuilder();
+        for (Counter counter : COUNTERS) {
+            if (counters.length() > 0) counters.append(", ");
+            counters.append(counter.name.replace("_total", "")).append(' ').append(counter.get());
+        }
+        lines.add(counters.toString());
+        for (Gauge gauge : GAUGES) {
+            lines.add(gauge.name + ": " + gauge.value.getAsLong());
+        }
+        for (Timer timer : TIMERS) {
+            if (timer.count() == 0) continue;
+            lines.add(String.format(Locale.ROOT, "%s: n=%d p50=%s p99=%s max=%s total=%s", timer.name, timer.count(),
+                formatNanos(timer.quantile(0.5)), formatNanos(timer.quantile(0.99)), formatNanos(timer.max()),
+                formatNanos(timer.sum())));
+        }
+        return lines;
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 10_000) return nanos + "ns";
+        if (nanos < 10_000_000) return String.format(Locale.ROOT, "%.1fus", nanos / 1e3);
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+    }
+
+    // Prometheus text exposition format; timers are exported as summaries in seconds
+    public static synchronized String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Counter counter : COUNTERS) {
+            header(out, counter.name, counter.help, "counter");
+            out.append(PREFIX).append(counter.name).append(' ').append(counter.get()).append('\n');
+        }
+        for (Gauge gauge : GAUGES) {
+            header(out, gauge.name, gauge.help, "gauge");
+            out.append(PREFIX).append(gauge.name).append(' ').append(gauge.value.getAsLong()).append('\n');
+        }
+        for (Timer timer : TIMERS) {
+            String name = timer.name + "_seconds";
+            header(out, name, timer.help, "summary");
+            for (double quantile : new double[] { 0.5, 0.9, 0.99, 0.999 }) {
+                out.append(PREFIX).append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(timer.quantile(quantile))).append('\n');
+            }
+            out.append(PREFIX).append(name).append("_sum ").append(seconds(timer.sum())).append('\n');
+            out.append(PREFIX).append(name).append("_count ").append(timer.count()).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,92 @@
+package se.dpixie.democraticcommands;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Open votes by short numeric id, by initiator, by canonical command and by eligible voter. Only touched from the server thread.
+//
+// The voter index keeps each player's open votes in creation order, so finding the vote a bare
+// "/vote yes" refers to, or the vote behind an explicit id, is a constant-time lookup however many
+// votes are open.
+public class VoteRegistry {
+    private final Map<Integer, ActiveVote> byId = new LinkedHashMap<>();
+    private final Map<UUID, ActiveVote> byInitiator = new HashMap<>();
+    private final Map<String, ActiveVote> byKey = new HashMap<>();
+    private final Map<UUID, ArrayDeque<ActiveVote>> byVoter = new HashMap<>();
+    private int nextId = 1;
+
+    public int allocateId() {
+        return nextId++;
+    }
+
+    // Keeps new ids clear of restored votes
+    public void reserveIds(int next) {
+        nextId = Math.max(nextId, next);
+    }
+
+    public void register(ActiveVote vote) {
+        byId.put(vote.id, vote);
+        byInitiator.put(vote.initiator.id(), vote);
+        byKey.putIfAbsent(vote.key, vote);
+        for (int slot = 0; slot < vote.ballots.size(); slot++) {
+            byVoter.computeIfAbsent(vote.ballots.voter(slot), k -> new ArrayDeque<>(2)).addLast(vote);
+        }
+    }
+
+    public void remove(ActiveVote vote) {
+        if (byId.remove(vote.id) == null) return;
+        byInitiator.remove(vote.initiator.id(), vote);
+        byKey.remove(vote.key, vote);
+        for (int slot = 0; slot < vote.ballots.size(); slot++) {
+            UUID voter = vote.ballots.voter(slot);
+            ArrayDeque<ActiveVote> votes = byVoter.get(voter);
+            if (votes != null) {
+                votes.remove(vote);
+                if (votes.isEmpty()) {
+                    byVoter.remove(voter);
+                }
+            }
+        }
+    }
+
+    public ActiveVote get(int id) {
+        return byId.get(id);
+    }
+
+    public ActiveVote getByInitiator(UUID initiator) {
+        return byInitiator.get(initiator);
+    }
+
+    // The open vote on this canonical command, if any
+    public ActiveVote getByKey(String key) {
+        return byKey.get(key);
+    }
+
+    // The most recently started vote this player may vote on
+    public ActiveVote latestFor(UUID voter) {
+        ArrayDeque<ActiveVote> votes = byVoter.get(voter);
+        return votes == null ? null : votes.peekLast();
+    }
+
+    public Collection<ActiveVote> openFor(UUID voter) {
+        ArrayDeque<ActiveVote> votes = byVoter.get(voter);
+        return votes == null ? Collections.emptyList() : Collections.unmodifiableCollection(votes);
+    }
+
+    public Collection<ActiveVote> all() {
+        return Collections.unmodifiableCollection(byId.values());
+    }
+
+    public boolean isEmpty() {
+        return byId.isEmpty();
+    }
+
+    public int size() {
+        return byId.size();
+    }
+}
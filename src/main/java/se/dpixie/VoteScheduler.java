@@ -0,0 +1,93 @@
+package se.dpixie.democraticcommands;
+
+import java.util.PriorityQueue;
+
+// Runs actions at a given server tick. Deadlines live in a min-heap keyed on tick number, so a tick with
+// nothing due costs a single comparison. Time is measured in server ticks rather than wall-clock time,
+// which keeps vote timing consistent while the server is lagging or paused.
+//
+// Only used from the server thread.
+public class VoteScheduler {
+    public static final int TICKS_PER_SECOND = 20;
+
+    private final PriorityQueue<Task> queue = new PriorityQueue<>();
+    private long currentTick;
+    private long nextDue = Long.MAX_VALUE;
+    private long sequence;
+
+    public static final class Task implements Comparable<Task> {
+        private final long dueTick;
+        private final long sequence;
+        private final Runnable action;
+        private boolean cancelled;
+
+        private Task(long dueTick, long sequence, Runnable action) {
+            this.dueTick = dueTick;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        public long dueTick() {
+            return dueTick;
+        }
+
+        // Cancelled tasks stay in the heap and are discarded when they come due
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byTick = Long.compare(dueTick, other.dueTick);
+            return byTick != 0 ? byTick : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    public long currentTick() {
+        return currentTick;
+    }
+
+    public Task schedule(long delayTicks, Runnable action) {
+        return scheduleAt(currentTick + Math.max(1, delayTicks), action);
+    }
+
+    public Task scheduleAt(long tick, Runnable action) {
+        Task task = new Task(Math.max(tick, currentTick + 1), sequence++, action);
+        queue.add(task);
+        if (task.dueTick < nextDue) {
+            nextDue = task.dueTick;
+        }
+        return task;
+    }
+
+    // Advances the clock by one tick and runs everything that has come due
+    public void tick() {
+        currentTick++;
+        if (currentTick < nextDue) {
+            return;
+        }
+
+        Task task;
+        while ((task = queue.peek()) != null && task.dueTick <= currentTick) {
+            queue.poll();
+            if (!task.cancelled) {
+                task.cancelled = true;
+                task.action.run();
+            }
+        }
+        task = queue.peek();
+        nextDue = task == null ? Long.MAX_VALUE : task.dueTick;
+    }
+
+    public int pending() {
+        return queue.size();
+    }
+
+    public static long secondsToTicks(long seconds) {
+        return seconds * TICKS_PER_SECOND;
+    }
+}
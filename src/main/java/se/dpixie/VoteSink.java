@@ -0,0 +1,40 @@
+package se.dpixie.democraticcommands;
+
+import java.util.UUID;
+
+// Receives everything the voting engine wants players to see or the host to do. Calls are made on the thread
+// driving the engine, in the order the events happen.
+public interface VoteSink {
+    default void proposed(ActiveVote vote) {
+    }
+
+    // A vote saved before a restart has been re-opened with the time it had left
+    default void resumed(ActiveVote vote) {
+    }
+
+    // The ballot has been recorded; called before the vote concludes if this was the last one
+    default void ballotCast(ActiveVote vote, UUID voter, boolean yes, boolean changed) {
+    }
+
+    // A voter who had not voted left the server and their slot was changed per DepartedVoters
+    default void voterLeft(ActiveVote vote, UUID voter, byte ballot) {
+    }
+
+    // Coalesced tally update, at most once per statusUpdateIntervalTicks per vote
+    default void statusChanged(ActiveVote vote) {
+    }
+
+    default void reminder(ActiveVote vote, int secondsLeft) {
+    }
+
+    default void concluded(ActiveVote vote, boolean passed) {
+    }
+
+    // The vote passed and its command should run now
+    default void executionRequested(ActiveVote vote) {
+    }
+
+    // Last call for a vote, after any execution; used for logging and history
+    default void closed(ActiveVote vote, boolean passed) {
+    }
+}
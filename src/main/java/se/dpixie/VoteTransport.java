@@ -0,0 +1,15 @@
+package se.dpixie.democraticcommands;
+
+import java.util.function.Consumer;
+
+// Carries envelopes between the servers sharing votes, see NetworkVotes. Both methods are called from the server
+// thread: send at most once per tick, poll once per tick to hand over, in order, what arrived since the last poll.
+// Delivery may lose or repeat envelopes; NetworkVotes drops repeats and resends what matters.
+public interface VoteTransport extends AutoCloseable {
+    void send(Envelope envelope);
+
+    void poll(Consumer<Envelope> receiver);
+
+    @Override
+    void close();
+}
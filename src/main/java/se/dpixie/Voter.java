@@ -0,0 +1,14 @@
+package se.dpixie.democraticcommands;
+
+import java.util.UUID;
+
+// A player as the voting engine sees it. The Forge layer wraps ServerPlayer; the simulator uses plain records.
+public interface Voter {
+    UUID id();
+
+    String name();
+
+    // A player known only by id and name, such as the initiator of a vote restored after a restart
+    record Known(UUID id, String name) implements Voter {
+    }
+}
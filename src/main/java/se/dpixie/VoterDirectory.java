@@ -0,0 +1,9 @@
+package se.dpixie.democraticcommands;
+
+import java.util.List;
+
+// The players currently online. Every online player is eligible for a vote proposed now.
+@FunctionalInterface
+public interface VoterDirectory {
+    List<? extends Voter> online();
+}
@@ -0,0 +1,284 @@
+package se.dpixie.democraticcommands;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.LongSupplier;
+
+// The voting state machine: proposal, ballots, reminders, expiry, resolution and the request to execute a passed
+// command. It knows nothing about Minecraft; players come from a VoterDirectory, time from the tick scheduler
+// (advanced by whoever calls tick()) and a wall clock for timestamps, and everything visible goes to a VoteSink.
+//
+// Not thread-safe. The Forge layer drives it from the server thread, the simulator from its own loop.
+public class VotingEngine {
+    // MERGED: the command is already being voted on and the player joined that vote as a co-initiator.
+    // RECENTLY_FAILED and RECENTLY_PASSED: a vote on the command concluded within the policy's cooldown.
+    public enum ProposalStatus { STARTED, MERGED, RECENTLY_FAILED, RECENTLY_PASSED, ALREADY_ACTIVE, NOT_ENOUGH_VOTERS }
+
+    public enum BallotStatus { CAST, CHANGED, NO_VOTE, NOT_ELIGIBLE }
+
+    // electorate is the number of online players when the proposal was made; decision is set for the RECENTLY_ statuses
+    public record ProposalResult(ProposalStatus status, ActiveVote vote, VotingPolicy.Rules rules, int electorate,
+                                 RecentDecisions.Decision decision) {
+        ProposalResult(ProposalStatus status, ActiveVote vote, VotingPolicy.Rules rules, int electorate) {
+            this(status, vote, rules, electorate, null);
+        }
+    }
+
+    public record BallotResult(BallotStatus status, ActiveVote vote) {
+    }
+
+    private final VoteRegistry votes = new VoteRegistry();
+    private final VoteScheduler scheduler = new VoteScheduler();
+    private final RecentDecisions decisions = new RecentDecisions(RecentDecisions.DEFAULT_CAPACITY);
+    private final VoterDirectory voters;
+    private final VoteSink sink;
+    private final LongSupplier wallClock;
+
+    public VotingEngine(VoterDirectory voters, VoteSink sink, LongSupplier wallClock) {
+        this.voters = voters;
+        this.sink = sink;
+        this.wallClock = wallClock;
+    }
+
+    public VoteRegistry votes() {
+        return votes;
+    }
+
+    public VoteScheduler scheduler() {
+        return scheduler;
+    }
+
+    public long currentTick() {
+        return scheduler.currentTick();
+    }
+
+    // Advances the engine by one tick; expiry, reminders and status updates run from here
+    public void tick() {
+        scheduler.tick();
+    }
+
+    public RecentDecisions decisions() {
+        return decisions;
+    }
+
+    // What a player asked to vote on. key is the canonical form of the command; proposals with the same key are the
+    // same proposal. scopedElectorate is who may vote when the command is scoped, null for everyone online; the
+    // initiator is always included. network is set when the vote, if one starts, is shared with other servers with
+    // this server as its origin.
+    public record Proposal(Voter initiator, String command, String commandName, String key,
+                           List<? extends Voter> scopedElectorate, NetworkVote network) {
+        // An unscoped, local proposal keyed by the normalized command
+        public static Proposal of(Voter initiator, String command, String commandName) {
+            return new Proposal(initiator, command, commandName, CommandCanonicalizer.normalize(command), null, null);
+        }
+    }
+
+    public ProposalResult propose(VotingPolicy policy, Proposal proposal) {
+        Voter initiator = proposal.initiator();
+        String command = proposal.command();
+        String commandName = proposal.commandName();
+        String key = proposal.key();
+        List<? extends Voter> scopedElectorate = proposal.scopedElectorate();
+        NetworkVote network = proposal.network();
+        VotingPolicy.Rules rules = policy.rulesFor(commandName);
+        VotingPolicy.Deduplication deduplication = policy.deduplication();
+
+        // Joining the open vote costs no broadcast and no new ballots
+        if (deduplication.mergeProposals()) {
+            ActiveVote open = votes.getByKey(key);
+            // A scoped vote elsewhere is not this player's vote to join
+            if (open != null && open.ballots.isEligible(initiator.id())) {
+                // Proposing your own vote again joins nothing
+                ProposalStatus status = open.addCoInitiator(initiator) ? ProposalStatus.MERGED : ProposalStatus.ALREADY_ACTIVE;
+                return new ProposalResult(status, open, open.rules, open.ballots.size());
+            }
+        }
+
+        RecentDecisions.Decision recent = decisions.get(key, scheduler.currentTick());
+        if (recent != null) {
+            if (!recent.passed()) {
+                return new ProposalResult(ProposalStatus.RECENTLY_FAILED, null, rules, 0, recent);
+            }
+            if (deduplication.isIdempotent(key)) {
+                return new ProposalResult(ProposalStatus.RECENTLY_PASSED, null, rules, 0, recent);
+            }
+        }
+
+        // One open vote per initiator
+        if (votes.getByInitiator(initiator.id()) != null) {
+            return new ProposalResult(ProposalStatus.ALREADY_ACTIVE, null, rules, 0);
+        }
+
+        List<? extends Voter> electorate = scopedElectorate == null ? voters.online() : withInitiator(scopedElectorate, initiator);
+        if (electorate.size() < rules.minimumVoters()) {
+            return new ProposalResult(ProposalStatus.NOT_ENOUGH_VOTERS, null, rules, electorate.size());
+        }
+
+        long deadlineTick = scheduler.currentTick() + VoteScheduler.secondsToTicks(rules.timeoutSeconds());
+        ActiveVote vote = new ActiveVote(votes.allocateId(), command, key, initiator, BallotBox.of(electorate),
+            policy, rules, wallClock.getAsLong(), deadlineTick, network);
+        votes.register(vote);
+        scheduleDeadlines(vote, deadlineTick);
+        sink.proposed(vote);
+        return new ProposalResult(ProposalStatus.STARTED, vote, rules, electorate.size());
+    }
+
+    private static List<? extends Voter> withInitiator(List<? extends Voter> electorate, Voter initiator) {
+        for (Voter voter : electorate) {
+            if (voter.id().equals(initiator.id())) return electorate;
+        }
+        List<Voter> withInitiator = new ArrayList<>(electorate.size() + 1);
+        withInitiator.add(initiator);
+        withInitiator.addAll(electorate);
+        return withInitiator;
+    }
+
+    // Re-opens a vote saved before a restart. It keeps its id, ballots and rules; the policy in force now decides
+    // reminders and display. A vote whose time ran out while the server was down concludes on the next tick.
+    public ActiveVote restore(VotingPolicy policy, SavedVote saved, long ticksLeft) {
+        if (votes.get(saved.id()) != null) {
+            return null;
+        }
+        votes.reserveIds(saved.id() + 1);
+        ActiveVote vote = new ActiveVote(saved.id(), saved.command(), saved.key(),
+            new Voter.Known(saved.initiatorId(), saved.initiatorName()), saved.toBallotBox(), policy, saved.rules(),
+            saved.startTime(), scheduler.currentTick() + Math.max(1, ticksLeft), null);
+        votes.register(vote);
+        scheduleDeadlines(vote, vote.deadlineTick);
+        sink.resumed(vote);
+        return vote;
+    }
+
+    // Opens this server's mirror of a vote another server proposed. Everyone online here may vote; the origin
+    // decides the outcome by its rules and concludeRemotely ends the mirror. If no result has arrived graceTicks
+    // after the deadline the origin is taken to be gone and the mirror fails.
+    public ActiveVote openMirror(VotingPolicy policy, NetworkVote network, String command, String key,
+                                 VotingPolicy.Rules rules, Voter initiator, long ticksLeft, long graceTicks) {
+        ActiveVote vote = new ActiveVote(votes.allocateId(), command, key, initiator, BallotBox.of(voters.online()),
+            policy, rules, wallClock.getAsLong(), scheduler.currentTick() + Math.max(1, ticksLeft), network);
+        votes.register(vote);
+        scheduleDeadlines(vote, vote.deadlineTick + graceTicks);
+        sink.proposed(vote);
+        return vote;
+    }
+
+    // Another server's share of a network vote changed
+    public void applyRemoteTally(ActiveVote vote, String node, long version, Tally tally) {
+        if (votes.get(vote.id) != vote) return;
+        if (vote.network.apply(node, version, tally)) {
+            concludeIfDecided(vote);
+        }
+    }
+
+    // The origin of a mirrored vote decided it
+    public void concludeRemotely(ActiveVote vote, boolean passed) {
+        if (votes.get(vote.id) != vote) return;
+        vote.markAbstained();
+        vote.decideRemotely(passed);
+        finish(vote);
+    }
+
+    // A null voteId means the most recent vote this player can take part in
+    public BallotResult cast(UUID voter, Integer voteId, boolean yes) {
+        ActiveVote vote = voteId == null ? votes.latestFor(voter) : votes.get(voteId);
+        if (vote == null) {
+            return new BallotResult(BallotStatus.NO_VOTE, null);
+        }
+        if (!vote.ballots.isEligible(voter)) {
+            return new BallotResult(BallotStatus.NOT_ELIGIBLE, vote);
+        }
+
+        boolean changed = vote.hasVoted(voter);
+        vote.vote(voter, yes);
+        sink.ballotCast(vote, voter, yes, changed);
+
+        concludeIfDecided(vote);
+        return new BallotResult(changed ? BallotStatus.CHANGED : BallotStatus.CAST, vote);
+    }
+
+    // A player left the server. Under ABSTAIN or EXCLUDE their open votes stop waiting for them; a ballot they
+    // already cast stays, and they can still vote if they come back before the vote closes.
+    public void voterLeft(UUID voter) {
+        // Copied, concluding a vote changes the index
+        for (ActiveVote vote : List.copyOf(votes.openFor(voter))) {
+            int slot = vote.ballots.slotOf(voter);
+            if (vote.ballots.ballot(slot) != BallotBox.NONE) continue;
+
+            byte ballot = switch (vote.policy.departedVoters()) {
+                case KEEP -> BallotBox.NONE;
+                case ABSTAIN -> BallotBox.ABSTAIN;
+                case EXCLUDE -> BallotBox.EXCLUDED;
+            };
+            if (ballot == BallotBox.NONE) continue;
+            vote.ballots.set(slot, ballot);
+            sink.voterLeft(vote, voter, ballot);
+            concludeIfDecided(vote);
+        }
+    }
+
+    // Ends the vote once nobody is left to vote or, with earlyResolution, once the undecided voters can no
+    // longer change the result; they count as abstaining, as they would at the deadline. Network votes count
+    // every server's ballots and only end on their origin, once the other servers have had time to report.
+    private void concludeIfDecided(ActiveVote vote) {
+        if (!vote.isMirror() && (vote.network == null || vote.network.isSettled(scheduler.currentTick()))) {
+            Tally tally = vote.tally();
+            if (tally.undecided() == 0 || vote.policy.earlyResolution() && vote.rules.decidedOutcome(tally) != null) {
+                vote.markAbstained();
+                finish(vote);
+                return;
+            }
+        }
+        markStatusDirty(vote);
+    }
+
+    private void scheduleDeadlines(ActiveVote vote, long closeTick) {
+        vote.track(scheduler.scheduleAt(closeTick, () -> {
+            vote.markAbstained();
+            if (vote.isMirror()) {
+                vote.decideRemotely(false);
+            }
+            finish(vote);
+        }));
+        if (vote.network != null && !vote.network.mirror && vote.network.settleTick > scheduler.currentTick()) {
+            vote.track(scheduler.scheduleAt(vote.network.settleTick, () -> concludeIfDecided(vote)));
+        }
+
+        for (int seconds : vote.policy.reminderSeconds()) {
+            long reminderTick = vote.deadlineTick - VoteScheduler.secondsToTicks(seconds);
+            if (reminderTick > scheduler.currentTick()) {
+                vote.track(scheduler.scheduleAt(reminderTick, () -> sink.reminder(vote, seconds)));
+            }
+        }
+    }
+
+    private void finish(ActiveVote vote) {
+        votes.remove(vote);
+        vote.cancelScheduled();
+
+        boolean passed = vote.resolve();
+        decisions.record(vote.key, vote.id, passed, scheduler.currentTick(),
+            vote.policy.deduplication().cooldownTicks(vote.key, passed));
+        sink.concluded(vote, passed);
+        if (passed) {
+            sink.executionRequested(vote);
+        }
+        sink.closed(vote, passed);
+    }
+
+    // Ballots only mark the tally dirty. It is pushed at most once per statusUpdateIntervalTicks per vote,
+    // so any number of ballots cast within the interval cost a single update.
+    private void markStatusDirty(ActiveVote vote) {
+        vote.statusDirty = true;
+        if (vote.statusFlushTask != null) return;
+
+        long earliest = vote.lastStatusFlushTick + vote.policy.statusUpdateIntervalTicks();
+        vote.statusFlushTask = scheduler.scheduleAt(Math.max(earliest, scheduler.currentTick() + 1), () -> {
+            vote.statusFlushTask = null;
+            if (!vote.statusDirty) return;
+            vote.statusDirty = false;
+            vote.lastStatusFlushTick = scheduler.currentTick();
+            sink.statusChanged(vote);
+        });
+    }
+}
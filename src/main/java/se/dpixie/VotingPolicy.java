@@ -0,0 +1,450 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.logging.LogUtils;
+import org.slf4j.Logger;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import se.dpixie.democraticcommands.DemocraticCommandsMod.Config;
+
+// Immutable snapshot of the voting configuration. It is compiled from Config whenever the config is loaded or
+// reloaded and swapped in as a whole, so the hot paths never read ForgeConfigSpec values and a vote never sees
+// a half-applied reload.
+//
+// Per-command overrides come from the commandRules list, e.g. "stop:threshold=0.75,minVotes=5". The rules for
+// a command are resolved once when it is proposed and stay with that vote until it concludes.
+public final class VotingPolicy {
+    private static final Logger LOGGER = LogUtils.getLogger();
+
+    public record Rules(int timeoutSeconds, int minimumVoters, int minimumVotes, double approvalThreshold,
+                        boolean requireMajorityParticipation, boolean countAbstentionsAsNo) {
+
+        public Rules with(String key, String value) {
+            return switch (key) {
+                case "threshold" -> new Rules(timeoutSeconds, minimumVoters, minimumVotes, Double.parseDouble(value),
+                    requireMajorityParticipation, countAbstentionsAsNo);
+                case "minVotes" -> new Rules(timeoutSeconds, minimumVoters, Integer.parseInt(value), approvalThreshold,
+                    requireMajorityParticipation, countAbstentionsAsNo);
+                case "minVoters" -> new Rules(timeoutSeconds, Integer.parseInt(value), minimumVotes, approvalThreshold,
+                    requireMajorityParticipation, countAbstentionsAsNo);
+                case "timeout" -> new Rules(Integer.parseInt(value), minimumVoters, minimumVotes, approvalThreshold,
+                    requireMajorityParticipation, countAbstentionsAsNo);
+                case "majorityParticipation" -> new Rules(timeoutSeconds, minimumVoters, minimumVotes, approvalThreshold,
+                    parseBoolean(value), countAbstentionsAsNo);
+                case "abstainAsNo" -> new Rules(timeoutSeconds, minimumVoters, minimumVotes, approvalThreshold,
+                    requireMajorityParticipation, parseBoolean(value));
+                default -> throw new IllegalArgumentException("Unknown rule " + key);
+            };
+        }
+
+        public boolean passes(BallotBox ballots) {
+            return passes(ballots.yesCount(), ballots.noCount(), ballots.abstainedCount(), ballots.electorateSize());
+        }
+
+        public boolean passes(Tally tally) {
+            return passes(tally.yes(), tally.no(), tally.abstained(), tally.electorate());
+        }
+
+        public boolean passes(int yes, int no, int abstained, int electorate) {
+            int totalVotes = yes + no;
+            
+            // Check minimum votes requirement
+            if (totalVotes < minimumVotes) {
+                return false;
+            }
+            
+            // Check majority participation if required
+            if (requireMajorityParticipation) {
+                if (electorate == 0) return false;
+                double participationRate = (double) totalVotes / electorate;
+                if (participationRate <= 0.5) {
+                    return false;
+                }
+            }
+            
+            // Calculate approval based on the rules
+            int effectiveNo = no;
+            if (countAbstentionsAsNo) {
+                effectiveNo += abstained;
+            }
+            
+            int effectiveTotal = yes + effectiveNo;
+            if (effectiveTotal == 0) return false;
+            
+            double approvalRate = (double) yes / effectiveTotal;
+            return approvalRate >= approvalThreshold;
+        }
+
+        // The outcome if the undecided voters can no longer change it, otherwise null. Each rule only gets easier
+        // to meet with more YES votes and harder with more NO votes or abstentions, so it is enough to try the
+        // extremes: everyone left votes YES, everyone left votes NO, everyone left abstains.
+        public Boolean decidedOutcome(Tally tally) {
+            int yes = tally.yes(), no = tally.no(), abstained = tally.abstained();
+            int undecided = tally.undecided(), electorate = tally.electorate();
+            if (!passes(yes + undecided, no, abstained, electorate)) {
+                return false;
+            }
+            if (passes(yes, no + undecided, abstained, electorate) && passes(yes, no, abstained + undecided, electorate)) {
+                return true;
+            }
+            return null;
+        }
+
+        private void validate() {
+            if (timeoutSeconds < 10 || timeoutSeconds > 300) throw new IllegalArgumentException("timeout must be 10-300");
+            if (minimumVoters < 1) throw new IllegalArgumentException("minVoters must be at least 1");
+            if (minimumVotes < 1) throw new IllegalArgumentException("minVotes must be at least 1");
+            if (!(approvalThreshold >= 0.0 && approvalThreshold <= 1.0)) throw new IllegalArgumentException("threshold must be 0-1");
+        }
+    }
+
+    // How repeated proposals of the same command are handled, see VotingEngine.propose. Commands are compared in
+    // canonical form (CommandCanonicalizer), so idempotent entries are prefixes such as "time set" or "weather".
+    public record Deduplication(boolean mergeProposals, int failedCooldownSeconds, int passedCacheSeconds,
+                                List<String> idempotentCommands) {
+        public static final Deduplication OFF = new Deduplication(false, 0, 0, List.of());
+
+        public boolean isIdempotent(String key) {
+            for (String prefix : idempotentCommands) {
+                if (key.startsWith(prefix) && (key.length() == prefix.length() || key.charAt(prefix.length()) == ' ')) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // How long a decision on this command is remembered; passed commands only when repeating them is pointless
+        public long cooldownTicks(String key, boolean passed) {
+            if (passed) {
+                return isIdempotent(key) ? VoteScheduler.secondsToTicks(passedCacheSeconds) : 0;
+            }
+            return VoteScheduler.secondsToTicks(failedCooldownSeconds);
+        }
+    }
+
+    // Token bucket settings for one kind of request, see RateLimiter; perMinute 0 means unlimited
+    public record Limit(int perMinute, int burst) {
+        public static final Limit UNLIMITED = new Limit(0, 0);
+
+        public boolean isUnlimited() {
+            return perMinute <= 0;
+        }
+    }
+
+    public record RateLimits(Limit proposals, Limit ballots, Limit status) {
+        public static final RateLimits OFF = new RateLimits(Limit.UNLIMITED, Limit.UNLIMITED, Limit.UNLIMITED);
+    }
+
+    // How a passed command is run by ExecutionQueue: the share of a tick it may use and, for region commands, the
+    // size of each slice and the largest region that is sliced. Overridden per command by executionRules, e.g.
+    // "fill:budgetMs=10,sliceBlocks=8192".
+    public record Execution(int budgetMs, int sliceBlocks, long maxBlocks) {
+        public Execution with(String key, String value) {
+            return switch (key) {
+                case "budgetMs" -> new Execution(Integer.parseInt(value), sliceBlocks, maxBlocks);
+                case "sliceBlocks" -> new Execution(budgetMs, Integer.parseInt(value), maxBlocks);
+                case "maxBlocks" -> new Execution(budgetMs, sliceBlocks, Long.parseLong(value));
+                default -> throw new IllegalArgumentException("Unknown execution rule " + key);
+            };
+        }
+
+        public long budgetNanos() {
+            return budgetMs * 1_000_000L;
+        }
+
+        private void validate() {
+            if (budgetMs < 1 || budgetMs > 50) throw new IllegalArgumentException("budgetMs must be 1-50");
+            if (sliceBlocks < 256) throw new IllegalArgumentException("sliceBlocks must be at least 256");
+            if (maxBlocks < 1) throw new IllegalArgumentException("maxBlocks must be at least 1");
+        }
+    }
+
+    // Who may vote on a command, from electorateScopes, e.g. "setblock:nearby=4", "weather:dimension" or
+    // "give:team=admins". NEARBY counts chunks around the command's target position, or the initiator when the
+    // command has none.
+    public record Scope(Kind kind, int radiusChunks, String team) {
+        public enum Kind { SERVER, DIMENSION, NEARBY, TEAM }
+
+        public static final Scope SERVER = new Scope(Kind.SERVER, 0, null);
+
+        public static Scope parse(String spec) {
+            String trimmed = spec.trim();
+            int equals = trimmed.indexOf('=');
+            String key = equals < 0 ? trimmed : trimmed.substring(0, equals).trim();
+            String value = equals < 0 ? null : trimmed.substring(equals + 1).trim();
+            Scope scope = switch (key) {
+                case "server" -> SERVER;
+                case "dimension" -> new Scope(Kind.DIMENSION, 0, null);
+                case "nearby" -> new Scope(Kind.NEARBY, value == null ? -1 : Integer.parseInt(value), null);
+                case "team" -> new Scope(Kind.TEAM, 0, value);
+                default -> throw new IllegalArgumentException("Unknown scope " + key);
+            };
+            if (scope.kind == Kind.NEARBY && (scope.radiusChunks < 0 || scope.radiusChunks > 64)) {
+                throw new IllegalArgumentException("nearby needs a radius of 0-64 chunks");
+            }
+            if (scope.kind == Kind.TEAM && (scope.team == null || scope.team.isEmpty())) {
+                throw new IllegalArgumentException("team needs a team name");
+            }
+            return scope;
+        }
+
+        public boolean isServerWide() {
+            return kind == Kind.SERVER;
+        }
+    }
+
+    private final Rules defaults;
+    private final Map<String, Rules> overrides;
+    private final Set<String> gatedCommands;
+    private final GatedCommandMatcher matcher;
+    private final int[] reminderSeconds;
+    private final Config.StatusDisplay statusDisplay;
+    private final int statusUpdateIntervalTicks;
+    private final boolean logVotes;
+    private final int historyPageSize;
+    private final boolean cacheCommandTrees;
+    private final Deduplication deduplication;
+    private final RateLimits rateLimits;
+    private final boolean earlyResolution;
+    private final Config.DepartedVoters departedVoters;
+    private final Map<String, Scope> scopes;
+    private final Execution executionDefaults;
+    private final Map<String, Execution> executionOverrides;
+
+    VotingPolicy(Rules defaults, Map<String, Rules> overrides, Collection<String> gatedCommands,
+            int[] reminderSeconds, Config.StatusDisplay statusDisplay, int statusUpdateIntervalTicks,
+            boolean logVotes, int historyPageSize, boolean cacheCommandTrees,
+            Deduplication deduplication, RateLimits rateLimits, Execution executionDefaults,
+            Map<String, Execution> executionOverrides, boolean earlyResolution,
+            Config.DepartedVoters departedVoters, Map<String, Scope> scopes) {
+        this.defaults = defaults;
+        this.overrides = overrides;
+        this.gatedCommands = Collections.unmodifiableSet(new LinkedHashSet<>(gatedCommands));
+        this.matcher = new GatedCommandMatcher(gatedCommands);
+        this.reminderSeconds = reminderSeconds;
+        this.statusDisplay = statusDisplay;
+        this.statusUpdateIntervalTicks = statusUpdateIntervalTicks;
+        this.logVotes = logVotes;
+        this.historyPageSize = historyPageSize;
+        this.cacheCommandTrees = cacheCommandTrees;
+        this.deduplication = deduplication;
+        this.rateLimits = rateLimits;
+        this.executionDefaults = executionDefaults;
+        this.executionOverrides = executionOverrides;
+        this.earlyResolution = earlyResolution;
+        this.departedVoters = departedVoters;
+        this.scopes = scopes;
+    }
+
+    public static VotingPolicy fromConfig() {
+        Rules defaults = new Rules(
+            Config.VOTE_TIMEOUT.get(),
+            Config.MINIMUM_VOTERS.get(),
+            Config.MINIMUM_VOTES_REQUIRED.get(),
+            Config.APPROVAL_THRESHOLD.get(),
+            Config.REQUIRE_MAJORITY_PARTICIPATION.get(),
+            Config.COUNT_ABSTENTIONS_AS_NO.get());
+
+        Map<String, Rules> overrides = new HashMap<>();
+        for (String entry : Config.COMMAND_RULES.get()) {
+            try {
+                int colon = entry.lastIndexOf(':');
+                overrides.put(VoteHistoryStore.commandName(entry.substring(0, colon)),
+                    parseRules(defaults, entry.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Ignoring command rule \"{}\": {}", entry, e.getMessage());
+            }
+        }
+
+        List<? extends Integer> reminders = Config.REMINDER_SECONDS.get();
+        int[] reminderSeconds = new int[reminders.size()];
+        for (int i = 0; i < reminderSeconds.length; i++) {
+            reminderSeconds[i] = reminders.get(i);
+        }
+
+        Deduplication deduplication = new Deduplication(Config.MERGE_PROPOSALS.get(),
+            Config.FAILED_VOTE_COOLDOWN_SECONDS.get(), Config.PASSED_VOTE_CACHE_SECONDS.get(),
+            Config.IDEMPOTENT_COMMANDS.get().stream().map(CommandCanonicalizer::normalize).toList());
+
+        RateLimits rateLimits = new RateLimits(
+            new Limit(Config.PROPOSALS_PER_MINUTE.get(), Config.PROPOSAL_BURST.get()),
+            new Limit(Config.BALLOTS_PER_MINUTE.get(), Config.BALLOT_BURST.get()),
+            new Limit(Config.STATUS_PER_MINUTE.get(), Config.STATUS_BURST.get()));
+
+        Execution execution = new Execution(Config.EXECUTION_BUDGET_MS.get(), Config.SLICE_BLOCKS.get(),
+            Config.MAX_SLICED_BLOCKS.get());
+        Map<String, Execution> executionOverrides = new HashMap<>();
+        for (String entry : Config.EXECUTION_RULES.get()) {
+            try {
+                int colon = entry.lastIndexOf(':');
+                executionOverrides.put(VoteHistoryStore.commandName(entry.substring(0, colon)),
+                    parseExecution(execution, entry.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Ignoring execution rule \"{}\": {}", entry, e.getMessage());
+            }
+        }
+
+        Map<String, Scope> scopes = new HashMap<>();
+        for (String entry : Config.ELECTORATE_SCOPES.get()) {
+            try {
+                int colon = entry.lastIndexOf(':');
+                scopes.put(VoteHistoryStore.commandName(entry.substring(0, colon)), Scope.parse(entry.substring(colon + 1)));
+            } catch (RuntimeException e) {
+                LOGGER.warn("Ignoring electorate scope \"{}\": {}", entry, e.getMessage());
+            }
+        }
+
+        return new VotingPolicy(defaults, Map.copyOf(overrides), Config.OP_COMMANDS.get().stream().map(String::valueOf).toList(),
+            reminderSeconds, Config.STATUS_DISPLAY.get(), Config.STATUS_UPDATE_INTERVAL_TICKS.get(),
+            Config.LOG_VOTES.get(), Config.HISTORY_PAGE_SIZE.get(), Config.CACHE_COMMAND_TREES.get(),
+            deduplication, rateLimits, execution, Map.copyOf(executionOverrides), Config.EARLY_RESOLUTION.get(),
+            Config.DEPARTED_VOTERS.get(), Map.copyOf(scopes));
+    }
+
+    private static Rules parseRules(Rules base, String spec) {
+        Rules rules = base;
+        for (String setting : spec.split(",")) {
+            String trimmed = setting.trim();
+            if (trimmed.isEmpty()) continue;
+            int equals = trimmed.indexOf('=');
+            if (equals <= 0) throw new IllegalArgumentException("expected key=value, got \"" + trimmed + "\"");
+            rules = rules.with(trimmed.substring(0, equals).trim(), trimmed.substring(equals + 1).trim());
+        }
+        rules.validate();
+        return rules;
+    }
+
+    private static Execution parseExecution(Execution base, String spec) {
+        Execution execution = base;
+        for (String setting : spec.split(",")) {
+            String trimmed = setting.trim();
+            if (trimmed.isEmpty()) continue;
+            int equals = trimmed.indexOf('=');
+            if (equals <= 0) throw new IllegalArgumentException("expected key=value, got \"" + trimmed + "\"");
+            execution = execution.with(trimmed.substring(0, equals).trim(), trimmed.substring(equals + 1).trim());
+        }
+        execution.validate();
+        return execution;
+    }
+
+    private static boolean parseBoolean(String value) {
+        if (value.equalsIgnoreCase("true")) return true;
+        if (value.equalsIgnoreCase("false")) return false;
+        throw new IllegalArgumentException("expected true or false, got \"" + value + "\"");
+    }
+
+    // Used by the config validator so malformed entries are rejected when the file is loaded
+    public static boolean isValidRule(Object entry) {
+        if (!(entry instanceof String text)) return false;
+        int colon = text.lastIndexOf(':');
+        if (colon <= 0) return false;
+        try {
+            parseRules(new Rules(30, 1, 1, 0.5, false, false), text.substring(colon + 1));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    public static boolean isValidExecutionRule(Object entry) {
+        if (!(entry instanceof String text)) return false;
+        int colon = text.lastIndexOf(':');
+        if (colon <= 0) return false;
+        try {
+            parseExecution(new Execution(5, 4096, 32768), text.substring(colon + 1));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    public static boolean isValidScope(Object entry) {
+        if (!(entry instanceof String text)) return false;
+        int colon = text.lastIndexOf(':');
+        if (colon <= 0) return false;
+        try {
+            Scope.parse(text.substring(colon + 1));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    public Scope scopeFor(String command) {
+        return scopes.getOrDefault(VoteHistoryStore.commandName(command), Scope.SERVER);
+    }
+
+    public Execution executionFor(String command) {
+        return executionOverrides.getOrDefault(VoteHistoryStore.commandName(command), executionDefaults);
+    }
+
+    public Rules rulesFor(String command) {
+        return overrides.getOrDefault(VoteHistoryStore.commandName(command), defaults);
+    }
+
+    public Rules defaults() {
+        return defaults;
+    }
+
+    public Set<String> gatedCommands() {
+        return gatedCommands;
+    }
+
+    public GatedCommandMatcher matcher() {
+        return matcher;
+    }
+
+    public int[] reminderSeconds() {
+        return reminderSeconds;
+    }
+
+    public Config.StatusDisplay statusDisplay() {
+        return statusDisplay;
+    }
+
+    public int statusUpdateIntervalTicks() {
+        return statusUpdateIntervalTicks;
+    }
+
+    public boolean logVotes() {
+        return logVotes;
+    }
+
+    public int historyPageSize() {
+        return historyPageSize;
+    }
+
+    public boolean cacheCommandTrees() {
+        return cacheCommandTrees;
+    }
+
+    public Deduplication deduplication() {
+        return deduplication;
+    }
+
+    public boolean earlyResolution() {
+        return earlyResolution;
+    }
+
+    public Config.DepartedVoters departedVoters() {
+        return departedVoters;
+    }
+
+    public RateLimits rateLimits() {
+        return rateLimits;
+    }
+
+    public String describe() {
+        return gatedCommands.size() + " gated commands, " + overrides.size() + " command rules";
+    }
+
+    @Override
+    public String toString() {
+        return "VotingPolicy[" + describe() + ", defaults=" + defaults + ", overrides=" + overrides + "]";
+    }
+}
@@ -0,0 +1,27 @@
+package se.dpixie.democraticcommands.mixin;
+
+import com.mojang.brigadier.CommandDispatcher;
+import net.minecraft.commands.CommandSourceStack;
+import net.minecraft.commands.Commands;
+import net.minecraft.server.level.ServerPlayer;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import se.dpixie.democraticcommands.DemocraticCommandsMod;
+
+// Players below op level get the command tree with the vote-gated commands instead of the vanilla one, so a
+// client receives a single ClientboundCommandsPacket per login, respawn, dimension or permission change and /reload
+@Mixin(Commands.class)
+public abstract class CommandsMixin {
+    @Shadow @Final private CommandDispatcher<CommandSourceStack> dispatcher;
+
+    @Inject(method = "sendCommands", at = @At("HEAD"), cancellable = true)
+    private void democraticcommands$sendCommands(ServerPlayer player, CallbackInfo callback) {
+        if (DemocraticCommandsMod.sendCommands(player, dispatcher.getRoot())) {
+            callback.cancel();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogImporterTest {
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 12, 0, 0);
+
+    @TempDir
+    Path directory;
+
+    private static UUID uuid(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static long millis(int second) {
+        return START.plusSeconds(second).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Entries in the format AuditLogWriter writes
+    private static final class Log {
+        private final StringBuilder text = new StringBuilder();
+
+        Log entry(int second, String status, String body) {
+            text.append("\n[").append(TIMESTAMP_FORMAT.format(START.plusSeconds(second))).append("] Vote ")
+                .append(status).append('\n').append(body).append('\n').append(AuditLogWriter.SEPARATOR).append('\n');
+            return this;
+        }
+
+        Log initiated(int second, String initiator, String command) {
+            return entry(second, "INITIATED", "Command: /" + command + "\nInitiator: " + initiator);
+        }
+
+        Log concluded(int second, String status, String initiator, String command, String yes, String no) {
+            return entry(second, status, "Command: /" + command + "\nInitiator: " + initiator
+                + "\nYES votes (" + count(yes) + "): " + yes + "\nNO votes (" + count(no) + "): " + no
+                + "\nAbstained (0): \nResult: " + status);
+        }
+
+        private static int count(String names) {
+            return names.isEmpty() ? 0 : names.split(", ").length;
+        }
+
+        InputStream stream() {
+            return new ByteArrayInputStream(text.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<VoteHistoryStore.VoteRecord> records(VoteHistoryStore store) throws IOException {
+        List<VoteHistoryStore.VoteRecord> records = new ArrayList<>();
+        for (int id = 0; id < store.size(); id++) {
+            records.add(store.get(id));
+        }
+        return records;
+    }
+
+    @Test
+    void importsConcludedVotesWithStartTimeAndBallots() throws IOException {
+        Log log = new Log()
+            .initiated(0, "Alice", "time set day")
+            .concluded(30, "PASSED", "Alice", "time set day", "Alice, Bob", "Carol")
+            .concluded(90, "FAILED", "Bob", "weather clear", "", "Alice");
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            AuditLogImporter importer = new AuditLogImporter(store, AuditLogImporterTest::uuid, Long.MAX_VALUE, false);
+            assertEquals(2, importer.importStream(log.stream()));
+
+            VoteHistoryStore.VoteRecord passed = store.get(0);
+            assertEquals("time set day", passed.command());
+            assertEquals(millis(0), passed.startedAt());
+            assertEquals(millis(30), passed.concludedAt());
+            assertEquals(uuid("Alice"), passed.initiator());
+            assertTrue(passed.passed());
+            assertEquals(2, passed.count(VoteHistoryStore.BALLOT_YES));
+            assertEquals(1, passed.count(VoteHistoryStore.BALLOT_NO));
+
+            // No INITIATED entry: the vote is dated by its conclusion
+            VoteHistoryStore.VoteRecord failed = store.get(1);
+            assertEquals(millis(90), failed.startedAt());
+            assertEquals(0, failed.count(VoteHistoryStore.BALLOT_YES));
+        }
+    }
+
+    @Test
+    void skipsEntriesFromImportBeforeOn() throws IOException {
+        Log log = new Log()
+            .concluded(10, "PASSED", "Alice", "time set day", "Alice", "")
+            .concluded(60, "PASSED", "Bob", "time set night", "Bob", "");
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            new AuditLogImporter(store, AuditLogImporterTest::uuid, millis(60), false).importStream(log.stream());
+            assertEquals(1, store.size());
+            assertEquals("time set day", store.get(0).command());
+        }
+    }
+
+    @Test
+    void resumeSkipsVotesAlreadyImported() throws IOException {
+        // The same vote twice, as two separate votes with identical keys
+        Log log = new Log()
+            .concluded(10, "PASSED", "Alice", "time set day", "Alice", "")
+            .concluded(10, "PASSED", "Alice", "time set day", "Alice", "")
+            .concluded(20, "FAILED", "Bob", "weather clear", "", "Bob")
+            .concluded(30, "PASSED", "Carol", "gamemode creative Carol", "Carol", "");
+        long importBefore = millis(3600);
+
+        Path complete = directory.resolve("complete");
+        List<VoteHistoryStore.VoteRecord> expected;
+        try (VoteHistoryStore store = new VoteHistoryStore(complete)) {
+            new AuditLogImporter(store, AuditLogImporterTest::uuid, importBefore, false).importStream(log.stream());
+            expected = records(store);
+        }
+        assertEquals(4, expected.size());
+
+        // An interrupted attempt got as far as the first duplicate; the server then logged a live vote
+        try (VoteHistoryStore store = new VoteHistoryStore(directory.resolve("resumed"))) {
+            store.append(expected.get(0));
+            store.append(new VoteHistoryStore.VoteRecord(-1, millis(4000), millis(4030), "time set day",
+                uuid("Alice"), "Alice", true, List.of()));
+
+            AuditLogImporter resumed = new AuditLogImporter(store, AuditLogImporterTest::uuid, importBefore, true);
+            assertEquals(3, resumed.importStream(log.stream()));
+
+            List<VoteHistoryStore.VoteRecord> records = records(store);
+            assertEquals(5, records.size());
+            // Both of Alice's imported votes plus the live one
+            assertEquals(3, store.byInitiator(uuid("Alice"), 1, 10).totalRecords());
+            assertEquals(expected.get(1).command(), records.get(2).command());
+            assertEquals(expected.get(3).command(), records.get(4).command());
+        }
+    }
+
+    @Test
+    void resumeAfterACompleteImportAddsNothing() throws IOException {
+        Log log = new Log()
+            .initiated(0, "Alice", "time set day")
+            .concluded(30, "PASSED", "Alice", "time set day", "Alice", "")
+            .concluded(40, "FAILED", "Bob", "weather rain", "", "Bob");
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            new AuditLogImporter(store, AuditLogImporterTest::uuid, millis(3600), false).importStream(log.stream());
+            AuditLogImporter again = new AuditLogImporter(store, AuditLogImporterTest::uuid, millis(3600), true);
+            assertEquals(0, again.importStream(log.stream()));
+            assertEquals(2, store.size());
+        }
+    }
+}
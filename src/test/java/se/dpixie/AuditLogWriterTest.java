@@ -0,0 +1,96 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AuditLogWriterTest {
+    @TempDir
+    Path directory;
+
+    private AuditLogWriter writer(long rotateBytes, boolean compress) throws IOException {
+        return new AuditLogWriter(directory, 4096, AuditLogWriter.BackpressurePolicy.BLOCK,
+            AuditLogWriter.FsyncPolicy.NEVER, 0, rotateBytes, 0, compress);
+    }
+
+    @Test
+    void closeWritesEverythingQueued() throws IOException {
+        AuditLogWriter writer = writer(0, false);
+        for (int i = 0; i < 1000; i++) {
+            writer.append("PASSED", "Command: /time set day #" + i);
+        }
+        writer.close();
+
+        assertEquals(1000, writer.getWritten());
+        assertEquals(0, writer.getDropped());
+        assertEquals(0, writer.getQueueDepth());
+        String log = Files.readString(directory.resolve("audit.txt"));
+        assertEquals(1000, count(log, AuditLogWriter.SEPARATOR));
+        assertTrue(log.contains("Command: /time set day #999"));
+    }
+
+    @Test
+    void appendAfterCloseIsDropped() throws IOException {
+        AuditLogWriter writer = writer(0, false);
+        writer.close();
+        writer.append("PASSED", "late");
+
+        assertEquals(0, writer.getWritten());
+        assertEquals(1, writer.getDropped());
+        assertFalse(Files.readString(directory.resolve("audit.txt")).contains("late"));
+    }
+
+    @Test
+    void sizeRotationLosesNoEntries() throws IOException {
+        AuditLogWriter writer = writer(2_000, true);
+        for (int i = 0; i < 500; i++) {
+            writer.append("FAILED", "Command: /weather clear #" + i);
+        }
+        writer.close();
+
+        int entries = 0;
+        int compressed = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(".gz")) {
+                    compressed++;
+                    entries += count(gunzip(file), AuditLogWriter.SEPARATOR);
+                } else if (name.startsWith("audit") && !name.equals("audit.spill.txt")) {
+                    entries += count(Files.readString(file), AuditLogWriter.SEPARATOR);
+                }
+            }
+        }
+        assertEquals(500, entries);
+        assertTrue(compressed > 0, "expected rotated segments");
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> uncompressed = files.filter(file -> file.getFileName().toString().matches("audit-.*\\.txt")).toList();
+            assertTrue(uncompressed.isEmpty(), "rotated segments left uncompressed: " + uncompressed);
+        }
+    }
+
+    private static String gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static int count(String text, String needle) {
+        int count = 0;
+        for (int at = text.indexOf(needle); at >= 0; at = text.indexOf(needle, at + needle.length())) {
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,126 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BallotBoxTest {
+    private static BallotBox box(int voters) {
+        UUID[] ids = new UUID[voters];
+        String[] names = new String[voters];
+        for (int i = 0; i < voters; i++) {
+            ids[i] = new UUID(0, i + 1);
+            names[i] = "Player" + i;
+        }
+        return new BallotBox(ids, names);
+    }
+
+    @Test
+    void emptyBox() {
+        BallotBox box = box(0);
+        assertEquals(0, box.size());
+        assertEquals(0, box.electorateSize());
+        assertEquals(0, box.undecidedCount());
+        assertEquals(-1, box.cast(new UUID(0, 1), true));
+        box.markAbstained();
+        assertEquals(0, box.abstainedCount());
+    }
+
+    @Test
+    void castingAndChangingBallotsKeepsTheCounts() {
+        BallotBox box = box(3);
+        assertEquals(BallotBox.NONE, box.cast(new UUID(0, 1), true));
+        assertEquals(BallotBox.NONE, box.cast(new UUID(0, 2), true));
+        assertEquals(2, box.yesCount());
+        assertEquals(1, box.undecidedCount());
+
+        assertEquals(BallotBox.YES, box.cast(new UUID(0, 2), false));
+        assertEquals(BallotBox.NO, box.cast(new UUID(0, 2), false));
+        assertEquals(1, box.yesCount());
+        assertEquals(1, box.noCount());
+        assertEquals(2, box.votedCount());
+        assertTrue(box.hasVoted(new UUID(0, 2)));
+        assertFalse(box.hasVoted(new UUID(0, 3)));
+    }
+
+    @Test
+    void ineligibleVotersAreRejected() {
+        BallotBox box = box(3);
+        UUID stranger = new UUID(1, 1);
+        assertEquals(-1, box.cast(stranger, true));
+        assertFalse(box.isEligible(stranger));
+        assertFalse(box.hasVoted(stranger));
+        assertEquals(0, box.votedCount());
+    }
+
+    @Test
+    void fullBoxMarksNobodyAbstained() {
+        BallotBox box = box(4);
+        for (int i = 1; i <= 4; i++) {
+            box.cast(new UUID(0, i), i % 2 == 0);
+        }
+        assertEquals(0, box.undecidedCount());
+        assertEquals(0, box.notVotedCount());
+        box.markAbstained();
+        assertEquals(0, box.abstainedCount());
+        assertEquals(List.of("Player1", "Player3"), box.namesWith(BallotBox.YES));
+    }
+
+    @Test
+    void markAbstainedOnlyTouchesEmptySlots() {
+        BallotBox box = box(5);
+        box.cast(new UUID(0, 1), true);
+        box.set(box.slotOf(new UUID(0, 2)), BallotBox.EXCLUDED);
+        box.markAbstained();
+        assertEquals(3, box.abstainedCount());
+        assertEquals(1, box.yesCount());
+        assertEquals(0, box.undecidedCount());
+        assertEquals(List.of("Player2", "Player3", "Player4"), box.namesWith(BallotBox.ABSTAIN));
+    }
+
+    @Test
+    void excludedVotersLeaveTheElectorate() {
+        BallotBox box = box(4);
+        int slot = box.slotOf(new UUID(0, 3));
+        box.set(slot, BallotBox.EXCLUDED);
+        assertEquals(3, box.electorateSize());
+        assertEquals(3, box.undecidedCount());
+        assertEquals(4, box.notVotedCount());
+
+        // Back before the vote closed: they can still vote
+        assertEquals(BallotBox.EXCLUDED, box.cast(new UUID(0, 3), true));
+        assertEquals(4, box.electorateSize());
+        assertEquals(1, box.yesCount());
+    }
+
+    @Test
+    void everyVoterIsFoundInALargeBox() {
+        Random random = new Random(7);
+        int size = 5000;
+        UUID[] ids = new UUID[size];
+        String[] names = new String[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = new UUID(random.nextLong(), random.nextLong());
+            names[i] = "Player" + i;
+        }
+        BallotBox box = new BallotBox(ids.clone(), names);
+        for (int i = 0; i < size; i++) {
+            assertEquals(i, box.slotOf(ids[i]));
+        }
+        assertEquals(-1, box.slotOf(new UUID(random.nextLong(), random.nextLong())));
+    }
+
+    @Test
+    void duplicateOrMismatchedVotersAreRefused() {
+        assertThrows(IllegalArgumentException.class,
+            () -> new BallotBox(new UUID[] {new UUID(0, 1), new UUID(0, 1)}, new String[] {"a", "b"}));
+        assertThrows(IllegalArgumentException.class,
+            () -> new BallotBox(new UUID[] {new UUID(0, 1)}, new String[0]));
+    }
+}
@@ -0,0 +1,66 @@
+package se.dpixie.democraticcommands;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import com.mojang.brigadier.builder.RequiredArgumentBuilder;
+import com.mojang.brigadier.tree.LiteralCommandNode;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CommandCanonicalizerTest {
+    private static final Object SOURCE = new Object();
+
+    private static CommandDispatcher<Object> dispatcher() {
+        CommandDispatcher<Object> dispatcher = new CommandDispatcher<>();
+        LiteralCommandNode<Object> teleport = dispatcher.register(LiteralArgumentBuilder.literal("teleport")
+            .then(RequiredArgumentBuilder.<Object, String>argument("target", StringArgumentType.word())
+                .then(RequiredArgumentBuilder.<Object, Integer>argument("y", IntegerArgumentType.integer())
+                    .executes(context -> 1))));
+        dispatcher.register(LiteralArgumentBuilder.literal("tp").redirect(teleport));
+        return dispatcher;
+    }
+
+    @Test
+    void normalizeStripsSlashNamespaceAndWhitespace() {
+        assertEquals("time set day", CommandCanonicalizer.normalize("/minecraft:TIME   set day "));
+        assertEquals("weather clear", CommandCanonicalizer.normalize("  weather\tclear"));
+        // Only the command name is lower-cased
+        assertEquals("say Hello World", CommandCanonicalizer.normalize("/Say Hello World"));
+        assertEquals("seed", CommandCanonicalizer.normalize("/seed"));
+        assertEquals("", CommandCanonicalizer.normalize("/"));
+    }
+
+    @Test
+    void stripPrefixOnlyTouchesTheCommandName() {
+        assertEquals("give @s minecraft:stone", CommandCanonicalizer.stripPrefix("/minecraft:give @s minecraft:stone"));
+        assertEquals("give @s minecraft:stone", CommandCanonicalizer.stripPrefix("give @s minecraft:stone"));
+        assertEquals("seed", CommandCanonicalizer.stripPrefix("/seed"));
+    }
+
+    @Test
+    void aliasesCanonicalizeToTheirTarget() {
+        CommandDispatcher<Object> dispatcher = dispatcher();
+        assertEquals("teleport Steve 64",
+            CommandCanonicalizer.canonicalize(dispatcher.parse("tp Steve 64", SOURCE)));
+        assertEquals("teleport Steve 64",
+            CommandCanonicalizer.canonicalize(dispatcher.parse("teleport Steve 64", SOURCE)));
+    }
+
+    @Test
+    void argumentsAreKeptAsTyped() {
+        assertEquals("teleport Steve 064",
+            CommandCanonicalizer.canonicalize(dispatcher().parse("tp Steve 064", SOURCE)));
+    }
+
+    @Test
+    void incompleteOrUnknownInputIsOnlyNormalized() {
+        CommandDispatcher<Object> dispatcher = dispatcher();
+        assertEquals("tp Steve", CommandCanonicalizer.canonicalize(dispatcher.parse("tp   Steve", SOURCE)));
+        assertEquals("weather clear", CommandCanonicalizer.canonicalize(dispatcher.parse("Weather clear", SOURCE)));
+        assertEquals("teleport Steve high",
+            CommandCanonicalizer.canonicalize(dispatcher.parse("teleport Steve high", SOURCE)));
+    }
+}
@@ -0,0 +1,126 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import javax.crypto.Mac;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EnvelopeTest {
+    private static final UUID VOTE = new UUID(7, 7);
+
+    private static Envelope envelope() {
+        return new Envelope("lobby", 1_000, 42, 2_000, List.of(
+            new NetworkMessage.Proposal(VOTE, "difficulty hard", "difficulty hard", "difficulty", new UUID(1, 2),
+                "Alice", 600, new VotingPolicy.Rules(30, 2, 2, 0.5, true, false)),
+            new NetworkMessage.TallyUpdate(VOTE, "lobby", 3, new Tally(2, 1, 0, 4, 7)),
+            new NetworkMessage.Result(VOTE, true)));
+    }
+
+    private static DataInputStream stream(byte[]... frames) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            bytes.write(frame);
+        }
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void roundTripsWithACrc() throws IOException {
+        Envelope envelope = envelope();
+        assertEquals(envelope, Envelope.read(stream(envelope.frame(null)), null));
+    }
+
+    @Test
+    void roundTripsWithAMac() throws IOException {
+        Envelope envelope = envelope();
+        byte[] frame = envelope.frame(Envelope.mac("s3cret"));
+        assertEquals(envelope, Envelope.read(stream(frame), Envelope.mac("s3cret")));
+    }
+
+    @Test
+    void emptyEnvelope() throws IOException {
+        Envelope empty = new Envelope("lobby", 1, 1, 1, List.of());
+        assertEquals(empty, Envelope.read(stream(empty.frame(null)), null));
+    }
+
+    @Test
+    void framesFollowEachOtherInAStream() throws IOException {
+        Envelope first = envelope();
+        Envelope second = new Envelope("lobby", 1_000, 43, 2_050, List.of(new NetworkMessage.Result(VOTE, false)));
+        DataInputStream in = stream(first.frame(null), second.frame(null));
+        assertEquals(first, Envelope.read(in, null));
+        assertEquals(second, Envelope.read(in, null));
+        assertThrows(EOFException.class, () -> Envelope.read(in, null));
+    }
+
+    @Test
+    void corruptFrameIsDropped() throws IOException {
+        byte[] frame = envelope().frame(null);
+        frame[frame.length / 2] ^= 0x01;
+        assertNull(Envelope.read(stream(frame), null));
+    }
+
+    @Test
+    void wrongSecretOrTamperedFrameFailsTheMac() throws IOException {
+        Mac mac = Envelope.mac("s3cret");
+        byte[] frame = envelope().frame(mac);
+        assertNull(Envelope.read(stream(frame), Envelope.mac("guess")));
+
+        // The send time is covered too, so it cannot be moved forward to replay an old envelope
+        byte[] tampered = frame.clone();
+        int sentAtEnd = 4 + 2 + "lobby".length() + 8 + 8 + 8;
+        tampered[sentAtEnd - 1] ^= 0x10;
+        assertNull(Envelope.read(stream(tampered), mac));
+        // A Mac left over from a failed check still checks the next frame correctly
+        assertEquals(envelope(), Envelope.read(stream(frame), mac));
+    }
+
+    @Test
+    void badLengthsAndTruncatedFramesThrow() throws IOException {
+        byte[] frame = envelope().frame(null);
+        byte[] negative = frame.clone();
+        negative[0] = (byte) 0x80;
+        assertThrows(IOException.class, () -> Envelope.read(stream(negative), null));
+
+        byte[] oversized = frame.clone();
+        oversized[0] = 0x7F;
+        assertThrows(IOException.class, () -> Envelope.read(stream(oversized), null));
+
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 1);
+        assertThrows(EOFException.class, () -> Envelope.read(stream(truncated), null));
+    }
+
+    @Test
+    void unknownMessageTypeWithAValidCheckThrows() throws IOException {
+        Envelope result = new Envelope("lobby", 1, 1, 1, List.of(new NetworkMessage.Result(VOTE, true)));
+        byte[] frame = result.frame(null);
+        int length = frame.length - 8;
+        byte[] payload = Arrays.copyOfRange(frame, 4, 4 + length);
+        // The type byte follows node, epoch, sequence, sentAt and the message count
+        payload[2 + "lobby".length() + 8 + 8 + 8 + 4] = 9;
+        CRC32 check = new CRC32();
+        check.update(payload);
+        byte[] crc = ByteBuffer.allocate(4).putInt((int) check.getValue()).array();
+        assertThrows(IOException.class, () -> Envelope.decode(payload, crc, null));
+    }
+
+    @Test
+    void noSecretMeansNoMac() {
+        assertNull(Envelope.mac(null));
+        assertNull(Envelope.mac(""));
+        assertEquals(4, Envelope.trailerLength(null));
+        assertEquals(32, Envelope.trailerLength(Envelope.mac("s3cret")));
+    }
+}
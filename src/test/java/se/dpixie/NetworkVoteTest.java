@@ -0,0 +1,55 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NetworkVoteTest {
+    private final NetworkVote vote = new NetworkVote(UUID.randomUUID(), "lobby", false, 40);
+
+    @Test
+    void startsEmpty() {
+        assertEquals(Tally.EMPTY, vote.remote());
+        assertEquals(0, vote.reportingServers());
+    }
+
+    @Test
+    void newerPartialReplacesTheOld() {
+        assertTrue(vote.apply("survival", 1, new Tally(1, 0, 0, 4, 5)));
+        assertTrue(vote.apply("creative", 1, new Tally(0, 2, 0, 1, 3)));
+        assertEquals(new Tally(1, 2, 0, 5, 8), vote.remote());
+
+        assertTrue(vote.apply("survival", 3, new Tally(3, 1, 0, 1, 5)));
+        assertEquals(new Tally(3, 3, 0, 2, 8), vote.remote());
+        assertEquals(2, vote.reportingServers());
+    }
+
+    @Test
+    void olderOrRepeatedPartialIsRefused() {
+        vote.apply("survival", 5, new Tally(2, 0, 0, 3, 5));
+        assertFalse(vote.apply("survival", 5, new Tally(9, 9, 9, 9, 9)));
+        assertFalse(vote.apply("survival", 4, new Tally(0, 0, 0, 5, 5)));
+        assertEquals(new Tally(2, 0, 0, 3, 5), vote.remote());
+    }
+
+    @Test
+    void partialsInAnyOrderGiveTheSameSum() {
+        NetworkVote other = new NetworkVote(vote.id, "lobby", false, 40);
+        vote.apply("a", 1, new Tally(1, 0, 0, 2, 3));
+        vote.apply("a", 2, new Tally(2, 1, 0, 0, 3));
+        vote.apply("b", 1, new Tally(0, 0, 1, 1, 2));
+        other.apply("b", 1, new Tally(0, 0, 1, 1, 2));
+        other.apply("a", 2, new Tally(2, 1, 0, 0, 3));
+        other.apply("a", 1, new Tally(1, 0, 0, 2, 3));
+        assertEquals(vote.remote(), other.remote());
+    }
+
+    @Test
+    void settlesAtItsTick() {
+        assertFalse(vote.isSettled(39));
+        assertTrue(vote.isSettled(40));
+    }
+}
@@ -0,0 +1,211 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NetworkVotesTest {
+    private static final VotingPolicy.Rules RULES = new VotingPolicy.Rules(30, 1, 1, 0.5, false, false);
+    private static final VotingPolicy POLICY = Policies.of(RULES, VotingPolicy.Deduplication.OFF, false,
+        DemocraticCommandsMod.Config.DepartedVoters.KEEP);
+
+    // One server: an engine with its own players and the network side wired up as the mod does
+    private static final class Server {
+        final List<Voter> online = new ArrayList<>();
+        final List<Boolean> results = new ArrayList<>();
+        final VotingEngine engine;
+        final NetworkVotes network;
+
+        Server(String node, VoteTransport transport, int players) {
+            for (int i = 0; i < players; i++) {
+                online.add(new Voter.Known(UUID.randomUUID(), node + i));
+            }
+            engine = new VotingEngine(() -> online, new VoteSink() {
+                @Override
+                public void ballotCast(ActiveVote vote, UUID voter, boolean yes, boolean changed) {
+                    network().tallyChanged(vote);
+                }
+
+                @Override
+                public void concluded(ActiveVote vote, boolean passed) {
+                    results.add(passed);
+                    network().concluded(vote, passed);
+                }
+            }, System::currentTimeMillis);
+            network = new NetworkVotes(node, transport, engine, () -> POLICY, List.of("difficulty"),
+                command -> command.startsWith("difficulty ") ? null : "unknown command");
+        }
+
+        private NetworkVotes network() {
+            return network;
+        }
+
+        ActiveVote propose(String command) {
+            VotingEngine.Proposal proposal = new VotingEngine.Proposal(online.get(0), command, "difficulty",
+                CommandCanonicalizer.normalize(command), null, network.newVote());
+            ActiveVote vote = engine.propose(POLICY, proposal).vote();
+            network.published(vote, "difficulty");
+            return vote;
+        }
+
+        ActiveVote onlyVote() {
+            return engine.votes().all().iterator().next();
+        }
+
+        void voteAll(boolean yes) {
+            for (Voter voter : online) {
+                engine.cast(voter.id(), null, yes);
+            }
+        }
+
+        void tick() {
+            engine.tick();
+            network.tick();
+        }
+    }
+
+    // Hands the server whatever envelopes the test queues, and keeps what it sends
+    private static final class Scripted implements VoteTransport {
+        final Queue<Envelope> incoming = new ArrayDeque<>();
+        final List<Envelope> sent = new ArrayList<>();
+
+        @Override
+        public void send(Envelope envelope) {
+            sent.add(envelope);
+        }
+
+        @Override
+        public void poll(Consumer<Envelope> receiver) {
+            Envelope envelope;
+            while ((envelope = incoming.poll()) != null) {
+                receiver.accept(envelope);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static void tick(int ticks, Server... servers) {
+        for (int i = 0; i < ticks; i++) {
+            for (Server server : servers) {
+                server.tick();
+            }
+        }
+    }
+
+    private static NetworkMessage.Proposal proposal(UUID vote, String command, String commandName) {
+        return new NetworkMessage.Proposal(vote, command, CommandCanonicalizer.normalize(command), commandName,
+            new UUID(9, 9), "Remote", 400, RULES);
+    }
+
+    private static Envelope from(String node, long sequence, long sentAt, NetworkMessage... messages) {
+        return new Envelope(node, sentAt - 1_000, sequence, sentAt, List.of(messages));
+    }
+
+    @Test
+    void sharedVoteIsDecidedOnTheCombinedTally() {
+        LoopbackTransport.Hub hub = new LoopbackTransport.Hub();
+        Server origin = new Server("lobby", hub.join(), 2);
+        Server other = new Server("survival", hub.join(), 3);
+
+        ActiveVote vote = origin.propose("difficulty hard");
+        tick(2, origin, other);
+        assertEquals(1, other.network.size());
+        ActiveVote mirror = other.onlyVote();
+        assertTrue(mirror.isMirror());
+        assertEquals(RULES, mirror.rules);
+
+        origin.voteAll(true);
+        other.voteAll(false);
+        tick((int) NetworkVotes.SETTLE_TICKS + 2, origin, other);
+
+        assertEquals(List.of(false), origin.results);
+        assertEquals(List.of(false), other.results);
+        assertEquals(new Tally(2, 3, 0, 0, 5), vote.tally());
+        assertEquals(0, other.network.size());
+    }
+
+    @Test
+    void repeatedAndStaleEnvelopesAreDropped() {
+        long beforeStart = System.currentTimeMillis() - 1;
+        Scripted transport = new Scripted();
+        Server server = new Server("survival", transport, 2);
+        long now = System.currentTimeMillis();
+
+        transport.incoming.add(from("lobby", 5, now, proposal(UUID.randomUUID(), "difficulty hard", "difficulty")));
+        // Same sequence again, a lower one, and one from before this server started
+        transport.incoming.add(from("lobby", 5, now, proposal(UUID.randomUUID(), "difficulty easy", "difficulty")));
+        transport.incoming.add(from("lobby", 4, now, proposal(UUID.randomUUID(), "difficulty easy", "difficulty")));
+        transport.incoming.add(from("lobby", 6, beforeStart, proposal(UUID.randomUUID(), "difficulty easy", "difficulty")));
+        server.tick();
+        assertEquals(1, server.network.size());
+
+        // Too far in the future, and a run claiming to start after it sent
+        transport.incoming.add(from("lobby", 7, now + NetworkVotes.MAX_ENVELOPE_AGE_MILLIS + 5_000,
+            proposal(UUID.randomUUID(), "difficulty easy", "difficulty")));
+        transport.incoming.add(new Envelope("lobby", now + 10, 8, now,
+            List.of(proposal(UUID.randomUUID(), "difficulty easy", "difficulty"))));
+        server.tick();
+        assertEquals(1, server.network.size());
+
+        transport.incoming.add(from("lobby", 9, System.currentTimeMillis(),
+            proposal(UUID.randomUUID(), "difficulty normal", "difficulty")));
+        server.tick();
+        assertEquals(2, server.network.size());
+    }
+
+    @Test
+    void proposalsThatCannotRunHereAreNotMirrored() {
+        Scripted transport = new Scripted();
+        Server server = new Server("survival", transport, 2);
+        long now = System.currentTimeMillis();
+        UUID disguised = UUID.randomUUID();
+
+        transport.incoming.add(from("lobby", 1, now,
+            proposal(disguised, "op Remote", "difficulty"),
+            proposal(UUID.randomUUID(), "weather clear", "weather"),
+            proposal(UUID.randomUUID(), "difficulty", "difficulty")));
+        server.tick();
+        assertEquals(0, server.network.size());
+
+        // A refused id stays refused when the proposal comes again
+        transport.incoming.add(from("lobby", 2, now, proposal(disguised, "difficulty hard", "difficulty")));
+        server.tick();
+        assertEquals(0, server.network.size());
+    }
+
+    @Test
+    void serversOnlySpeakForTheirOwnShare() {
+        Scripted transport = new Scripted();
+        Server origin = new Server("lobby", transport, 2);
+        ActiveVote vote = origin.propose("difficulty hard");
+        origin.tick();
+        UUID id = vote.network.id;
+        long now = System.currentTimeMillis();
+
+        transport.incoming.add(from("creative", 1, now,
+            new NetworkMessage.TallyUpdate(id, "survival", 1, new Tally(0, 50, 0, 0, 50))));
+        origin.tick();
+        assertEquals(Tally.EMPTY, vote.network.remote());
+
+        transport.incoming.add(from("survival", 1, now, new NetworkMessage.TallyUpdate(id, "survival", 1, new Tally(1, 0, 0, 2, 3))));
+        origin.tick();
+        assertEquals(new Tally(1, 0, 0, 2, 3), vote.network.remote());
+
+        // Only the origin's result ends a vote; the origin itself ignores results from others
+        transport.incoming.add(from("survival", 2, now, new NetworkMessage.Result(id, false)));
+        origin.tick();
+        assertTrue(origin.results.isEmpty());
+        assertFalse(transport.sent.isEmpty());
+    }
+}
@@ -0,0 +1,26 @@
+package se.dpixie.democraticcommands;
+
+import java.util.List;
+import java.util.Map;
+
+// VotingPolicy instances for engine tests, without the Forge config
+final class Policies {
+    static final VotingPolicy.Rules RULES = new VotingPolicy.Rules(60, 1, 1, 0.5, false, false);
+    static final VotingPolicy.Deduplication DEDUP =
+        new VotingPolicy.Deduplication(true, 60, 30, List.of("time set", "weather"));
+
+    private Policies() {
+    }
+
+    static VotingPolicy of(VotingPolicy.Rules rules, VotingPolicy.Deduplication deduplication, boolean earlyResolution,
+                           DemocraticCommandsMod.Config.DepartedVoters departedVoters) {
+        return new VotingPolicy(rules, Map.of(), List.of(), new int[0],
+            DemocraticCommandsMod.Config.StatusDisplay.CHAT, 20, false, 8, false, deduplication,
+            VotingPolicy.RateLimits.OFF, new VotingPolicy.Execution(5, 4096, 32768), Map.of(), earlyResolution,
+            departedVoters, Map.of());
+    }
+
+    static VotingPolicy of(VotingPolicy.Rules rules) {
+        return of(rules, DEDUP, false, DemocraticCommandsMod.Config.DepartedVoters.KEEP);
+    }
+}
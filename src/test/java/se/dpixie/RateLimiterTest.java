@@ -0,0 +1,74 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RateLimiterTest {
+    // One token every 200 ticks, up to two at once
+    private static final VotingPolicy.Limit LIMIT = new VotingPolicy.Limit(6, 2);
+    private static final UUID ALICE = new UUID(0, 1);
+    private static final UUID BOB = new UUID(0, 2);
+
+    private final RateLimiter limiter = new RateLimiter();
+
+    @Test
+    void burstThenWait() {
+        assertEquals(0, limiter.acquire(ALICE, 0, LIMIT));
+        assertEquals(0, limiter.acquire(ALICE, 0, LIMIT));
+        assertEquals(200, limiter.acquire(ALICE, 0, LIMIT));
+        // A refused request takes nothing
+        assertEquals(100, limiter.acquire(ALICE, 100, LIMIT));
+        assertEquals(0, limiter.acquire(ALICE, 200, LIMIT));
+        assertEquals(200, limiter.acquire(ALICE, 200, LIMIT));
+    }
+
+    @Test
+    void refillIsCappedAtBurst() {
+        limiter.acquire(ALICE, 0, LIMIT);
+        limiter.acquire(ALICE, 0, LIMIT);
+        assertEquals(0, limiter.acquire(ALICE, 100_000, LIMIT));
+        assertEquals(0, limiter.acquire(ALICE, 100_000, LIMIT));
+        assertEquals(200, limiter.acquire(ALICE, 100_000, LIMIT));
+    }
+
+    @Test
+    void clockGoingBackwardsDoesNotRefill() {
+        limiter.acquire(ALICE, 1000, LIMIT);
+        limiter.acquire(ALICE, 1000, LIMIT);
+        assertEquals(200, limiter.acquire(ALICE, 0, LIMIT));
+    }
+
+    @Test
+    void playersHaveTheirOwnBuckets() {
+        limiter.acquire(ALICE, 0, LIMIT);
+        limiter.acquire(ALICE, 0, LIMIT);
+        assertEquals(0, limiter.acquire(BOB, 0, LIMIT));
+        assertEquals(2, limiter.size());
+    }
+
+    @Test
+    void unlimitedIsNeverRefusedOrTracked() {
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.acquire(ALICE, 0, VotingPolicy.Limit.UNLIMITED));
+        }
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void evictIdleDropsOnlyFullBuckets() {
+        limiter.acquire(ALICE, 0, LIMIT);
+        limiter.acquire(BOB, 300, LIMIT);
+        limiter.acquire(BOB, 300, LIMIT);
+
+        limiter.evictIdle(400, LIMIT);
+        assertEquals(1, limiter.size());
+        // Bob refilled one of his two tokens by now
+        assertEquals(0, limiter.acquire(BOB, 500, LIMIT));
+        assertEquals(200, limiter.acquire(BOB, 500, LIMIT));
+
+        limiter.evictIdle(10_000, LIMIT);
+        assertEquals(0, limiter.size());
+    }
+}
@@ -0,0 +1,43 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RecentDecisionsTest {
+    @Test
+    void decisionsExpireAfterTheirCooldown() {
+        RecentDecisions decisions = new RecentDecisions(8);
+        decisions.record("weather clear", 1, false, 100, 50);
+
+        RecentDecisions.Decision decision = decisions.get("weather clear", 149);
+        assertNotNull(decision);
+        assertEquals(1, decision.ticksLeft(149));
+        assertNull(decisions.get("weather clear", 150));
+        assertEquals(0, decisions.size());
+    }
+
+    @Test
+    void noCooldownForgetsThePreviousDecision() {
+        RecentDecisions decisions = new RecentDecisions(8);
+        decisions.record("time set day", 1, false, 0, 100);
+        decisions.record("time set day", 2, true, 10, 0);
+        assertNull(decisions.get("time set day", 10));
+    }
+
+    @Test
+    void leastRecentlyUsedIsEvictedWhenFull() {
+        RecentDecisions decisions = new RecentDecisions(2);
+        decisions.record("a", 1, false, 0, 100);
+        decisions.record("b", 2, false, 0, 100);
+        decisions.get("a", 1);
+        decisions.record("c", 3, false, 0, 100);
+
+        assertEquals(2, decisions.size());
+        assertNotNull(decisions.get("a", 1));
+        assertNull(decisions.get("b", 1));
+        assertNotNull(decisions.get("c", 1));
+    }
+}
@@ -0,0 +1,97 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegionSlicerTest {
+    private static final int SLICE = 256;
+    private static final long MAX = 1_000_000;
+
+    private static List<String> slice(String command) {
+        return RegionSlicer.slice(command, 100, 64, -100, SLICE, MAX);
+    }
+
+    // Checks that the slices cover the box exactly once, each within one chunk column and the slice size
+    private static void assertCovers(List<String> slices, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        assertNotNull(slices);
+        Set<List<Integer>> blocks = new HashSet<>();
+        for (String slice : slices) {
+            String[] words = slice.split(" ");
+            int x1 = Integer.parseInt(words[1]), y1 = Integer.parseInt(words[2]), z1 = Integer.parseInt(words[3]);
+            int x2 = Integer.parseInt(words[4]), y2 = Integer.parseInt(words[5]), z2 = Integer.parseInt(words[6]);
+            assertEquals(Math.floorDiv(x1, 16), Math.floorDiv(x2, 16), slice);
+            assertEquals(Math.floorDiv(z1, 16), Math.floorDiv(z2, 16), slice);
+            assertTrue((long) (x2 - x1 + 1) * (y2 - y1 + 1) * (z2 - z1 + 1) <= SLICE, slice);
+            for (int x = x1; x <= x2; x++) {
+                for (int y = y1; y <= y2; y++) {
+                    for (int z = z1; z <= z2; z++) {
+                        assertTrue(x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ, slice);
+                        assertTrue(blocks.add(List.of(x, y, z)), "overlap in " + slice);
+                    }
+                }
+            }
+        }
+        assertEquals((long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1), blocks.size());
+    }
+
+    @Test
+    void slicesCoverTheRegionExactlyOnce() {
+        assertCovers(slice("fill 0 0 0 39 9 20 stone"), 0, 0, 0, 39, 9, 20);
+    }
+
+    @Test
+    void cornersInAnyOrderAndAcrossNegativeChunks() {
+        assertCovers(slice("fill 5 3 7 -20 -4 -18 stone"), -20, -4, -18, 5, 3, 7);
+    }
+
+    @Test
+    void relativeCoordinatesUseTheOrigin() {
+        assertCovers(slice("fill ~ ~ ~ ~20 ~2 ~-10 air"), 100, 64, -110, 120, 66, -100);
+    }
+
+    @Test
+    void prefixIsStrippedAndTheRestKeptVerbatim() {
+        List<String> slices = slice("/minecraft:fill 0 0 0 31 1 31 chest{CustomName:'\"a  b\"'} replace  dirt");
+        assertNotNull(slices);
+        for (String slice : slices) {
+            assertTrue(slice.startsWith("fill "), slice);
+            assertTrue(slice.endsWith(" chest{CustomName:'\"a  b\"'} replace  dirt"), slice);
+        }
+    }
+
+    @Test
+    void fillbiomeIsSliced() {
+        assertCovers(slice("fillbiome 0 0 0 31 3 31 minecraft:plains"), 0, 0, 0, 31, 3, 31);
+    }
+
+    @Test
+    void smallOrHugeRegionsAreNotSliced() {
+        // Exactly one slice worth of blocks
+        assertNull(slice("fill 0 0 0 15 0 15 stone"));
+        assertNull(RegionSlicer.slice("fill 0 0 0 99 99 99 stone", 0, 0, 0, SLICE, 999_999));
+    }
+
+    @Test
+    void wholeRegionModesAreNotSliced() {
+        assertNull(slice("fill 0 0 0 39 9 20 glass hollow"));
+        assertNull(slice("fill 0 0 0 39 9 20 glass OUTLINE"));
+        assertNotNull(slice("fill 0 0 0 39 9 20 glass keep"));
+    }
+
+    @Test
+    void otherFormsAreNotSliced() {
+        assertNull(slice("setblock 0 0 0 stone"));
+        assertNull(slice("fill 0 0 0 39 9 20"));
+        assertNull(slice("fill 0 0 0 39 9"));
+        assertNull(slice("fill ^ ^ ^ ^20 ^5 ^20 stone"));
+        assertNull(slice("fill 0.5 0 0 39 9 20 stone"));
+        assertNull(slice("fill ~x 0 0 39 9 20 stone"));
+    }
+}
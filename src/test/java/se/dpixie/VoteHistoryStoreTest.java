@@ -0,0 +1,210 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoteHistoryStoreTest {
+    private static final UUID ALICE = UUID.nameUUIDFromBytes("Alice".getBytes());
+    private static final UUID BOB = UUID.nameUUIDFromBytes("Bob".getBytes());
+    private static final UUID CAROL = UUID.nameUUIDFromBytes("Carol".getBytes());
+
+    @TempDir
+    Path directory;
+
+    private static VoteHistoryStore.VoteRecord record(long concludedAt, String command, UUID initiator, String name) {
+        return new VoteHistoryStore.VoteRecord(-1, concludedAt - 30_000, concludedAt, command, initiator, name, true,
+            List.of(new VoteHistoryStore.Ballot(CAROL, "Carol", VoteHistoryStore.BALLOT_YES)));
+    }
+
+    private static void appendVotes(VoteHistoryStore store, int votes) throws IOException {
+        for (int i = 0; i < votes; i++) {
+            boolean alice = i % 2 == 0;
+            store.append(record(1_000L * (i + 1), i % 3 == 0 ? "time set day" : "weather clear",
+                alice ? ALICE : BOB, alice ? "Alice" : "Bob"));
+        }
+    }
+
+    private static List<Integer> ids(VoteHistoryStore.Page page) {
+        return page.records().stream().map(VoteHistoryStore.VoteRecord::id).toList();
+    }
+
+    @Test
+    void emptyStoreHasOneEmptyPage() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            VoteHistoryStore.Page page = store.latest(3, 10);
+            assertEquals(1, page.page());
+            assertEquals(1, page.totalPages());
+            assertEquals(0, page.totalRecords());
+            assertTrue(page.records().isEmpty());
+            assertNull(store.get(0));
+        }
+    }
+
+    @Test
+    void latestPagesNewestFirst() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 25);
+            VoteHistoryStore.Page first = store.latest(1, 10);
+            assertEquals(3, first.totalPages());
+            assertEquals(25, first.totalRecords());
+            assertEquals(List.of(24, 23, 22, 21, 20, 19, 18, 17, 16, 15), ids(first));
+            assertEquals(List.of(4, 3, 2, 1, 0), ids(store.latest(3, 10)));
+        }
+    }
+
+    @Test
+    void fullLastPage() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 20);
+            VoteHistoryStore.Page last = store.latest(2, 10);
+            assertEquals(2, last.totalPages());
+            assertEquals(10, last.records().size());
+            assertEquals(0, (int) ids(last).get(9));
+        }
+    }
+
+    @Test
+    void outOfRangePagesAreClamped() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 25);
+            VoteHistoryStore.Page past = store.latest(9, 10);
+            assertEquals(3, past.page());
+            assertEquals(List.of(4, 3, 2, 1, 0), ids(past));
+            assertEquals(1, store.latest(0, 10).page());
+            assertEquals(1, store.latest(-4, 10).page());
+
+            assertEquals(2, store.byInitiator(ALICE, 7, 10).page());
+            VoteHistoryStore.Page unknown = store.byInitiator(UUID.randomUUID(), 4, 10);
+            assertEquals(1, unknown.page());
+            assertEquals(1, unknown.totalPages());
+            assertTrue(unknown.records().isEmpty());
+        }
+    }
+
+    @Test
+    void secondaryIndexesFindByInitiatorCommandAndName() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 9);
+            assertEquals(List.of(8, 6, 4, 2, 0), ids(store.byInitiator(ALICE, 1, 10)));
+            assertEquals(List.of(7, 5, 3, 1), ids(store.byInitiator(BOB, 1, 10)));
+            // Slash, namespace and case are ignored when looking up a command
+            assertEquals(List.of(6, 3, 0), ids(store.byCommand("/minecraft:TIME set night", 1, 10)));
+            assertEquals(0, store.byCommand("gamemode", 1, 10).totalRecords());
+            assertEquals(ALICE, store.findPlayer("alice"));
+            assertEquals(CAROL, store.findPlayer("CAROL"));
+            assertNull(store.findPlayer("dave"));
+        }
+    }
+
+    @Test
+    void betweenUsesTheTimeIndex() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 10);
+            // Concluded at 1000, 2000, ..., 10000
+            assertEquals(List.of(4, 3, 2), ids(store.between(3_000, 6_000, 1, 10)));
+            assertEquals(0, store.between(20_000, 30_000, 1, 10).totalRecords());
+            // A clock step backwards is clamped so the time index stays sorted
+            int id = store.append(record(500, "weather clear", BOB, "Bob"));
+            assertEquals(10_000, store.get(id).concludedAt());
+        }
+    }
+
+    @Test
+    void reopenRestoresIndexes() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 6);
+        }
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            assertEquals(6, store.size());
+            assertEquals(List.of(4, 2, 0), ids(store.byInitiator(ALICE, 1, 10)));
+            assertEquals("weather clear", store.get(5).command());
+            assertEquals(6, store.append(record(7_000, "time set day", CAROL, "Carol")));
+        }
+    }
+
+    @Test
+    void recordsAfterTheSnapshotAreIndexedOnOpen() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 4);
+        }
+        // Copy the files while the store is open, as a crash would leave them: votes.six still covers 4 records
+        Path crashed = directory.resolve("crashed");
+        Files.createDirectories(crashed);
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            store.append(record(5_000, "gamemode creative", CAROL, "Carol"));
+            store.append(record(6_000, "gamemode survival", CAROL, "Carol"));
+            for (String name : List.of("votes.dat", "votes.idx", "votes.six")) {
+                Files.copy(directory.resolve(name), crashed.resolve(name));
+            }
+        }
+        try (VoteHistoryStore store = new VoteHistoryStore(crashed)) {
+            assertEquals(6, store.size());
+            assertEquals(List.of(5, 4), ids(store.byInitiator(CAROL, 1, 10)));
+            assertEquals(2, store.byCommand("gamemode", 1, 10).totalRecords());
+            assertEquals(List.of(2, 0), ids(store.byInitiator(ALICE, 1, 10)));
+        }
+    }
+
+    @Test
+    void tornTailIsTruncated() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 3);
+        }
+        Path data = directory.resolve("votes.dat");
+        long intact = Files.size(data);
+        // A record whose length claims more bytes than the file holds
+        Files.write(data, new byte[] {0, 0, 1, 0, 42, 42, 42}, StandardOpenOption.APPEND);
+
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            assertEquals(3, store.size());
+            assertEquals(intact, Files.size(data));
+            assertEquals(3, store.append(record(4_000, "time set night", BOB, "Bob")));
+        }
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            assertEquals(4, store.size());
+            assertEquals("time set night", store.get(3).command());
+        }
+    }
+
+    @Test
+    void corruptRecordEndsTheLog() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 3);
+        }
+        Files.delete(directory.resolve("votes.six"));
+        // Flip a byte inside the last record's payload so its CRC no longer matches
+        Path data = directory.resolve("votes.dat");
+        byte[] bytes = Files.readAllBytes(data);
+        bytes[bytes.length - 10] ^= 0x55;
+        Files.write(data, bytes);
+
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            assertEquals(2, store.size());
+            assertEquals(List.of(1), ids(store.byInitiator(BOB, 1, 10)));
+        }
+    }
+
+    @Test
+    void corruptSnapshotIsRebuilt() throws IOException {
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            appendVotes(store, 5);
+        }
+        Files.write(directory.resolve("votes.six"), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+
+        try (VoteHistoryStore store = new VoteHistoryStore(directory)) {
+            assertEquals(5, store.size());
+            assertEquals(List.of(3, 0), ids(store.byCommand("time", 1, 10)));
+            assertEquals(BOB, store.findPlayer("bob"));
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VoteJournalTest {
+    private static final VotingPolicy.Rules RULES = new VotingPolicy.Rules(60, 1, 1, 0.5, false, false);
+    private static final UUID[] VOTERS = {new UUID(0, 1), new UUID(0, 2), new UUID(0, 3)};
+    private static final String[] NAMES = {"Alice", "Bob", "Carol"};
+
+    @TempDir
+    Path directory;
+
+    private Path file() {
+        return directory.resolve("journal").resolve("votes.journal");
+    }
+
+    private static ActiveVote vote(int id, String command, long deadlineTick) {
+        return new ActiveVote(id, command, CommandCanonicalizer.normalize(command), new Voter.Known(VOTERS[0], NAMES[0]),
+            new BallotBox(VOTERS.clone(), NAMES.clone()), null, RULES, 0, deadlineTick, null);
+    }
+
+    private VoteJournal.Recovery reopen(VoteJournal.Snapshot snapshot) throws IOException {
+        VoteJournal journal = new VoteJournal(file(), snapshot);
+        journal.close();
+        return journal.recovered();
+    }
+
+    @Test
+    void emptyJournalRecoversTheSnapshot() throws IOException {
+        SavedVote saved = SavedVote.of(vote(1, "time set day", 1200));
+        VoteJournal.Recovery recovery = reopen(new VoteJournal.Snapshot(400, 7, List.of(saved)));
+        assertEquals(List.of(saved), recovery.votes());
+        assertEquals(400, recovery.lastTick());
+        assertEquals(7, recovery.lastSequence());
+        assertEquals(0, recovery.replayed());
+        assertEquals(800, recovery.ticksLeft(saved));
+    }
+
+    @Test
+    void replaysProposalsBallotsAndClosedVotes() throws IOException {
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.begin(0);
+            journal.proposed(vote(1, "time set day", 1200), 10);
+            journal.proposed(vote(2, "weather clear", 1300), 20);
+            journal.ballot(1, 1, BallotBox.YES, 30);
+            journal.ballot(1, 2, BallotBox.NO, 40);
+            journal.closed(2, 50);
+            journal.clock(500);
+            assertEquals(7, journal.sequence());
+        }
+
+        VoteJournal.Recovery recovery = reopen(VoteJournal.Snapshot.EMPTY);
+        assertEquals(1, recovery.votes().size());
+        SavedVote vote = recovery.votes().get(0);
+        assertEquals(1, vote.id());
+        assertEquals("time set day", vote.key());
+        assertEquals(BallotBox.NONE, vote.ballots()[0]);
+        assertEquals(BallotBox.YES, vote.ballots()[1]);
+        assertEquals(BallotBox.NO, vote.ballots()[2]);
+        assertEquals(500, recovery.lastTick());
+        assertEquals(7, recovery.lastSequence());
+        assertEquals(7, recovery.replayed());
+        assertEquals(700, recovery.ticksLeft(vote));
+    }
+
+    @Test
+    void skipsRecordsTheSnapshotContains() throws IOException {
+        ActiveVote vote = vote(1, "time set day", 1200);
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.proposed(vote, 10);
+            journal.ballot(1, 0, BallotBox.YES, 20);
+            journal.ballot(1, 1, BallotBox.NO, 30);
+        }
+
+        // Saved with the world after the first ballot, i.e. through sequence 2
+        vote.ballots.set(0, BallotBox.YES);
+        SavedVote saved = SavedVote.of(vote);
+        VoteJournal.Recovery recovery = reopen(new VoteJournal.Snapshot(20, 2, List.of(saved)));
+        assertEquals(1, recovery.replayed());
+        byte[] ballots = recovery.votes().get(0).ballots();
+        assertEquals(BallotBox.YES, ballots[0]);
+        assertEquals(BallotBox.NO, ballots[1]);
+        assertEquals(30, recovery.lastTick());
+    }
+
+    @Test
+    void beginDropsVotesOfThePreviousRun() throws IOException {
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.proposed(vote(1, "time set day", 1200), 10);
+            journal.begin(0);
+            journal.proposed(vote(5, "weather rain", 600), 5);
+        }
+        VoteJournal.Recovery recovery = reopen(VoteJournal.Snapshot.EMPTY);
+        assertEquals(1, recovery.votes().size());
+        assertEquals(5, recovery.votes().get(0).id());
+        assertEquals(5, recovery.lastTick());
+    }
+
+    @Test
+    void ballotsForUnknownVotesOrSlotsAreIgnored() throws IOException {
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.proposed(vote(1, "time set day", 1200), 10);
+            journal.ballot(9, 0, BallotBox.YES, 20);
+            journal.ballot(1, 3, BallotBox.YES, 30);
+            journal.ballot(1, -1, BallotBox.YES, 40);
+        }
+        VoteJournal.Recovery recovery = reopen(VoteJournal.Snapshot.EMPTY);
+        assertEquals(1, recovery.votes().size());
+        for (byte ballot : recovery.votes().get(0).ballots()) {
+            assertEquals(BallotBox.NONE, ballot);
+        }
+    }
+
+    @Test
+    void tornTailIsTruncated() throws IOException {
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.proposed(vote(1, "time set day", 1200), 10);
+            journal.ballot(1, 0, BallotBox.YES, 20);
+        }
+        long intact = Files.size(file());
+        // Half a frame: a length that claims more than the file holds
+        Files.write(file(), new byte[] {0, 0, 0, 40, 2, 0, 0}, StandardOpenOption.APPEND);
+
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            assertEquals(intact, Files.size(file()));
+            assertEquals(2, journal.recovered().replayed());
+            assertEquals(2, journal.sequence());
+            journal.ballot(1, 1, BallotBox.NO, 30);
+        }
+
+        VoteJournal.Recovery recovery = reopen(VoteJournal.Snapshot.EMPTY);
+        assertEquals(3, recovery.lastSequence());
+        assertEquals(BallotBox.YES, recovery.votes().get(0).ballots()[0]);
+        assertEquals(BallotBox.NO, recovery.votes().get(0).ballots()[1]);
+    }
+
+    @Test
+    void corruptFrameEndsTheReplay() throws IOException {
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.proposed(vote(1, "time set day", 1200), 10);
+            journal.ballot(1, 0, BallotBox.YES, 20);
+            journal.ballot(1, 1, BallotBox.NO, 30);
+        }
+        // Each ballot frame is 4 + 26 + 4 bytes; damage the payload of the first one
+        byte[] bytes = Files.readAllBytes(file());
+        bytes[bytes.length - 34 - 10] ^= 0x55;
+        Files.write(file(), bytes);
+
+        VoteJournal.Recovery recovery = reopen(VoteJournal.Snapshot.EMPTY);
+        assertEquals(1, recovery.replayed());
+        assertEquals(BallotBox.NONE, recovery.votes().get(0).ballots()[0]);
+        assertEquals(BallotBox.NONE, recovery.votes().get(0).ballots()[1]);
+        assertTrue(Files.size(file()) < bytes.length);
+    }
+
+    @Test
+    void compactDropsWhatTheSnapshotContains() throws IOException {
+        ActiveVote vote = vote(1, "time set day", 1200);
+        long before;
+        try (VoteJournal journal = new VoteJournal(file(), VoteJournal.Snapshot.EMPTY)) {
+            journal.proposed(vote, 10);
+            journal.ballot(1, 0, BallotBox.YES, 20);
+            journal.ballot(1, 1, BallotBox.YES, 30);
+            journal.compact(2);
+            journal.ballot(1, 2, BallotBox.NO, 40);
+        }
+        before = Files.size(file());
+
+        vote.ballots.set(0, BallotBox.YES);
+        VoteJournal.Recovery recovery = reopen(new VoteJournal.Snapshot(20, 2, List.of(SavedVote.of(vote))));
+        assertEquals(2, recovery.replayed());
+        assertEquals(4, recovery.lastSequence());
+        byte[] ballots = recovery.votes().get(0).ballots();
+        assertEquals(BallotBox.YES, ballots[0]);
+        assertEquals(BallotBox.YES, ballots[1]);
+        assertEquals(BallotBox.NO, ballots[2]);
+        // The proposal and first ballot are gone, the last two ballots remain
+        assertEquals(2 * 34, before);
+    }
+}
@@ -0,0 +1,166 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class VotingEngineTest {
+    private final List<Voter> online = new ArrayList<>();
+    private final VotingEngine engine = new VotingEngine(() -> online, new VoteSink() { }, () -> 0L);
+    private final VotingPolicy policy = Policies.of(Policies.RULES);
+
+    private Voter join(String name) {
+        Voter voter = new Voter.Known(UUID.nameUUIDFromBytes(name.getBytes()), name);
+        online.add(voter);
+        return voter;
+    }
+
+    private VotingEngine.ProposalResult propose(Voter initiator, String command) {
+        return engine.propose(policy, VotingEngine.Proposal.of(initiator, command, VoteHistoryStore.commandName(command)));
+    }
+
+    private void runFor(int seconds) {
+        for (long tick = VoteScheduler.secondsToTicks(seconds); tick > 0; tick--) {
+            engine.tick();
+        }
+    }
+
+    @Test
+    void repeatedProposalJoinsTheOpenVote() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        VotingEngine.ProposalResult started = propose(alice, "/minecraft:time set day");
+        assertEquals(VotingEngine.ProposalStatus.STARTED, started.status());
+
+        VotingEngine.ProposalResult merged = propose(bob, "time   set day");
+        assertEquals(VotingEngine.ProposalStatus.MERGED, merged.status());
+        assertSame(started.vote(), merged.vote());
+        assertEquals(List.of(bob), started.vote().coInitiators());
+    }
+
+    @Test
+    void proposingYourOwnVoteAgainIsAlreadyActive() {
+        Voter alice = join("Alice");
+        join("Bob");
+        VotingEngine.ProposalResult started = propose(alice, "time set day");
+
+        VotingEngine.ProposalResult again = propose(alice, "time set day");
+        assertEquals(VotingEngine.ProposalStatus.ALREADY_ACTIVE, again.status());
+        assertSame(started.vote(), again.vote());
+        assertEquals(List.of(), started.vote().coInitiators());
+
+        VotingEngine.ProposalResult other = propose(alice, "weather clear");
+        assertEquals(VotingEngine.ProposalStatus.ALREADY_ACTIVE, other.status());
+        assertNull(other.vote());
+    }
+
+    @Test
+    void failedCommandIsRefusedUntilTheCooldownEnds() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        VotingEngine.ProposalResult started = propose(alice, "weather clear");
+        engine.cast(bob.id(), started.vote().id, false);
+        runFor(Policies.RULES.timeoutSeconds());
+
+        assertEquals(VotingEngine.ProposalStatus.RECENTLY_FAILED, propose(bob, "weather clear").status());
+        runFor(Policies.DEDUP.failedCooldownSeconds());
+        assertEquals(VotingEngine.ProposalStatus.STARTED, propose(bob, "weather clear").status());
+    }
+
+    @Test
+    void passedIdempotentCommandIsReported() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        VotingEngine.ProposalResult started = propose(alice, "time set day");
+        engine.cast(alice.id(), started.vote().id, true);
+        // Everyone has voted, so the vote ends here
+        engine.cast(bob.id(), started.vote().id, true);
+
+        VotingEngine.ProposalResult repeated = propose(bob, "time set day");
+        assertEquals(VotingEngine.ProposalStatus.RECENTLY_PASSED, repeated.status());
+        assertEquals(started.vote().id, repeated.decision().voteId());
+        runFor(Policies.DEDUP.passedCacheSeconds());
+        assertEquals(VotingEngine.ProposalStatus.STARTED, propose(bob, "time set day").status());
+    }
+
+    @Test
+    void passedCommandThatIsNotIdempotentCanBeProposedAgain() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        VotingEngine.ProposalResult started = propose(alice, "give Bob diamond");
+        engine.cast(alice.id(), started.vote().id, true);
+        engine.cast(bob.id(), started.vote().id, true);
+
+        assertEquals(VotingEngine.ProposalStatus.STARTED, propose(alice, "give Bob diamond").status());
+    }
+
+    @Test
+    void earlyResolutionEndsADecidedVote() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        join("Carol");
+        join("Dave");
+        VotingPolicy early = Policies.of(Policies.RULES, VotingPolicy.Deduplication.OFF, true,
+            DemocraticCommandsMod.Config.DepartedVoters.KEEP);
+        ActiveVote vote = engine.propose(early, VotingEngine.Proposal.of(alice, "weather rain", "weather")).vote();
+
+        engine.cast(alice.id(), vote.id, true);
+        assertSame(vote, engine.votes().get(vote.id));
+        // Two of four YES passes whatever the other two do
+        engine.cast(bob.id(), vote.id, true);
+        assertNull(engine.votes().get(vote.id));
+        assertEquals(true, vote.resolve());
+        assertEquals(2, vote.tally().abstained());
+    }
+
+    @Test
+    void departedVotersStopTheVoteWaitingForThem() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        Voter carol = join("Carol");
+        VotingPolicy exclude = Policies.of(Policies.RULES, VotingPolicy.Deduplication.OFF, false,
+            DemocraticCommandsMod.Config.DepartedVoters.EXCLUDE);
+        ActiveVote vote = engine.propose(exclude, VotingEngine.Proposal.of(alice, "weather rain", "weather")).vote();
+
+        engine.cast(alice.id(), vote.id, true);
+        engine.cast(bob.id(), vote.id, false);
+        // A voter who already voted keeps the ballot
+        engine.voterLeft(bob.id());
+        assertEquals(BallotBox.NO, vote.ballots.ballot(vote.ballots.slotOf(bob.id())));
+        assertSame(vote, engine.votes().get(vote.id));
+
+        engine.voterLeft(carol.id());
+        assertNull(engine.votes().get(vote.id));
+        assertEquals(2, vote.tally().electorate());
+        assertEquals(true, vote.resolve());
+    }
+
+    @Test
+    void keptDepartedVotersAbstainAtTheDeadline() {
+        Voter alice = join("Alice");
+        Voter bob = join("Bob");
+        ActiveVote vote = propose(alice, "weather rain").vote();
+        engine.cast(alice.id(), vote.id, true);
+        engine.voterLeft(bob.id());
+        assertSame(vote, engine.votes().get(vote.id));
+
+        runFor(Policies.RULES.timeoutSeconds());
+        assertNull(engine.votes().get(vote.id));
+        assertEquals(1, vote.ballots.abstainedCount());
+    }
+
+    @Test
+    void notEnoughVoters() {
+        Voter alice = join("Alice");
+        VotingPolicy strict = Policies.of(new VotingPolicy.Rules(60, 3, 1, 0.5, false, false));
+        VotingEngine.ProposalResult result =
+            engine.propose(strict, VotingEngine.Proposal.of(alice, "weather rain", "weather"));
+        assertEquals(VotingEngine.ProposalStatus.NOT_ENOUGH_VOTERS, result.status());
+        assertEquals(1, result.electorate());
+    }
+}
@@ -0,0 +1,80 @@
+package se.dpixie.democraticcommands;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VotingRulesTest {
+    // Half the votes cast, at least two of them
+    private static final VotingPolicy.Rules SIMPLE = new VotingPolicy.Rules(60, 1, 2, 0.5, false, false);
+
+    @Test
+    void passesAtTheThreshold() {
+        assertTrue(SIMPLE.passes(1, 1, 0, 2));
+        assertFalse(SIMPLE.passes(1, 2, 0, 3));
+        // Too few votes, however they went
+        assertFalse(SIMPLE.passes(1, 0, 5, 6));
+        assertFalse(SIMPLE.passes(0, 0, 0, 0));
+    }
+
+    @Test
+    void majorityParticipationNeedsMoreThanHalf() {
+        VotingPolicy.Rules rules = new VotingPolicy.Rules(60, 1, 1, 0.5, true, false);
+        assertFalse(rules.passes(2, 0, 0, 4));
+        assertTrue(rules.passes(3, 0, 0, 5));
+        assertFalse(rules.passes(1, 0, 0, 0));
+    }
+
+    @Test
+    void abstentionsCanCountAsNo() {
+        VotingPolicy.Rules rules = new VotingPolicy.Rules(60, 1, 1, 0.5, false, true);
+        assertTrue(rules.passes(2, 1, 1, 4));
+        assertFalse(rules.passes(2, 1, 2, 5));
+    }
+
+    @Test
+    void withChangesOneRule() {
+        VotingPolicy.Rules rules = SIMPLE.with("threshold", "0.75").with("abstainAsNo", "true");
+        assertEquals(0.75, rules.approvalThreshold(), 0);
+        assertTrue(rules.countAbstentionsAsNo());
+        assertEquals(SIMPLE.minimumVotes(), rules.minimumVotes());
+    }
+
+    @Test
+    void nobodyLeftMeansTheOutcomeIsDecided() {
+        assertEquals(Boolean.TRUE, SIMPLE.decidedOutcome(new Tally(2, 1, 0, 0, 3)));
+        assertEquals(Boolean.FALSE, SIMPLE.decidedOutcome(new Tally(1, 2, 0, 0, 3)));
+        assertEquals(Boolean.FALSE, SIMPLE.decidedOutcome(Tally.EMPTY));
+    }
+
+    @Test
+    void outcomeIsDecidedWhenTheUndecidedCannotChangeIt() {
+        // 6 YES of 10: even 4 NO leaves it at the threshold
+        assertEquals(Boolean.TRUE, SIMPLE.decidedOutcome(new Tally(6, 0, 0, 4, 10)));
+        // 6 NO of 10: even 4 YES cannot reach half
+        assertEquals(Boolean.FALSE, SIMPLE.decidedOutcome(new Tally(0, 6, 0, 4, 10)));
+        assertNull(SIMPLE.decidedOutcome(new Tally(4, 0, 0, 6, 10)));
+        assertNull(SIMPLE.decidedOutcome(new Tally(0, 0, 0, 2, 2)));
+    }
+
+    @Test
+    void abstainingUndecidedVotersAreConsidered() {
+        VotingPolicy.Rules participation = new VotingPolicy.Rules(60, 1, 1, 0.5, true, false);
+        // All YES so far, but if the rest abstain participation stays at half
+        assertNull(participation.decidedOutcome(new Tally(5, 0, 0, 5, 10)));
+        assertEquals(Boolean.TRUE, participation.decidedOutcome(new Tally(6, 0, 0, 4, 10)));
+    }
+
+    @Test
+    void tallyArithmetic() {
+        Tally local = new Tally(2, 1, 0, 3, 6);
+        Tally remote = new Tally(1, 1, 1, 2, 5);
+        assertEquals(new Tally(3, 2, 1, 5, 11), local.plus(remote));
+        assertEquals(local, local.plus(remote).minus(remote));
+        assertEquals(new Tally(2, 1, 3, 0, 6), local.closed());
+        assertEquals(3, local.voted());
+    }
+}